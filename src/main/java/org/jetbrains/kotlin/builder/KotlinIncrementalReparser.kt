@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.builder
+
+import com.intellij.openapi.util.TextRange
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiManager
+import com.intellij.psi.impl.PsiModificationTrackerImpl
+import com.intellij.psi.impl.source.tree.TreeElement
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.LightVirtualFile
+import org.jetbrains.kotlin.psi.KtBlockExpression
+import org.jetbrains.kotlin.psi.KtClassBody
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtPsiFactory
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache.Companion.contentStamp
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache.Companion.resetContentStamp
+import org.jetbrains.kotlin.resolve.KotlinIncrementalResolver
+
+/**
+ * Applies a text change to an existing [KtFile] by reparsing only the innermost braced block
+ * (function body or class body) which contains the changed range, and swapping the new subtree
+ * in place of the old one. The rest of the tree, including its PSI elements, is kept.
+ * Changes which may affect the structure outside of the block are refused, the caller has to
+ * parse the whole file then. The caller also has to make sure that nobody else reads the tree,
+ * see [KotlinPsiManager.readFiles].
+ */
+object KotlinIncrementalReparser {
+
+    fun reparse(ktFile: KtFile, newText: String): Boolean {
+        val oldText = ktFile.text
+        if (oldText == newText) return true
+        
+        val prefix = commonPrefixLength(oldText, newText)
+        val suffix = minOf(commonSuffixLength(oldText, newText), minOf(oldText.length, newText.length) - prefix)
+        val changedRange = TextRange(prefix, oldText.length - suffix)
+        val lengthDelta = newText.length - oldText.length
+        
+        val block = findReparseableBlock(ktFile, changedRange) ?: return false
+        val blockRange = block.textRange
+        val newBlockText = newText.substring(blockRange.startOffset, blockRange.endOffset + lengthDelta)
+        // the text around the block has to stay the same, this is checked before the tree is touched
+        if (!newText.regionMatches(0, oldText, 0, blockRange.startOffset) ||
+                !newText.regionMatches(blockRange.endOffset + lengthDelta, oldText, blockRange.endOffset, 
+                        oldText.length - blockRange.endOffset)) {
+            return false
+        }
+        val newBlock = parseBlock(block, newBlockText) ?: return false
+        
+        val bodyOwner = KotlinIncrementalResolver.bodyOwner(block)
+        val signature = bodyOwner?.let { KotlinIncrementalResolver.signature(it) }
+        val stamp = ktFile.contentStamp
+        
+        val oldNode = block.node as TreeElement
+        val newNode = newBlock.node as TreeElement
+        newNode.rawRemove()
+        oldNode.rawReplaceWithList(newNode)
+        ktFile.clearCaches()
+        
+        if (ktFile.text != newText) {
+            // the original tree is restored, the caller parses the whole file
+            newNode.rawReplaceWithList(oldNode)
+            ktFile.clearCaches()
+            return false
+        }
+        
+        (ktFile.virtualFile as? LightVirtualFile)?.setContent(null, newText, false)
+        (PsiManager.getInstance(ktFile.project).modificationTracker as? PsiModificationTrackerImpl)?.incCounter()
+        ktFile.resetContentStamp()
+        KotlinIncrementalResolver.bodyChanged(ktFile, stamp, 
+                bodyOwner?.takeIf { KotlinIncrementalResolver.signature(it) == signature })
+        
+        return true
+    }
+
+    private fun findReparseableBlock(ktFile: KtFile, changedRange: TextRange): PsiElement? {
+        val start = ktFile.findElementAt(changedRange.startOffset) ?: return null
+        val end = ktFile.findElementAt(maxOf(changedRange.startOffset, changedRange.endOffset - 1)) ?: return null
+        var element = PsiTreeUtil.findCommonParent(start, end)
+        
+        while (element != null && element !is KtFile) {
+            val range = element.textRange
+            // the braces themselves have to stay untouched
+            if (element.isBracedBlock() && range.startOffset < changedRange.startOffset 
+                    && changedRange.endOffset < range.endOffset) {
+                return element
+            }
+            element = element.parent
+        }
+        
+        return null
+    }
+
+    private fun PsiElement.isBracedBlock() = when (this) {
+        is KtBlockExpression -> lBrace != null && rBrace != null
+        is KtClassBody -> lBrace != null && rBrace != null
+        else -> false
+    }
+
+    private fun parseBlock(oldBlock: PsiElement, text: String): PsiElement? {
+        val psiFactory = KtPsiFactory(oldBlock.project)
+        val newBlock: PsiElement? = try {
+            when (oldBlock) {
+                is KtBlockExpression -> psiFactory.createFunction("fun f() $text").bodyExpression
+                        ?.takeIf { it is KtBlockExpression && it.rBrace != null }
+                is KtClassBody -> psiFactory.createClass("class C $text").body
+                        ?.takeIf { it.rBrace != null }
+                else -> null
+            }
+        } catch (e: AssertionError) {
+            // the text is not a single declaration, so the braces are not balanced
+            null
+        }
+        
+        return newBlock?.takeIf { it.text == text }
+    }
+
+    private fun commonPrefixLength(first: String, second: String): Int {
+        val length = minOf(first.length, second.length)
+        var i = 0
+        while (i < length && first[i] == second[i]) i++
+        
+        return i
+    }
+
+    private fun commonSuffixLength(first: String, second: String): Int {
+        val length = minOf(first.length, second.length)
+        var i = 0
+        while (i < length && first[first.length - 1 - i] == second[second.length - 1 - i]) i++
+        
+        return i
+    }
+
+}
@@ -16,17 +16,19 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.builder
 
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.util.UserDataHolderEx
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.openapi.util.text.StringUtilRt
 import com.intellij.openapi.vfs.CharsetToolkit
 import com.intellij.psi.PsiFileFactory
 import com.intellij.psi.impl.PsiFileFactoryImpl
 import java.io.IOException
+import java.util.concurrent.Semaphore
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.checkProject
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getKotlinSources
 import org.jetbrains.kotlin.model.KotlinEnvironment
 import org.jetbrains.kotlin.model.KotlinLightVirtualFile
-import org.jetbrains.kotlin.project.KotlinProjectConstants
 import org.jetbrains.kotlin.utils.KotlinMockProject
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.idea.KotlinFileType
@@ -39,17 +41,21 @@ import org.openide.filesystems.FileObject
 
 object KotlinPsiManager {
     
-    private val cachedKtFiles = hashMapOf<FileObject, KtFile>()
+    // trees parsed from the files on disk and from editor texts are never reparsed into each other
+    private val cachedKtFiles = KtFileCache()
+    private val editorKtFiles = KtFileCache(KtFileCache.DEFAULT_MAX_WEIGHT / 4)
+    
+    // updates of one file have to be serialized because reparsing changes the cached tree in place
+    private val locks = Array(16) { Any() }
+    
+    // a permit is held by every reader of a tree, a tree with readers is never reparsed in place. 
+    // Unlike a lock, a permit may be returned by another thread than the one which took it.
+    private val TREE_PINS = Key.create<Semaphore>("KOTLIN_TREE_PINS")
+    private const val MAX_PINS = Int.MAX_VALUE
     
     fun getFilesByProject(project: Project, 
                           test: Boolean = true) = project.getKotlinSources()
-            ?.getSourceGroups(KotlinProjectConstants.KOTLIN_SOURCE, test)
-            ?.flatMap { it.rootFolder.children.toList() }
-            ?.filter { it.isKotlinFile() }
-            ?.toSet() ?: emptySet()
-    
-    private fun parseFile(file: FileObject): KtFile? =
-            parseText(StringUtilRt.convertLineSeparators(file.asText()), file)
+            ?.getKotlinFiles(test) ?: emptySet()
     
     fun parseText(text: String, file: FileObject): KtFile? {
         StringUtil.assertValidSeparators(text)
@@ -69,56 +75,110 @@ object KotlinPsiManager {
 
     fun parseTextForDiagnostic(text: String, file: FileObject): KtFile? {
         StringUtil.assertValidSeparators(text)
-        if (cachedKtFiles.containsKey(file)) {
-            updatePsiFile(text, file)
-        } else {
-            try {
-                val ktFile = parseFile(file) ?: return null
-                cachedKtFiles.put(file, ktFile)
-            } catch (ex: IOException) {
-                KotlinLogger.INSTANCE.logException("parseFile exception", ex)
-            }
-        }
         
-        return cachedKtFiles[file]
+        return updatePsiFile(editorKtFiles, file, StringUtilRt.convertLineSeparators(text), KtFileCache.EDITOR_STAMP)
     }
 
+    // trees of files on disk are read by code generation, light classes and indexes without 
+    // pinning them, so a new content always gets a new tree
     fun getParsedFile(file: FileObject): KtFile? {
-        if (!cachedKtFiles.containsKey(file)) {
-            val ktFile = parseFile(file) ?: return null
-            cachedKtFiles.put(file, ktFile)
-        } else {
-            updatePsiFile(file)
+        val stamp = file.lastModified().time
+        cachedKtFiles.get(file, stamp)?.let { return it }
+        
+        return try {
+            updatePsiFile(cachedKtFiles, file, StringUtilRt.convertLineSeparators(file.asText()), stamp, inPlace = false)
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("parseFile exception", ex)
+            null
         }
-        return cachedKtFiles[file]
     }
 
-    private fun updatePsiFile(file: FileObject) {
+    /**
+     * Runs [action] while none of [files] can be changed in place. Edits made in the meantime
+     * create new trees instead.
+     */
+    fun <T> readFiles(files: Collection<KtFile>, action: () -> T): T {
+        val pins = files.map { it.treePins() }
+        pins.forEach { it.acquireUninterruptibly() }
         try {
-            val code = file.asText()
-            val sourceCodeWithoutCR = StringUtilRt.convertLineSeparators(code)
-            val currentParsedFile = cachedKtFiles[file] ?: return
-            if (currentParsedFile.text != sourceCodeWithoutCR) {
-                val ktFile = parseText(sourceCodeWithoutCR, file) ?: return
-                cachedKtFiles.put(file, ktFile)
-            }
-        } catch (ex: IOException) {
-            KotlinLogger.INSTANCE.logWarning("Couldn't update psi file")
+            return action()
+        } finally {
+            pins.forEach { it.release() }
         }
     }
-
-    private fun updatePsiFile(sourceCode: String, file: FileObject) {
+    
+    /**
+     * Tree of the editor text [text] of [file], which is not changed in place until it is 
+     * released by [releaseFile]. Later edits create new trees while it is held.
+     */
+    fun acquireEditorFile(text: String, file: FileObject): KtFile? {
+        StringUtil.assertValidSeparators(text)
+        
+        // reparsing happens under the same lock, so the tree still has the text when it is pinned
+        synchronized(lockFor(file)) {
+            val ktFile = updatePsiFile(editorKtFiles, file, StringUtilRt.convertLineSeparators(text), 
+                    KtFileCache.EDITOR_STAMP) ?: return null
+            ktFile.treePins().acquireUninterruptibly()
+            
+            return ktFile
+        }
+    }
+    
+    fun releaseFile(ktFile: KtFile) = ktFile.treePins().release()
+    
+    /**
+     * Runs [action] with the tree of the editor text [text] of [file], which is not changed 
+     * in place while the action runs. Returns null if the text can't be parsed.
+     */
+    fun <T> readEditorFile(text: String, file: FileObject, action: (KtFile) -> T): T? {
+        val ktFile = acquireEditorFile(text, file) ?: return null
         try {
-            val sourceCodeWithoutCR = StringUtilRt.convertLineSeparators(sourceCode)
-            val currentParsedFile = cachedKtFiles[file] ?: return
-            if (currentParsedFile.text != sourceCodeWithoutCR) {
-                val ktFile = parseText(sourceCodeWithoutCR, file) ?: return
-                cachedKtFiles.put(file, ktFile)
-            }
-        } catch (ex: IOException) {
-            KotlinLogger.INSTANCE.logWarning("Couldn't update psi file")
-        }    
+            return action(ktFile)
+        } finally {
+            releaseFile(ktFile)
+        }
+    }
+    
+    private fun KtFile.treePins() = (this as UserDataHolderEx).putUserDataIfAbsent(TREE_PINS, Semaphore(MAX_PINS))
+    
+    private fun reparseInPlace(ktFile: KtFile, sourceCode: String): Boolean {
+        val pins = ktFile.treePins()
+        if (!pins.tryAcquire(MAX_PINS)) return false
+        
+        try {
+            return KotlinIncrementalReparser.reparse(ktFile, sourceCode)
+        } finally {
+            pins.release(MAX_PINS)
+        }
     }
+    
+    // edits inside a single function or class body of an editor tree are reparsed in place unless the tree is being read
+    private fun updatePsiFile(cache: KtFileCache, file: FileObject, sourceCode: String, stamp: Long, 
+                              inPlace: Boolean = true): KtFile? {
+        synchronized(lockFor(file)) {
+            val currentParsedFile = cache.get(file)
+            val ktFile = if (currentParsedFile != null && (currentParsedFile.text == sourceCode ||
+                    inPlace && reparseInPlace(currentParsedFile, sourceCode))) {
+                currentParsedFile
+            } else parseText(sourceCode, file) ?: return null
+            
+            cache.put(file, ktFile, stamp)
+            return ktFile
+        }
+    }
+    
+    private fun lockFor(file: FileObject) = locks[(file.hashCode() and Int.MAX_VALUE) % locks.size]
+    
+    fun cacheStatistics() = "disk: ${cachedKtFiles.statistics()}; editor: ${editorKtFiles.statistics()}"
+    
+    // drops the trees created in the environment of [project]
+    fun removeFiles(project: com.intellij.openapi.project.Project) {
+        cachedKtFiles.removeAll { it.project === project }
+        editorKtFiles.removeAll { it.project === project }
+    }
+    
+    fun retainedChars(project: com.intellij.openapi.project.Project) = 
+            cachedKtFiles.weightOf { it.project === project } + editorKtFiles.weightOf { it.project === project }
 
     fun getParsedKtFileForSyntaxHighlighting(text: String): KtFile? {
         val sourceCode = StringUtilRt.convertLineSeparators(text)
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.builder
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.SoftReference
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.jetbrains.kotlin.psi.KtFile
+import org.openide.filesystems.FileChangeAdapter
+import org.openide.filesystems.FileChangeListener
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+
+/**
+ * Thread-safe cache of parsed files. Files are held by soft references and weighted by their
+ * text length. The least recently used ones are dropped when the total weight exceeds [maxWeight],
+ * and an entry is removed as soon as its file is deleted or renamed.
+ * 
+ * [stamp] of an entry is the modification time of the file on disk which the tree was parsed from,
+ * or [EDITOR_STAMP] if it was parsed from editor text.
+ */
+class KtFileCache(private val maxWeight: Long = DEFAULT_MAX_WEIGHT) {
+
+    companion object {
+        const val DEFAULT_MAX_WEIGHT = 16L * 1024 * 1024
+        const val EDITOR_STAMP = -1L
+    }
+
+    private class FileReference(val file: FileObject, ktFile: KtFile, 
+                                queue: ReferenceQueue<KtFile>) : SoftReference<KtFile>(ktFile, queue)
+
+    private inner class Entry(val file: FileObject, ktFile: KtFile, @Volatile var stamp: Long) {
+        val reference = FileReference(file, ktFile, queue)
+        @Volatile var weight = ktFile.textLength
+        @Volatile var lastAccess = clock.incrementAndGet()
+        
+        val listener: FileChangeListener = object : FileChangeAdapter() {
+            override fun fileDeleted(fe: FileEvent) {
+                remove(file)
+            }
+            
+            override fun fileRenamed(fe: FileRenameEvent) {
+                remove(file)
+            }
+        }
+    }
+
+    private val entries = ConcurrentHashMap<FileObject, Entry>()
+    private val queue = ReferenceQueue<KtFile>()
+    private val clock = AtomicLong()
+    private val weight = AtomicLong()
+
+    val hits = AtomicLong()
+    val misses = AtomicLong()
+    val evictions = AtomicLong()
+    // entries whose trees were reclaimed by the garbage collector
+    val collected = AtomicLong()
+
+    val size: Int
+        get() = entries.size
+
+    val retainedWeight: Long
+        get() = weight.get()
+
+    /**
+     * Returns the cached tree of [file]. If [stamp] is given, the tree has to be parsed
+     * from the file on disk with this modification time.
+     */
+    fun get(file: FileObject, stamp: Long? = null): KtFile? {
+        purgeCollected()
+        
+        val entry = entries[file]
+        val ktFile = entry?.reference?.get()
+        if (entry == null || ktFile == null || (stamp != null && stamp != entry.stamp)) {
+            misses.incrementAndGet()
+            return null
+        }
+        
+        hits.incrementAndGet()
+        entry.lastAccess = clock.incrementAndGet()
+        return ktFile
+    }
+
+    fun put(file: FileObject, ktFile: KtFile, stamp: Long) {
+        purgeCollected()
+        
+        val entry = entries[file]
+        if (entry != null && entry.reference.get() === ktFile) {
+            // the tree was reparsed in place
+            weight.addAndGet((ktFile.textLength - entry.weight).toLong())
+            entry.weight = ktFile.textLength
+            entry.stamp = stamp
+            entry.lastAccess = clock.incrementAndGet()
+        } else {
+            val newEntry = Entry(file, ktFile, stamp)
+            val previous = entries.put(file, newEntry)
+            if (previous != null) {
+                weight.addAndGet(-previous.weight.toLong())
+                file.removeFileChangeListener(previous.listener)
+            }
+            weight.addAndGet(newEntry.weight.toLong())
+            file.addFileChangeListener(newEntry.listener)
+        }
+        
+        if (weight.get() > maxWeight) evict()
+    }
+
+    fun remove(file: FileObject) {
+        entries[file]?.let { remove(file, it) }
+    }
+
+    fun clear() {
+        entries.keys.toList().forEach { remove(it) }
+    }
+
+    fun removeAll(predicate: (KtFile) -> Boolean) {
+        entries.values.filter { entry -> entry.reference.get()?.let(predicate) ?: false }
+                .forEach { remove(it.file, it) }
+    }
+
+    // total text length of the cached trees matching [predicate]
+    fun weightOf(predicate: (KtFile) -> Boolean) = entries.values
+            .filter { entry -> entry.reference.get()?.let(predicate) ?: false }
+            .fold(0L) { sum, entry -> sum + entry.weight }
+
+    fun statistics(): String {
+        val requests = hits.get() + misses.get()
+        val hitRate = if (requests == 0L) 0 else hits.get() * 100 / requests
+        
+        return "files: ${entries.size}, retained: ${weight.get()} chars, hits: ${hits.get()}, misses: ${misses.get()} " + 
+                "($hitRate% hit rate), evictions: ${evictions.get()}, collected: ${collected.get()}"
+    }
+
+    private fun purgeCollected() {
+        while (true) {
+            val reference = queue.poll() as? FileReference ?: return
+            val entry = entries[reference.file] ?: continue
+            if (entry.reference === reference) {
+                collected.incrementAndGet()
+                remove(reference.file, entry)
+            }
+        }
+    }
+
+    private fun remove(file: FileObject, entry: Entry) {
+        if (!entries.remove(file, entry)) return
+        
+        weight.addAndGet(-entry.weight.toLong())
+        file.removeFileChangeListener(entry.listener)
+    }
+
+    @Synchronized private fun evict() {
+        if (weight.get() <= maxWeight) return
+        
+        val iterator = entries.values.sortedBy { it.lastAccess }.iterator()
+        while (weight.get() > maxWeight && iterator.hasNext()) {
+            val entry = iterator.next()
+            remove(entry.file, entry)
+            evictions.incrementAndGet()
+        }
+    }
+
+}
@@ -69,7 +69,8 @@ class KotlinCodeCompletionHandler : CodeCompletionHandler2 {
         val analysisResultWithProvider = parserResult.analysisResult ?: return null
         val prefix = context.prefix ?: ""
 
-        return KotlinCodeCompletionResult(doc, caretOffset, analysisResultWithProvider, prefix)
+        // the tree of the parser result is pinned and belongs to the analysis result
+        return KotlinCodeCompletionResult(doc, caretOffset, parserResult.ktFile, analysisResultWithProvider, prefix)
     }
 
 }
\ No newline at end of file
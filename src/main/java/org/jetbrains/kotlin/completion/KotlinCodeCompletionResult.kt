@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.completion
 
 import javax.swing.text.Document
+import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
 import org.netbeans.modules.csl.api.CodeCompletionResult
 import org.netbeans.modules.csl.api.CompletionProposal
@@ -26,10 +27,10 @@ import org.netbeans.modules.csl.api.CompletionProposal
  * @author Alexander.Baratynski
  */
 class KotlinCodeCompletionResult(private val doc: Document, offset: Int,
-                                 analysisResult: AnalysisResultWithProvider,
+                                 ktFile: KtFile, analysisResult: AnalysisResultWithProvider,
                                  prefix: String) : CodeCompletionResult() {
     
-    private val proposals: List<CompletionProposal> = createProposals(doc, offset, analysisResult, prefix)
+    private val proposals: List<CompletionProposal> = createProposals(doc, offset, ktFile, analysisResult, prefix)
 
     override fun getItems() = proposals
     override fun isTruncated() = false
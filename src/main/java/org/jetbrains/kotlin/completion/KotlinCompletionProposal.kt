@@ -16,7 +16,6 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.completion
 
-import com.intellij.psi.util.PsiTreeUtil
 import javax.swing.ImageIcon
 import javax.swing.SwingUtilities
 import javax.swing.text.StyledDocument
@@ -27,7 +26,6 @@ import org.jetbrains.kotlin.descriptors.PackageFragmentDescriptor
 import org.jetbrains.kotlin.descriptors.PackageViewDescriptor
 import org.jetbrains.kotlin.descriptors.ValueParameterDescriptor
 import org.jetbrains.kotlin.descriptors.VariableDescriptor
-import org.jetbrains.kotlin.psi.KtImportDirective
 import org.jetbrains.kotlin.renderer.DescriptorRenderer
 import org.jetbrains.kotlin.utils.KotlinImageProvider
 import org.netbeans.modules.csl.api.ElementHandle
@@ -38,13 +36,13 @@ import org.jetbrains.kotlin.resolve.lang.java.resolver.NetBeansJavaSourceElement
 import org.netbeans.api.project.Project
 import org.jetbrains.kotlin.navigation.netbeans.moveCaretToOffset
 import org.jetbrains.kotlin.resolve.lang.java.getJavaDoc
-import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
 import javax.swing.text.Document
 import org.netbeans.modules.csl.api.ElementKind
 
 class KotlinCompletionProposal(private val idenStartOffset: Int,
                                val descriptor: DeclarationDescriptor, val doc: StyledDocument,
-                               val prefix: String, val project: Project) : DefaultCompletionProposal(), InsertableProposal {
+                               val prefix: String, val project: Project,
+                               private val inImport: Boolean = false) : DefaultCompletionProposal(), InsertableProposal {
 
     val text: String = descriptor.name.identifier
     private val proposal: String = DescriptorRenderer.ONLY_NAMES_WITH_SHORT_TYPES.render(descriptor)
@@ -94,13 +92,9 @@ class KotlinCompletionProposal(private val idenStartOffset: Int,
         val functionDescriptor = descriptor as FunctionDescriptor
         val params = functionDescriptor.valueParameters
 
-        val importDirective: KtImportDirective? = PsiTreeUtil.getNonStrictParentOfType(KotlinParser.file?.findElementAt(idenStartOffset - 1),
-                KtImportDirective::class.java)
-        val isImport = importDirective != null
-
         doc.remove(idenStartOffset, prefix.length)
 
-        if (isImport) {
+        if (inImport) {
             doc.insertString(idenStartOffset, text, null)
             SwingUtilities.invokeLater { moveCaretToOffset(doc, idenStartOffset + text.length) }
 
@@ -33,10 +33,11 @@ import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptorWithVisibility
 import org.jetbrains.kotlin.descriptors.TypeParameterDescriptor
 import org.jetbrains.kotlin.descriptors.Visibilities
-import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
 import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.psi.KtClassBody
 import org.jetbrains.kotlin.psi.KtElement
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtImportDirective
 import org.jetbrains.kotlin.psi.KtSimpleNameExpression
 import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.scopes.LexicalScope
@@ -138,8 +139,8 @@ fun getReferenceVariants(simpleNameExpression: KtSimpleNameExpression,
     return helper.getReferenceVariants(simpleNameExpression, DescriptorKindFilter.ALL, nameFilter, false, false, false, null)
 }
 
-fun getSimpleNameExpression(identOffset: Int): KtSimpleNameExpression? {
-    val psi = KotlinParser.file?.findElementAt(identOffset) ?: return null
+fun getSimpleNameExpression(ktFile: KtFile, identOffset: Int): KtSimpleNameExpression? {
+    val psi = ktFile.findElementAt(identOffset) ?: return null
     return PsiTreeUtil.getParentOfType(psi, KtSimpleNameExpression::class.java)
 }
 
@@ -162,10 +163,10 @@ fun getIdentifierStartOffset(text: String, offset: Int): Int {
     return identStartOffset
 }
 
-private fun generateBasicCompletionProposals(file: FileObject, identifierPart: String,
+private fun generateBasicCompletionProposals(file: FileObject, ktFile: KtFile, identifierPart: String,
                                              identOffset: Int, editorText: String,
                                              result: AnalysisResultWithProvider): Collection<DeclarationDescriptor> {
-    var simpleNameExpression = getSimpleNameExpression(identOffset)
+    var simpleNameExpression = getSimpleNameExpression(ktFile, identOffset)
     if (simpleNameExpression != null) return getReferenceVariants(simpleNameExpression,
             {applicableNameFor(identifierPart, it)}, file, result)
     
@@ -174,8 +175,12 @@ private fun generateBasicCompletionProposals(file: FileObject, identifierPart: S
 }
 
 
+/**
+ * Proposals at [caretOffset] of [doc], whose text was parsed into [ktFile] and analyzed into [result].
+ * The tree must not change while the proposals are created.
+ */
 fun createProposals(doc: Document, caretOffset: Int,
-                    result: AnalysisResultWithProvider,
+                    ktFile: KtFile, result: AnalysisResultWithProvider,
                     prefix: String): List<CompletionProposal> {
     val file = ProjectUtils.getFileObjectForDocument(doc) ?: return emptyList()
     val styledDoc = doc as? StyledDocument ?: return emptyList()
@@ -184,18 +189,19 @@ fun createProposals(doc: Document, caretOffset: Int,
     val identOffset = getIdentifierStartOffset(editorText, caretOffset)
     val identifierPart = editorText.substring(identOffset, caretOffset)
     val project = ProjectUtils.getKotlinProjectForFileObject(file) ?: return emptyList()
-    val descriptors = generateBasicCompletionProposals(file, identifierPart, identOffset, editorText, result)
+    val descriptors = generateBasicCompletionProposals(file, ktFile, identifierPart, identOffset, editorText, result)
+    val inImport = PsiTreeUtil.getNonStrictParentOfType(ktFile.findElementAt(identOffset - 1), KtImportDirective::class.java) != null
     
     val proposals: MutableList<CompletionProposal> = descriptors.filter { it !is JavaClassConstructorDescriptor }
-            .map { KotlinCompletionProposal(identOffset, it, styledDoc, prefix, project) }
+            .map { KotlinCompletionProposal(identOffset, it, styledDoc, prefix, project, inImport) }
             .toMutableList()
-    val ktFile = KotlinParser.file ?: ProjectUtils.getKtFile(editorText, file) ?:  return proposals
     val psiElement = ktFile.findElementAt(identOffset) ?: return proposals
     
     proposals.addAll(generateKeywordProposals(identifierPart, psiElement, identOffset, prefix))
     val simpleNameExpression = PsiTreeUtil.getParentOfType(psiElement, KtSimpleNameExpression::class.java)
     if (simpleNameExpression != null) {
-        proposals.addAll(generateNonImportedCompletionProposals(prefix, ktFile, simpleNameExpression, project, identOffset))
+        proposals.addAll(generateNonImportedCompletionProposals(prefix, ktFile, simpleNameExpression, project, identOffset,
+                result.analysisResult.bindingContext))
     }
     
     return proposals.distinctBy { it.sortText }
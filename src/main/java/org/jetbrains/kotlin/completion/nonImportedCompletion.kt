@@ -18,24 +18,32 @@ package org.jetbrains.kotlin.completion
 
 import org.jetbrains.kotlin.psi.KtSimpleNameExpression
 import org.jetbrains.kotlin.idea.util.CallTypeAndReceiver
+import org.jetbrains.kotlin.psi.KtExpression
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.DescriptorUtils
 import org.jetbrains.kotlin.resolve.lang.java.findTypes
 import org.jetbrains.kotlin.hints.fixes.autoImport
-import org.jetbrains.kotlin.utils.ProjectUtils
+import org.jetbrains.kotlin.indexer.ANY_RECEIVER
+import org.jetbrains.kotlin.indexer.IndexedDeclaration
+import org.jetbrains.kotlin.indexer.IndexedDeclarationKind
+import org.jetbrains.kotlin.indexer.KotlinDeclarationIndex
+import org.jetbrains.kotlin.indexer.LibraryCallablesIndex
+import org.jetbrains.kotlin.types.typeUtil.supertypes
 import org.netbeans.api.project.Project
 import org.netbeans.modules.csl.api.ElementKind
 import org.netbeans.modules.csl.api.HtmlFormatter
 import org.netbeans.modules.csl.spi.DefaultCompletionProposal
 import org.jetbrains.kotlin.utils.KotlinImageProvider
-import org.jetbrains.kotlin.search.PublicFunctionsVisitor
 import javax.swing.text.Document
 
 fun generateNonImportedCompletionProposals(identifierPart: String,
                                            ktFile: KtFile, expression: KtSimpleNameExpression,
-                                           project: Project, idenOffset: Int) =
+                                           project: Project, idenOffset: Int,
+                                           bindingContext: BindingContext) =
         lookupNonImportedTypes(expression, identifierPart, ktFile, project, idenOffset)
                 .toMutableList()
-                .apply { addAll(lookupNonImportedFunctions(identifierPart, project, idenOffset)) }
+                .apply { addAll(lookupNonImportedCallables(expression, identifierPart, ktFile, project, idenOffset, bindingContext)) }
 
 private fun lookupNonImportedTypes(simpleNameExpression: KtSimpleNameExpression,
                                    identifierPart: String, ktFile: KtFile,
@@ -56,16 +64,51 @@ private fun lookupNonImportedTypes(simpleNameExpression: KtSimpleNameExpression,
             .map { NonImportedCompletionProposal(identifierPart, it.qualifiedName, ElementKind.CLASS, idenOffset) }
 }
 
-private fun lookupNonImportedFunctions(identifierPart: String, 
-                                       project: Project, 
-                                       idenOffset: Int) = ProjectUtils.getSourceFiles(project)
-        .flatMap { ktFile ->
-            PublicFunctionsVisitor({ it.startsWith(identifierPart) }).let {
-                ktFile.acceptChildren(it)
-                it.publicFunctions
-            }
+private fun lookupNonImportedCallables(simpleNameExpression: KtSimpleNameExpression,
+                                       identifierPart: String, ktFile: KtFile,
+                                       project: Project, idenOffset: Int,
+                                       bindingContext: BindingContext): List<NonImportedCompletionProposal> {
+    val callTypeAndReceiver = CallTypeAndReceiver.detect(simpleNameExpression)
+    val receiverTypeNames = when (callTypeAndReceiver) {
+        is CallTypeAndReceiver.DEFAULT -> null
+        is CallTypeAndReceiver.DOT, is CallTypeAndReceiver.SAFE -> {
+            val receiver = callTypeAndReceiver.receiver as? KtExpression ?: return emptyList()
+            receiver.typeNames(bindingContext) ?: return emptyList()
         }
-        .map { NonImportedCompletionProposal(identifierPart, it, ElementKind.METHOD, idenOffset) }
+        else -> return emptyList()
+    }
+    
+    val importsSet = ktFile.importDirectives.mapNotNullTo(hashSetOf()) { it.importedFqName?.asString() }
+    val packageName = ktFile.packageFqName.asString()
+    val sourceCallables = KotlinDeclarationIndex.findTopLevelCallables(project, identifierPart).map { it.declaration }
+    val libraryCallables = LibraryCallablesIndex.getInstance(project).findByPrefix(identifierPart)
+    
+    return (sourceCallables + libraryCallables)
+            .filter { it.fqName !in importsSet && it.packageName != packageName }
+            .filter { it.isApplicableTo(receiverTypeNames) }
+            .distinctBy { it.fqName }
+            .map { 
+                val kind = if (it.kind == IndexedDeclarationKind.FUNCTION) ElementKind.METHOD else ElementKind.FIELD
+                NonImportedCompletionProposal(identifierPart, it.fqName, kind, idenOffset)
+            }
+}
+
+// fq names and short names of the type of the expression and of all its supertypes,
+// short names are matched by receivers which could not be qualified when they were indexed
+private fun KtExpression.typeNames(bindingContext: BindingContext): Set<String>? {
+    val type = bindingContext.getType(this) ?: return null
+    
+    return (listOf(type) + type.supertypes())
+            .mapNotNull { it.constructor.declarationDescriptor }
+            .flatMapTo(hashSetOf(ANY_RECEIVER, "Any")) { listOf(it.name.asString(), DescriptorUtils.getFqName(it).asString()) }
+}
+
+private fun IndexedDeclaration.isApplicableTo(receiverTypeNames: Set<String>?): Boolean {
+    if (receiverTypeNames == null) return receiver == null
+    val receiver = receiver ?: return false
+    
+    return receiver.substringBefore('<').removeSuffix("?") in receiverTypeNames
+}
 
 
 class NonImportedCompletionProposal(private val identifierPart: String,
@@ -84,6 +127,7 @@ class NonImportedCompletionProposal(private val identifierPart: String,
     override fun getIcon() = when (elemKind) {
         ElementKind.CLASS -> KotlinImageProvider.typeImage
         ElementKind.METHOD -> KotlinImageProvider.functionImage
+        ElementKind.FIELD -> KotlinImageProvider.propertyImage
         else -> null
     }
 
@@ -17,9 +17,18 @@
 package org.jetbrains.kotlin.diagnostics.netbeans.parser
 
 import javax.swing.event.ChangeListener
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.model.KotlinLightVirtualFile
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isScanning
+import org.jetbrains.kotlin.resolve.AnalysisLevel
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
+import org.jetbrains.kotlin.resolve.CancellationToken
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache.Companion.contentStamp
+import org.jetbrains.kotlin.resolve.KotlinAnalysisScheduler
+import org.jetbrains.kotlin.resolve.KotlinIncrementalResolver
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCancellation
 import org.jetbrains.kotlin.resolve.KotlinAnalyzer
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.psi.KtFile
@@ -31,62 +40,63 @@ import org.netbeans.modules.parsing.spi.*
 class KotlinParser : Parser() {
 
     companion object {
-        var file: KtFile? = null
-            private set
-
-        var project: Project? = null
-            private set
-        
-        var analysisResult: AnalysisResultWithProvider? = null
-        
-        @JvmStatic fun getAnalysisResult(ktFile: KtFile,
-                                         proj: Project) = if (ktFile upToDate file) analysisResult else analyze(ktFile, proj)
-        
-        private fun analyze(ktFile: KtFile, 
-                            proj: Project): AnalysisResultWithProvider? = KotlinAnalyzer.analyzeFile(proj, ktFile)
-                .also { 
-                    project = proj 
-                    file = ktFile
-                    analysisResult = it
+        @JvmStatic @JvmOverloads
+        fun getAnalysisResult(ktFile: KtFile, proj: Project, 
+                              level: AnalysisLevel = AnalysisLevel.FULL,
+                              cancellationToken: CancellationToken? = null): AnalysisResultWithProvider? {
+            val cache = KotlinAnalysisCache.getInstance(proj)
+            
+            val priority = KotlinAnalysisScheduler.priorityOf((ktFile.virtualFile as? KotlinLightVirtualFile)?.fo)
+            
+            return cache.getOrAnalyze(ktFile, level) { 
+                KotlinAnalysisScheduler.run(priority, "Analysis of ${ktFile.name}") {
+                    KotlinAnalysisCancellation.runCancelable(cancellationToken, "Analysis of ${ktFile.name}") {
+                        val stamp = it.contentStamp
+                        // edits inside of bodies only are resolved on top of the previous result
+                        KotlinIncrementalResolver.reanalyze(it, cache) ?: KotlinAnalyzer.analyzeFile(proj, it, level)
+                                .also { result -> if (result.level == AnalysisLevel.FULL) KotlinIncrementalResolver.analyzed(it, stamp) }
+                    }
                 }
-        
-        private infix fun KtFile.upToDate(ktFile: KtFile?) = 
-                virtualFile.path == ktFile?.virtualFile?.path && text == ktFile.text
+            }
+        }
         
     }
 
     private lateinit var snapshot: Snapshot
-    private var cancel = false
+    private var parsedFile: KtFile? = null
+    private var parsedProject: Project? = null
+    private var analyze = false
+    private var cancellationToken = CancellationToken()
 
+    // only the syntax tree is built here, analysis runs when a task asks the result for it
     override fun parse(snapshot: Snapshot, task: Task, event: SourceModificationEvent) {
         this.snapshot = snapshot
-        cancel = false
+        // analysis of the previous snapshot is not needed anymore
+        cancellationToken.cancel()
+        cancellationToken = CancellationToken()
         
-        if (SourceUtils.isScanInProgress()) return
-        
-        val project = ProjectUtils.getKotlinProjectForFileObject(snapshot.source.fileObject)
-        if (project.isScanning()) return
-        if (cancel) return
-
-        val ktFile = ProjectUtils.getKtFile(snapshot.text.toString(), snapshot.source.fileObject)
-
-        getAnalysisResult(ktFile, project)
+        val fileObject = snapshot.source.fileObject
+        val project = fileObject?.let { ProjectUtils.getKotlinProjectForFileObject(it) }
+        parsedProject = project
+        parsedFile = project?.let { ProjectUtils.getKtFile(snapshot.text.toString(), fileObject) }
+        analyze = !SourceUtils.isScanInProgress() && project?.isScanning() == false
     }
 
+    // every result pins the tree of the snapshot, which was usually reparsed by parse() already
     override fun getResult(task: Task): Result? {
-        val project = project ?: return null
-        val ktFile = if (snapshot.source.fileObject.path == file?.virtualFile?.path) file else null
-        ktFile ?: return null
-        val result = getAnalysisResult(ktFile, project) ?: return null
-
-        return KotlinParserResult(snapshot, result, ktFile, snapshot.source.fileObject, project)
+        val project = parsedProject ?: return null
+        parsedFile ?: return null
+        val fileObject = snapshot.source.fileObject
+        val ktFile = KotlinPsiManager.acquireEditorFile(snapshot.text.toString(), fileObject) ?: return null
+        
+        return KotlinParserResult(snapshot, null, ktFile, fileObject, project, analyze, cancellationToken, pinned = true)
     }
 
     override fun addChangeListener(changeListener: ChangeListener) {}
     override fun removeChangeListener(changeListener: ChangeListener) {}
 
     override fun cancel(reason: CancelReason, event: SourceModificationEvent?) {
-        cancel = true
+        if (reason == CancelReason.SOURCE_MODIFICATION_EVENT) cancellationToken.cancel()
         KotlinLogger.INSTANCE.logInfo("Parser cancel ${reason.name}")
     }
 }
\ No newline at end of file
@@ -16,9 +16,13 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.diagnostics.netbeans.parser
 
+import java.util.concurrent.atomic.AtomicBoolean
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.diagnostics.Errors
 import org.jetbrains.kotlin.resolve.AnalyzingUtils
+import org.jetbrains.kotlin.resolve.AnalysisLevel
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
+import org.jetbrains.kotlin.resolve.CancellationToken
 import org.jetbrains.kotlin.psi.KtFile
 import org.netbeans.api.project.Project
 import org.netbeans.modules.csl.api.Error
@@ -26,15 +30,39 @@ import org.netbeans.modules.csl.spi.ParserResult
 import org.netbeans.modules.parsing.api.Snapshot
 import org.openide.filesystems.FileObject
 
+/**
+ * Result of parsing a snapshot. A [pinned] tree was acquired from [KotlinPsiManager.acquireEditorFile]: 
+ * it keeps the text of the snapshot until the result is invalidated, and is released then.
+ */
 class KotlinParserResult(snapshot: Snapshot?,
-                         val analysisResult: AnalysisResultWithProvider?,
+                         private val precomputedResult: AnalysisResultWithProvider?,
                          val ktFile: KtFile,
                          val file: FileObject, 
-                         val project: Project) : ParserResult(snapshot) {
+                         val project: Project,
+                         private val analyzeOnDemand: Boolean = false,
+                         private val cancellationToken: CancellationToken? = null,
+                         private val pinned: Boolean = false) : ParserResult(snapshot) {
+    
+    private val valid = AtomicBoolean(true)
 
-    override fun invalidate() {}
+    val analysisResult: AnalysisResultWithProvider?
+        get() = getAnalysisResult(AnalysisLevel.FULL)
+    
+    fun getAnalysisResult(level: AnalysisLevel): AnalysisResultWithProvider? {
+        if (level == AnalysisLevel.SYNTAX) return null
+        if (precomputedResult != null && precomputedResult.level.covers(level)) return precomputedResult
+        // the tree of an invalidated result may have been changed for a newer snapshot
+        if (!analyzeOnDemand || !valid.get()) return null
+        
+        return KotlinParser.getAnalysisResult(ktFile, project, level, cancellationToken)
+    }
+    
+    override fun invalidate() {
+        if (valid.compareAndSet(true, false) && pinned) KotlinPsiManager.releaseFile(ktFile)
+    }
 
     override fun getDiagnostics() = arrayListOf<Error>().apply {
+        val analysisResult = analysisResult
         if (analysisResult != null) {
             addAll(
                     analysisResult.analysisResult.bindingContext.diagnostics.all()
@@ -23,6 +23,7 @@ import java.io.File
 import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.filesystem.lightclasses.LightClassFile
 import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.utils.KotlinParallelScheduler
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.fileClasses.*
 import org.jetbrains.kotlin.fileClasses.NoResolveFileClassesProvider
@@ -40,6 +41,8 @@ import org.netbeans.api.project.Project as NBProject
 class KotlinLightClassManager(private val project: NBProject) {
 
     companion object {
+        private const val LIGHT_CLASSES_BATCH_SIZE = 8
+        
         fun getInstance(project: NBProject): KotlinLightClassManager {
             val ideaProject = KotlinEnvironment.getEnvironment(project).project
             return ServiceManager.getService(ideaProject, KotlinLightClassManager::class.java)
@@ -60,25 +63,21 @@ class KotlinLightClassManager(private val project: NBProject) {
         }
     }
 
-    private val sourceFiles = hashMapOf<File, Set<FileObject>>()
+    // replaced as a whole, so readers never see a half-computed map
+    @Volatile private var sourceFiles: Map<File, Set<FileObject>> = emptyMap()
 
     fun computeLightClassesSources() {
+        val files = KotlinPsiManager.getFilesByProject(project).toList()
+        val lightClassesPaths = KotlinParallelScheduler.map(files, LIGHT_CLASSES_BATCH_SIZE) { getLightClassesPaths(it) }
+        
         val newSourceFilesMap = hashMapOf<File, MutableSet<FileObject>>()
-        for (sourceFile in KotlinPsiManager.getFilesByProject(project)) {
-            val lightClassesPaths = getLightClassesPaths(sourceFile)
-            for (path in lightClassesPaths) {
+        files.zip(lightClassesPaths).forEach { (sourceFile, paths) ->
+            for (path in paths) {
                 val lightClassFile = LightClassFile(project, path)
-                var newSourceFiles = newSourceFilesMap[lightClassFile.asFile()]
-                if (newSourceFiles == null) {
-                    newSourceFiles = hashSetOf<FileObject>()
-                    newSourceFilesMap.put(lightClassFile.asFile(), newSourceFiles)
-                }
-
-                newSourceFiles.add(sourceFile)
+                newSourceFilesMap.getOrPut(lightClassFile.asFile()) { hashSetOf() }.add(sourceFile)
             }
         }
-        sourceFiles.clear()
-        sourceFiles.putAll(newSourceFilesMap)
+        sourceFiles = newSourceFilesMap
     }
 
     fun getLightClassesPaths(sourceFile: FileObject?): List<String> {
@@ -67,13 +67,14 @@ object KotlinLightClassGeneration {
     }
 
     fun getByteCode(file: FileObject, project: Project?,
-                    analysisResult: AnalysisResult): List<ByteArray> {
+                    analysisResult: AnalysisResult,
+                    computeSources: Boolean = true): List<ByteArray> {
         if (project == null) return emptyList()
 
         val code = arrayListOf<ByteArray>()
 
         val manager = KotlinLightClassManager.getInstance(project)
-        manager.computeLightClassesSources()
+        if (computeSources) manager.computeLightClassesSources()
 
         manager.getLightClassesPaths(file).forEach {
             val lightClass = File("${project.projectDirectory.path}${ProjectUtils.FILE_SEPARATOR}$it")
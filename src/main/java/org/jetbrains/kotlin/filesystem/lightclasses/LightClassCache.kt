@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.filesystem.lightclasses
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getFullClassPath
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getKotlinSources
+import org.jetbrains.kotlin.psi.KtAnonymousInitializer
+import org.jetbrains.kotlin.psi.KtBlockExpression
+import org.jetbrains.kotlin.psi.KtDeclaration
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.KtPropertyAccessor
+import org.jetbrains.kotlin.psi.KtSecondaryConstructor
+import org.jetbrains.kotlin.psi.KtTreeVisitorVoid
+import org.jetbrains.kotlin.utils.ProjectUtils
+import org.netbeans.api.project.Project
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileUtil
+import org.openide.modules.Places
+
+/**
+ * Light classes and Java stubs generated for a Kotlin file.
+ * [stubs] are pairs of the internal class name and the stub source.
+ */
+class LightClassCacheEntry(val byteCode: List<ByteArray>, val stubs: List<Pair<String, String>>)
+
+/**
+ * On-disk cache of [LightClassCacheEntry]s in the NetBeans cache directory. An entry is keyed by
+ * the content of its source file and by the dependency hash of the project, which covers the
+ * declarations of all Kotlin sources (block bodies excluded), the Java sources, the libraries
+ * and the compiled classes on the classpath.
+ * The least recently used entries are deleted once the cache grows over [maxSize] bytes.
+ */
+class LightClassCache(private val directory: File, private val maxSize: Long = DEFAULT_MAX_SIZE) {
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 64L * 1024 * 1024
+        private const val VERSION = 1
+        private const val ENTRY_EXTENSION = ".lc"
+        
+        val INSTANCE by lazy { LightClassCache(Places.getCacheSubdirectory("kotlin/lightclasses")) }
+        
+        fun dependencyHash(project: Project, ktFiles: Collection<KtFile>): String {
+            val digest = MessageDigest.getInstance("SHA-1")
+            
+            ktFiles.sortedBy { it.virtualFile?.path ?: it.name }.forEach { 
+                digest.update((it.virtualFile?.path ?: it.name).toByteArray())
+                digest.update(it.declarationsText().toByteArray())
+            }
+            project.getKotlinSources()?.getJavaFiles()?.sortedBy { it.path }?.forEach { 
+                digest.update("${it.path}:${it.lastModified().time}:${it.size}".toByteArray())
+            }
+            
+            val sourceRoots = ProjectUtils.getSourceRoots(project).mapNotNull { FileUtil.toFile(it) }
+            project.getFullClassPath()?.entries()?.forEach { 
+                digest.update(it.url.toString().toByteArray())
+                val archive = FileUtil.archiveOrDirForURL(it.url)
+                when {
+                    archive == null -> {}
+                    archive.isFile -> digest.update("${archive.lastModified()}:${archive.length()}".toByteArray())
+                    // output folders of the project and of its dependency projects
+                    archive.isDirectory && sourceRoots.none { root -> archive.startsWith(root) } -> 
+                        digest.update(archive.classesStamp().toByteArray())
+                }
+            }
+            
+            return digest.digest().toHex()
+        }
+        
+        private fun File.classesStamp(): String {
+            var count = 0
+            var lastModified = 0L
+            walkTopDown().filter { it.isFile && it.name.endsWith(".class") }.forEach { 
+                count++
+                lastModified = maxOf(lastModified, it.lastModified())
+            }
+            
+            return "$count:$lastModified"
+        }
+        
+        // text of the file without block bodies, which do not change light classes
+        private fun KtFile.declarationsText(): String {
+            val bodies = arrayListOf<KtBlockExpression>()
+            accept(object : KtTreeVisitorVoid() {
+                override fun visitDeclaration(declaration: KtDeclaration) {
+                    val body = when (declaration) {
+                        is KtNamedFunction -> declaration.bodyExpression
+                        is KtPropertyAccessor -> declaration.bodyExpression
+                        is KtSecondaryConstructor -> declaration.bodyExpression
+                        is KtAnonymousInitializer -> declaration.body
+                        else -> null
+                    }
+                    if (body is KtBlockExpression) bodies.add(body) else super.visitDeclaration(declaration)
+                }
+            })
+            
+            val text = StringBuilder(text)
+            bodies.sortedByDescending { it.textRange.startOffset }
+                    .forEach { text.delete(it.textRange.startOffset, it.textRange.endOffset) }
+            
+            return text.toString()
+        }
+        
+        private fun ByteArray.toHex() = joinToString("") { String.format("%02x", it) }
+    }
+    
+    private var size = -1L
+    
+    var hits = 0L
+        private set
+    var misses = 0L
+        private set
+
+    fun key(file: FileObject, dependencyHash: String): String {
+        val digest = MessageDigest.getInstance("SHA-1")
+        digest.update(file.nameExt.toByteArray())
+        digest.update(file.asBytes())
+        digest.update(dependencyHash.toByteArray())
+        
+        return digest.digest().toHex()
+    }
+
+    @Synchronized fun get(key: String): LightClassCacheEntry? {
+        val file = File(directory, key + ENTRY_EXTENSION)
+        if (!file.isFile) {
+            misses++
+            return null
+        }
+        
+        return try {
+            val entry = DataInputStream(file.inputStream().buffered()).use { it.readEntry() }
+            file.setLastModified(System.currentTimeMillis())
+            hits++
+            entry
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot read light class cache entry $file", ex)
+            remove(file)
+            misses++
+            null
+        }
+    }
+
+    @Synchronized fun put(key: String, entry: LightClassCacheEntry) {
+        val file = File(directory, key + ENTRY_EXTENSION)
+        val tmp = File(directory, key + ".tmp")
+        try {
+            directory.mkdirs()
+            DataOutputStream(tmp.outputStream().buffered()).use { it.writeEntry(entry) }
+            remove(file)
+            if (!tmp.renameTo(file)) throw IOException("Cannot rename $tmp to $file")
+            
+            if (size >= 0) size += file.length()
+            evict()
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot write light class cache entry $file", ex)
+            tmp.delete()
+        }
+    }
+
+    @Synchronized fun clear() {
+        entryFiles().forEach { it.delete() }
+        size = 0
+    }
+
+    private fun remove(file: File) {
+        if (!file.exists()) return
+        
+        val length = file.length()
+        if (file.delete() && size >= 0) size -= length
+    }
+
+    private fun evict() {
+        if (size < 0) size = entryFiles().sumByLong { it.length() }
+        if (size <= maxSize) return
+        
+        val files = entryFiles().sortedBy { it.lastModified() }.iterator()
+        while (size > maxSize * 3 / 4 && files.hasNext()) {
+            remove(files.next())
+        }
+    }
+
+    private fun entryFiles(): List<File> = directory.listFiles()?.filter { it.name.endsWith(ENTRY_EXTENSION) } ?: emptyList()
+
+    private fun DataOutputStream.writeEntry(entry: LightClassCacheEntry) {
+        writeInt(VERSION)
+        writeInt(entry.byteCode.size)
+        entry.byteCode.forEach { 
+            writeInt(it.size)
+            write(it)
+        }
+        writeInt(entry.stubs.size)
+        entry.stubs.forEach { (className, code) ->
+            writeUTF(className)
+            val bytes = code.toByteArray(Charsets.UTF_8)
+            writeInt(bytes.size)
+            write(bytes)
+        }
+    }
+
+    private fun DataInputStream.readEntry(): LightClassCacheEntry {
+        if (readInt() != VERSION) throw IOException("Unsupported light class cache entry version")
+        
+        val byteCode = (1..readInt()).map { ByteArray(readInt()).apply { readFully(this) } }
+        val stubs = (1..readInt()).map {
+            val className = readUTF()
+            val bytes = ByteArray(readInt()).apply { readFully(this) }
+            className to String(bytes, Charsets.UTF_8)
+        }
+        
+        return LightClassCacheEntry(byteCode, stubs)
+    }
+
+}
+
+private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+    var sum = 0L
+    forEach { sum += selector(it) }
+    return sum
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.filesystem.lightclasses
+
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.project.KotlinSourceChanges
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
+import org.netbeans.api.project.Project
+import org.openide.filesystems.FileAttributeEvent
+import org.openide.filesystems.FileChangeListener
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileRenameEvent
+
+/**
+ * Last [LightClassCache.dependencyHash] of a project. It is computed again after a source of the 
+ * project or of its dependency projects changed, and after the classpath changed, which is seen 
+ * as a new classpath generation of the environment.
+ */
+class LightClassDependencyHash private constructor(private val project: Project) {
+    
+    companion object {
+        private val instances = hashMapOf<Project, LightClassDependencyHash>()
+        
+        @JvmStatic @Synchronized fun getInstance(project: Project) = instances.getOrPut(project) { 
+            LightClassDependencyHash(project).apply { startListening() } 
+        }
+        
+        @JvmStatic @Synchronized fun remove(project: Project) {
+            instances.remove(project)?.stopListening()
+        }
+    }
+    
+    @Volatile private var hash: String? = null
+    @Volatile private var classpathGeneration = -1L
+    @Volatile private var sourceStamp = 0L
+    
+    private val watchedChanges = arrayListOf<KotlinSourceChanges>()
+    
+    fun get(compute: () -> String): String {
+        val generation = KotlinEnvironment.getEnvironment(project).classpathGeneration
+        hash?.let { if (generation == classpathGeneration) return it }
+        
+        val stamp = sourceStamp
+        val value = compute()
+        // a hash computed while a source was changing may miss the change
+        synchronized(this) { 
+            if (stamp == sourceStamp) {
+                hash = value
+                classpathGeneration = generation
+            }
+        }
+        
+        return value
+    }
+    
+    private fun invalidate() = synchronized(this) { 
+        sourceStamp++
+        hash = null
+    }
+    
+    private val sourcesListener = object : FileChangeListener {
+        override fun fileFolderCreated(fe: FileEvent) {}
+        override fun fileDataCreated(fe: FileEvent) = invalidate()
+        override fun fileChanged(fe: FileEvent) = invalidate()
+        override fun fileDeleted(fe: FileEvent) = invalidate()
+        override fun fileRenamed(fe: FileRenameEvent) = invalidate()
+        override fun fileAttributeChanged(fe: FileAttributeEvent) {}
+    }
+    
+    private fun startListening() {
+        val projects = if (project.isMavenProject()) {
+            listOf(project) + MavenHelper.getDependencyProjects(project)
+        } else listOf(project)
+        
+        projects.map { KotlinSourceChanges.getInstance(it) }.forEach { 
+            it.addListener(sourcesListener)
+            watchedChanges.add(it)
+        }
+    }
+    
+    private fun stopListening() {
+        watchedChanges.forEach { it.removeListener(sourcesListener) }
+        watchedChanges.clear()
+    }
+    
+}
@@ -18,13 +18,21 @@ package org.jetbrains.kotlin.filesystem
 
 import java.io.File
 import org.jetbrains.kotlin.builder.KotlinPsiManager
-import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
-import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
+import org.jetbrains.kotlin.resolve.AnalysisPriority
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinAnalyzer
+import org.jetbrains.kotlin.resolve.KotlinAnalysisScheduler
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
 import org.jetbrains.kotlin.resolve.NetBeansAnalyzerFacadeForJVM
 import org.jetbrains.kotlin.filesystem.lightclasses.KotlinLightClassGeneration
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassCache
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassCacheEntry
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassDependencyHash
 import org.jetbrains.kotlin.log.KotlinLogger
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper
+import org.jetbrains.kotlin.utils.KotlinParallelScheduler
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.utils.hasMain
 import org.netbeans.api.project.Project
@@ -43,32 +51,66 @@ fun translate(files: Iterable<File>, result: VirtualSourceProvider.Result) {
 
     val project = filesToTranslate.firstOrNull()?.let { ProjectUtils.getKotlinProjectForFileObject(it) } ?: return
     
-    if (filesToTranslate.size == KotlinPsiManager.getFilesByProject(project, false).size) {
-        if (KotlinVirtualSourceProvider.isFullyTranslated(project)) return else KotlinVirtualSourceProvider.translated(project)
-        val startTime = System.nanoTime()
-        val analysisResult = NetBeansAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
-                project, KotlinEnvironment.getEnvironment(project).project,
-                ProjectUtils.getSourceFilesWithDependencies(project))
-        KotlinLogger.INSTANCE.logInfo("Kotlin analysis took ${(System.nanoTime() - startTime)}")
-        filesToTranslate.translate(result, analysisResult, project)
-        return
+    // the environment is not evicted while the translated files are analyzed and generated
+    KotlinEnvironmentManager.withEnvironment(project) { environment ->
+        if (filesToTranslate.size == KotlinPsiManager.getFilesByProject(project, false).size) {
+            if (KotlinVirtualSourceProvider.isFullyTranslated(project)) return@withEnvironment 
+            KotlinVirtualSourceProvider.translated(project)
+            filesToTranslate.translate(result, project) {
+                // editors are not kept waiting for the translation of the whole project
+                KotlinAnalysisScheduler.run(AnalysisPriority.BACKGROUND, "Analysis of ${project.projectDirectory.name}") {
+                    val startTime = System.nanoTime()
+                    NetBeansAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                            project, environment.project, KotlinResolveSession.getInstance(project).getSourceFiles())
+                            .also { KotlinLogger.INSTANCE.logInfo("Kotlin analysis took ${(System.nanoTime() - startTime)}") }
+                }
+            }
+        } else filesToTranslate.translate(result, project) { null }
     }
-
-    filesToTranslate.translate(result)
 }
 
+// files with a cached entry skip analysis and code generation
 private fun List<FileObject>.translate(result: VirtualSourceProvider.Result,
-                                       analysisResult: AnalysisResultWithProvider? = null,
-                                       proj: Project? = null) = map { Pair(it, it.byteCode(analysisResult, proj)) }
-        .filter { it.second.isNotEmpty() }
-        .forEach {
-            val stubs = JavaStubGenerator.gen(it.second)
-            stubs.forEach { (first, code) ->
-                val packageName = first.name.substringBeforeLast("/")
-
-                result.add(FileUtil.toFile(it.first), packageName, it.first.name, code)
-            }
+                                       project: Project,
+                                       analyze: () -> AnalysisResultWithProvider?) {
+    val cache = LightClassCache.INSTANCE
+    val dependencyHash = LightClassDependencyHash.getInstance(project).get { 
+        LightClassCache.dependencyHash(project, KotlinResolveSession.getInstance(project).getSourceFiles())
+    }
+    
+    val missed = arrayListOf<Pair<FileObject, String>>()
+    forEach { 
+        val key = cache.key(it, dependencyHash)
+        val entry = cache.get(key)
+        if (entry != null) result.add(it, entry.stubs) else missed.add(it to key)
+    }
+    if (KotlinLogger.INSTANCE.isFineLoggable) {
+        KotlinLogger.INSTANCE.logFine("Light class cache: ${size - missed.size} of $size files are up to date")
+    }
+    if (missed.isEmpty()) return
+    
+    val analysisResult by lazy(analyze)
+    KotlinLightClassManager.getInstance(project).computeLightClassesSources()
+    // code generation resolves lazily into the container and trace shared by all files, 
+    // so it runs on this thread. Only stubs are generated from the finished bytecode in parallel.
+    val byteCodes = missed.map { (file, _) -> file.byteCode(analysisResult, project, false) }
+    val generateStubs = { key: String, byteCode: List<ByteArray> ->
+        if (byteCode.isEmpty()) null else {
+            val stubs = JavaStubGenerator.gen(byteCode).map { (classNode, code) -> classNode.name to code }
+            LightClassCacheEntry(byteCode, stubs).also { cache.put(key, it) }
         }
+    }
+    
+    val entries = KotlinParallelScheduler.map(missed.map { it.second }.zip(byteCodes)) { (key, byteCode) -> generateStubs(key, byteCode) }
+    
+    missed.map { it.first }.zip(entries).forEach { (file, entry) -> if (entry != null) result.add(file, entry.stubs) }
+}
+
+private fun VirtualSourceProvider.Result.add(file: FileObject, stubs: List<Pair<String, String>>) = stubs.forEach { (className, code) -> 
+    val packageName = className.substringBeforeLast("/")
+    
+    add(FileUtil.toFile(file), packageName, file.name, code)
+}
 
 private fun File?.skipTranslating(): Boolean {
     if (this == null) return true
@@ -81,11 +123,14 @@ private fun File?.skipTranslating(): Boolean {
 }
 
 private fun FileObject.byteCode(result: AnalysisResultWithProvider? = null,
-                                proj: Project? = null): List<ByteArray> {
+                                proj: Project? = null,
+                                computeSources: Boolean = true): List<ByteArray> {
     val project = proj ?: ProjectUtils.getKotlinProjectForFileObject(this) ?: return emptyList()
     val ktFile = ProjectUtils.getKtFile(this) ?: return emptyList()
-    val analysisResult = result ?: KotlinParser.getAnalysisResult(ktFile, project) ?: return emptyList()
+    val analysisResult = result ?: KotlinAnalysisCache.getInstance(project).getOrAnalyze(ktFile) { 
+        KotlinAnalysisScheduler.run(AnalysisPriority.BACKGROUND, "Analysis of ${it.name}") { KotlinAnalyzer.analyzeFile(project, it) }
+    } ?: return emptyList()
 
-    return KotlinLightClassGeneration.getByteCode(this, project, analysisResult.analysisResult)
+    return KotlinLightClassGeneration.getByteCode(this, project, analysisResult.analysisResult, computeSources)
 }
 
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.highlighter
+
+import com.intellij.psi.tree.IElementType
+import org.jetbrains.kotlin.lexer.KtTokens
+
+enum class TemplateKind(val opening: String) {
+    STRING("\""), 
+    RAW_STRING("\"\"\""), 
+    SHORT_TEMPLATE("$"), 
+    LONG_TEMPLATE("\${")
+}
+
+data class TemplateFrame(val kind: TemplateKind, val braces: Int = 0) {
+    val opening: String
+        get() = kind.opening + "{".repeat(braces)
+}
+
+/*
+  Lexer state between two tokens. Block comments are always lexed as a single token, 
+  so only string templates need to be tracked. The state is restored by feeding 
+  the Kotlin lexer with a synthetic prefix that reopens every template frame.
+*/
+data class KotlinLexerState(val frames: List<TemplateFrame> = emptyList(),
+                            val identifierExpected: Boolean = false) {
+    
+    companion object {
+        val INITIAL = KotlinLexerState()
+        
+        private val STRING_CONTENT_TOKENS = setOf<IElementType>(KtTokens.REGULAR_STRING_PART, KtTokens.ESCAPE_SEQUENCE,
+                KtTokens.SHORT_TEMPLATE_ENTRY_START, KtTokens.LONG_TEMPLATE_ENTRY_START, KtTokens.CLOSING_QUOTE)
+        
+        private val IDENTIFIER_EXPECTING_TOKENS = setOf<IElementType>(KtTokens.DOT, KtTokens.SAFE_ACCESS, KtTokens.COLONCOLON,
+                KtTokens.FUN_KEYWORD, KtTokens.VAL_KEYWORD, KtTokens.VAR_KEYWORD, KtTokens.CLASS_KEYWORD,
+                KtTokens.INTERFACE_KEYWORD, KtTokens.OBJECT_KEYWORD, KtTokens.TYPE_ALIAS_KEYWORD, 
+                KtTokens.PACKAGE_KEYWORD, KtTokens.IMPORT_KEYWORD)
+        
+        fun of(state: Any?) = state as? KotlinLexerState ?: INITIAL
+    }
+    
+    val prefix: String
+        get() = frames.joinToString("") { it.opening }
+    
+    /*
+      The state after a token of type [type] has been lexed in this state. 
+      Soft keywords recognized as keywords are passed with their keyword type.
+    */
+    fun next(type: IElementType?, text: CharSequence): KotlinLexerState {
+        val stack = frames.toMutableList()
+        
+        val top = stack.lastOrNull()
+        if (top != null) {
+            when {
+                top.kind == TemplateKind.SHORT_TEMPLATE -> stack.removeAt(stack.lastIndex)
+                top.kind == TemplateKind.STRING && type !in STRING_CONTENT_TOKENS -> stack.removeAt(stack.lastIndex)
+            }
+        }
+        
+        when (type) {
+            KtTokens.OPEN_QUOTE -> stack.add(TemplateFrame(
+                    if (text.length == 3) TemplateKind.RAW_STRING else TemplateKind.STRING))
+            KtTokens.CLOSING_QUOTE, KtTokens.LONG_TEMPLATE_ENTRY_END -> if (stack.isNotEmpty()) stack.removeAt(stack.lastIndex)
+            KtTokens.SHORT_TEMPLATE_ENTRY_START -> stack.add(TemplateFrame(TemplateKind.SHORT_TEMPLATE))
+            KtTokens.LONG_TEMPLATE_ENTRY_START -> stack.add(TemplateFrame(TemplateKind.LONG_TEMPLATE))
+            KtTokens.LBRACE, KtTokens.RBRACE -> {
+                val template = stack.lastOrNull()
+                if (template != null && template.kind == TemplateKind.LONG_TEMPLATE) {
+                    val braces = if (type == KtTokens.LBRACE) template.braces + 1 else template.braces - 1
+                    stack[stack.lastIndex] = template.copy(braces = Math.max(braces, 0))
+                }
+            }
+        }
+        
+        val expected = if (type in KtTokens.WHITESPACES || type in KtTokens.COMMENTS) identifierExpected 
+                       else type in IDENTIFIER_EXPECTING_TOKENS
+        
+        return if (stack.isEmpty() && !expected) INITIAL else KotlinLexerState(stack, expected)
+    }
+    
+}
@@ -16,83 +16,179 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.highlighter
 
-import com.intellij.psi.PsiElement
-import org.jetbrains.kotlin.builder.KotlinPsiManager
+import com.intellij.psi.tree.IElementType
+import java.util.ArrayDeque
 import org.jetbrains.kotlin.highlighter.netbeans.KotlinToken
 import org.jetbrains.kotlin.highlighter.netbeans.KotlinTokenId
-import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.lexer.KotlinLexer
+import org.jetbrains.kotlin.lexer.KtKeywordToken
+import org.jetbrains.kotlin.lexer.KtTokens
 import org.netbeans.spi.lexer.LexerInput
 
-class KotlinTokenScanner(private val input: LexerInput?, text: String? = null) {
+/*
+  Scans Kotlin tokens with the raw Kotlin lexer. When reading from a LexerInput 
+  only the lines needed for the next tokens are read, so NetBeans can restart 
+  the scanner from any token using the state returned by [state].
+*/
+class KotlinTokenScanner(private val input: LexerInput?, text: String? = null,
+                         initialState: KotlinLexerState = KotlinLexerState.INITIAL) {
 
+    private class ScannedToken(val type: TokenType, val text: String, val stateAfter: KotlinLexerState)
+    
+    private class RawToken(val type: IElementType, val start: Int, val end: Int)
+    
+    companion object {
+        private val SOFT_KEYWORDS = (KtTokens.SOFT_KEYWORDS.types + KtTokens.MODIFIER_KEYWORDS.types)
+                .filterIsInstance<KtKeywordToken>()
+                .filter { it.isSoft }
+                .associateBy { it.value }
+        
+        private val KEYWORDS_BEFORE_PARENTHESIS = setOf<IElementType>(KtTokens.GET_KEYWORD, KtTokens.SET_KEYWORD,
+                KtTokens.CONSTRUCTOR_KEYWORD, KtTokens.CATCH_KEYWORD)
+        
+        private val KEYWORDS_BEFORE_BRACE = setOf<IElementType>(KtTokens.INIT_KEYWORD, KtTokens.FINALLY_KEYWORD)
+        
+        private fun isSignificant(type: IElementType) = type !in KtTokens.WHITESPACES && type !in KtTokens.COMMENTS
+        
+        private fun isKeywordFollowedBy(keyword: KtKeywordToken, next: IElementType) = when (next) {
+            KtTokens.IDENTIFIER -> true
+            in KtTokens.KEYWORDS -> true
+            KtTokens.LPAR -> keyword in KEYWORDS_BEFORE_PARENTHESIS
+            KtTokens.LBRACE -> keyword in KEYWORDS_BEFORE_BRACE
+            else -> false
+        }
+    }
+    
     private val kotlinTokensFactory = KotlinTokensFactory()
-    private val ktFile: KtFile?
+    private val pending = ArrayDeque<ScannedToken>()
+    private var pendingTextLength = 0
+    
     val tokens = arrayListOf<KotlinToken<KotlinTokenId>>()
     
+    var state = initialState
+        private set
+    
     init {
-        ktFile = if (text == null) {
-            KotlinPsiManager.getParsedKtFileForSyntaxHighlighting(getTextToParse())
-        } else {
-            KotlinPsiManager.getParsedKtFileForSyntaxHighlighting(text)
+        if (text != null) {
+            scan(text, initialState, true).forEach { tokens.add(it.toKotlinToken()) }
+            tokens.add(eofToken())
         }
-        createListOfKotlinTokens()
     }
     
     constructor(text: String) : this(null, text)
     
-    private fun getTextToParse(): String {
-        if (input == null) return ""
-        val builder = StringBuilder()
-        var character: Int
+    fun getNextToken(): KotlinToken<KotlinTokenId>? {
+        if (input == null) return null
+        if (pending.isEmpty()) fillPending(input)
+        
+        val token = pending.pollFirst()
+        if (token == null) {
+            input.read()
+            return eofToken()
+        }
+        
+        // keep the whole scanned text as the token lookahead 
+        repeat(pendingTextLength) { input.read() }
+        input.backup(pendingTextLength - token.text.length)
+        pendingTextLength -= token.text.length
+        state = token.stateAfter
+        
+        return token.toKotlinToken()
+    }
+    
+    private fun fillPending(input: LexerInput) {
+        val text = StringBuilder()
+        var minLength = 0
         
-        do {
-            character = input.read()
-            builder.append(character.toChar())
-        } while (character != LexerInput.EOF)
+        while (true) {
+            val eof = readLine(input, text)
+            if (!eof && text.length < minLength) continue
+            
+            val scanned = scan(text, state, eof)
+            if (scanned.isNotEmpty() || eof) {
+                pending.addAll(scanned)
+                break
+            }
+            minLength = text.length * 2
+        }
         
         input.backup(input.readLengthEOF())
-        return builder.toString()
+        pendingTextLength = text.length
     }
     
-    private fun createListOfKotlinTokens() {
-        tokens.clear()
-        if (ktFile == null) return
+    private fun readLine(input: LexerInput, text: StringBuilder): Boolean {
+        while (true) {
+            val character = input.read()
+            if (character == LexerInput.EOF) return true
+            
+            text.append(character.toChar())
+            if (character == '\n'.toInt()) return false
+        }
+    }
+    
+    /*
+      Returns tokens of [text] that cannot be changed by the text following it. 
+      Unless [eof] is set, a token is complete only if it ends before the last line break.
+      Soft keywords are recognized by the next significant token on the same line.
+    */
+    private fun scan(text: CharSequence, startState: KotlinLexerState, eof: Boolean): List<ScannedToken> {
+        val rawTokens = lex(text, startState.prefix)
+        val completeEnd = if (eof) text.length else text.lastIndexOf('\n')
         
-        var lastElement: PsiElement?
-        var offset = 0
+        val scanned = arrayListOf<ScannedToken>()
+        var currentState = startState
         
-        while(true) {
-            lastElement = ktFile.findElementAt(offset)
-            if (lastElement != null) {
-                offset = lastElement.textRange.endOffset
-                val tokenType = kotlinTokensFactory.getToken(lastElement)
-                tokens.add(KotlinToken(
-                        KotlinTokenId(tokenType.name, tokenType.name, tokenType.getId()),
-                        lastElement.text, tokenType))
-            } else {
-                tokens.add(KotlinToken(
-                        KotlinTokenId(TokenType.EOF.name, TokenType.EOF.name, TokenType.EOF.getId()),
-                        "", TokenType.EOF))
-                break
+        for ((index, token) in rawTokens.withIndex()) {
+            if (token.end > completeEnd) break
+            
+            val tokenText = text.substring(token.start, token.end)
+            var type = token.type
+            
+            if (type == KtTokens.IDENTIFIER && !currentState.identifierExpected) {
+                val keyword = SOFT_KEYWORDS[tokenText]
+                if (keyword != null) {
+                    val next = rawTokens.subList(index + 1, rawTokens.size)
+                            .takeWhile { isSignificant(it.type) || !text.substring(it.start, it.end).contains('\n') }
+                            .firstOrNull { isSignificant(it.type) }
+                    
+                    if (next != null && isKeywordFollowedBy(keyword, next.type)) type = keyword
+                }
+            }
+            
+            currentState = currentState.next(type, tokenText)
+            
+            // zero length tokens (e.g. a line break inside a single-line string) only change the state
+            if (tokenText.isNotEmpty()) {
+                scanned.add(ScannedToken(kotlinTokensFactory.getToken(type), tokenText, currentState))
+            } else if (scanned.isNotEmpty()) {
+                val last = scanned.removeAt(scanned.lastIndex)
+                scanned.add(ScannedToken(last.type, last.text, currentState))
             }
         }
+        
+        return scanned
     }
     
-    fun getNextToken(): KotlinToken<KotlinTokenId>? {
-        if (input == null) return null
-        return if (tokens.isNotEmpty()) {
-            val ktToken = tokens.first()
-            tokens.removeAt(0)
-            var tokenLength = ktToken.length()
-            while (tokenLength > 0) {
-                input.read()
-                tokenLength--
+    private fun lex(text: CharSequence, prefix: String): List<RawToken> {
+        val lexer = KotlinLexer()
+        lexer.start("$prefix$text")
+        
+        val rawTokens = arrayListOf<RawToken>()
+        while (true) {
+            val type = lexer.tokenType ?: break
+            if (lexer.tokenEnd > prefix.length) {
+                val start = Math.max(lexer.tokenStart, prefix.length) - prefix.length
+                rawTokens.add(RawToken(type, start, lexer.tokenEnd - prefix.length))
             }
-            ktToken
-        } else {
-            input.read()
-            KotlinToken(KotlinTokenId(TokenType.EOF.name, TokenType.EOF.name, TokenType.EOF.getId()),
-                    "", TokenType.EOF)
+            lexer.advance()
         }
+        
+        return rawTokens
     }
-}
\ No newline at end of file
+    
+    private fun ScannedToken.toKotlinToken(): KotlinToken<KotlinTokenId> =
+            KotlinToken(KotlinTokenId(type.name, type.name, type.getId()), text, type)
+    
+    private fun eofToken() = KotlinToken(KotlinTokenId(TokenType.EOF.name, TokenType.EOF.name, TokenType.EOF.getId()),
+            "", TokenType.EOF)
+}
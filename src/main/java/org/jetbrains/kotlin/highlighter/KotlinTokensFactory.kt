@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.highlighter
 import org.jetbrains.kotlin.lexer.KtTokens
 import com.intellij.psi.impl.source.tree.LeafPsiElement
 import com.intellij.psi.PsiElement
+import com.intellij.psi.tree.IElementType
 import org.jetbrains.kotlin.kdoc.lexer.KDocTokens
 
 class KotlinTokensFactory {
@@ -26,7 +27,10 @@ class KotlinTokensFactory {
     fun getToken(leafElement: PsiElement): TokenType {
         if (leafElement !is LeafPsiElement) return TokenType.UNDEFINED
 
-        val elementType = leafElement.elementType
+        return getToken(leafElement.elementType)
+    }
+    
+    fun getToken(elementType: IElementType?): TokenType {
         return when (elementType) {
             in KtTokens.KEYWORDS, in KtTokens.SOFT_KEYWORDS, in KtTokens.MODIFIER_KEYWORDS -> TokenType.KEYWORD
             in KtTokens.STRINGS, KtTokens.OPEN_QUOTE, KtTokens.CLOSING_QUOTE -> TokenType.STRING
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.highlighter.netbeans
 
 import org.jetbrains.kotlin.language.KotlinLanguageHierarchy
+import org.jetbrains.kotlin.highlighter.KotlinLexerState
 import org.jetbrains.kotlin.highlighter.KotlinTokenScanner
 import org.netbeans.api.lexer.Token
 import org.netbeans.spi.lexer.Lexer
@@ -25,7 +26,9 @@ import org.netbeans.spi.lexer.LexerRestartInfo
 
 class KotlinLexerProxy(private val info: LexerRestartInfo<KotlinTokenId>) : Lexer<KotlinTokenId> {
     
-    private val kotlinTokenScanner: KotlinTokenScanner by lazy { KotlinTokenScanner(input) }
+    private val kotlinTokenScanner: KotlinTokenScanner by lazy { 
+        KotlinTokenScanner(input, initialState = KotlinLexerState.of(info.state())) 
+    }
     private val input: LexerInput = info.input()
     
     override fun nextToken(): Token<KotlinTokenId>? {
@@ -40,6 +43,6 @@ class KotlinLexerProxy(private val info: LexerRestartInfo<KotlinTokenId>) : Lexe
         }
     }
     
-    override fun state() = null
+    override fun state() = kotlinTokenScanner.state.takeIf { it != KotlinLexerState.INITIAL }
     override fun release() {}
 }
\ No newline at end of file
@@ -22,6 +22,8 @@ import org.jetbrains.kotlin.navigation.references.resolveToSourceDeclaration
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isScanning
 import org.jetbrains.kotlin.psi.KtElement
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.CancellationToken
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCancellation
 import org.jetbrains.kotlin.language.Priorities
 import org.netbeans.modules.csl.api.ColoringAttributes
 import org.netbeans.modules.csl.api.OccurrencesFinder
@@ -32,11 +34,12 @@ import org.netbeans.modules.parsing.spi.SchedulerEvent
 class KotlinOccurrencesFinder : OccurrencesFinder<KotlinParserResult>() {
     
     private var caretPosition = 0
-    private var cancel = false
+    @Volatile private var cancellationToken = CancellationToken()
     private val highlighting = hashMapOf<OffsetRange, ColoringAttributes>()
 
     override fun run(result: KotlinParserResult?, event: SchedulerEvent?) {
-        cancel = false
+        val token = CancellationToken()
+        cancellationToken = token
         highlighting.clear()
         if (result == null) return
         
@@ -46,7 +49,9 @@ class KotlinOccurrencesFinder : OccurrencesFinder<KotlinParserResult>() {
         
         val psiElement = ktFile.findElementAt(caretPosition)
         val ktElement = PsiTreeUtil.getNonStrictParentOfType(psiElement, KtElement::class.java) ?: return
-        findOccurrences(ktElement, ktFile)
+        KotlinAnalysisCancellation.runCancelable(token, "Occurrences search") {
+            findOccurrences(ktElement, ktFile)
+        } ?: highlighting.clear()
     }
 
     override fun getSchedulerClass(): Class<out Scheduler> = Scheduler.EDITOR_SENSITIVE_TASK_SCHEDULER
@@ -56,7 +61,7 @@ class KotlinOccurrencesFinder : OccurrencesFinder<KotlinParserResult>() {
     override fun getOccurrences() = highlighting
     
     override fun cancel() {
-        cancel = true
+        cancellationToken.cancel()
     }
 
     override fun setCaretPosition(position: Int) {
@@ -27,6 +27,7 @@ import org.jetbrains.kotlin.psi.KtElement
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.psi.KtNamedDeclaration
 import org.jetbrains.kotlin.psi.KtReferenceExpression
+import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
 import org.jetbrains.kotlin.resolve.source.KotlinSourceElement
 import org.netbeans.modules.csl.api.OffsetRange
 
@@ -65,7 +66,10 @@ fun searchTextOccurrences(ktFile: KtFile, sourceElement: KtElement): List<KtElem
             .mapNotNull { it.getNonStrictParentOfType(KtElement::class.java) }
     
     return elements.filter { it.filterBeforeResolve() }
-            .filter { it.resolveToSourceDeclaration().filterAfterResolve(sourceElement) }
+            .filter { 
+                ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
+                it.resolveToSourceDeclaration().filterAfterResolve(sourceElement) 
+            }
 }
 
 private fun getAllOccurrencesInFile(ktFile: KtFile, text: String): List<PsiElement> {
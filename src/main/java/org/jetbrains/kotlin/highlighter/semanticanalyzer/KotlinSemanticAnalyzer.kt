@@ -22,6 +22,8 @@ import org.jetbrains.kotlin.diagnostics.Errors
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isScanning
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.CancellationToken
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCancellation
 import org.jetbrains.kotlin.language.Priorities
 import org.netbeans.modules.csl.api.ColoringAttributes
 import org.netbeans.modules.csl.api.OffsetRange
@@ -31,7 +33,7 @@ import org.netbeans.modules.parsing.spi.SchedulerEvent
 
 class KotlinSemanticAnalyzer : SemanticAnalyzer<KotlinParserResult>() {
     
-    private var cancel = false
+    @Volatile private var cancellationToken = CancellationToken()
     private val highlighting = hashMapOf<OffsetRange, Set<ColoringAttributes>>()
     
     private fun highlightDeprecatedElements(bindingContext: BindingContext, ktFile: KtFile) = 
@@ -48,13 +50,15 @@ class KotlinSemanticAnalyzer : SemanticAnalyzer<KotlinParserResult>() {
 
     override fun run(result: KotlinParserResult?, event: SchedulerEvent?) {
         highlighting.clear()
-        cancel = false
+        val token = CancellationToken()
+        cancellationToken = token
         
         if (result == null || result.project.isScanning()) return
           
-        val analysisResult = result.analysisResult?.analysisResult ?: return
-        
-        highlight(analysisResult, result.ktFile)
+        KotlinAnalysisCancellation.runCancelable(token, "Semantic highlighting") {
+            val analysisResult = result.analysisResult?.analysisResult ?: return@runCancelable
+            highlight(analysisResult, result.ktFile)
+        } ?: highlighting.clear()
     }
 
     fun highlight(analysisResult: AnalysisResult, ktFile: KtFile) {
@@ -65,7 +69,7 @@ class KotlinSemanticAnalyzer : SemanticAnalyzer<KotlinParserResult>() {
     }
     
     override fun cancel() {
-        cancel = true
+        cancellationToken.cancel()
     }
 
     override fun getSchedulerClass(): Class<out Scheduler> = Scheduler.EDITOR_SENSITIVE_TASK_SCHEDULER
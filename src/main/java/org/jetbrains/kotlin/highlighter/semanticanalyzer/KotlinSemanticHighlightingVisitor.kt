@@ -22,6 +22,7 @@ import com.intellij.psi.util.PsiTreeUtil
 import org.jetbrains.kotlin.analyzer.AnalysisResult
 import org.jetbrains.kotlin.descriptors.*
 import org.jetbrains.kotlin.descriptors.impl.LocalVariableDescriptor
+import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
 import org.jetbrains.kotlin.psi.*
 import org.jetbrains.kotlin.renderer.DescriptorRenderer
 import org.jetbrains.kotlin.resolve.BindingContext
@@ -54,7 +55,10 @@ class KotlinSemanticHighlightingVisitor(val ktFile: KtFile,
         positions.put(offsetRange, styleAttributes)
     }
 
-    override fun visitElement(element: PsiElement) = element.acceptChildren(this)
+    override fun visitElement(element: PsiElement) {
+        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
+        element.acceptChildren(this)
+    }
 
     override fun visitSimpleNameExpression(expression: KtSimpleNameExpression) {
         val parentExpression = expression.parent
@@ -17,22 +17,22 @@
 package org.jetbrains.kotlin.hints.fixes
 
 import javax.swing.text.Document
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParserResult
 import org.jetbrains.kotlin.psi.*
 import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinError
 import org.jetbrains.kotlin.diagnostics.Errors
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.resolve.lang.java.findFQName
-import org.jetbrains.kotlin.search.PublicFunctionsVisitor
+import org.jetbrains.kotlin.indexer.IndexedDeclarationKind
+import org.jetbrains.kotlin.indexer.KotlinDeclarationIndex
 import org.netbeans.api.project.Project
 import org.netbeans.modules.csl.api.HintSeverity
 
 
 fun autoImport(fqName: String, doc: Document) {
     val file = ProjectUtils.getFileObjectForDocument(doc) ?: return
-    val ktFile = ProjectUtils.getKtFile(doc.getText(0, doc.length), file) ?: return
-
-    insert(fqName, doc, ktFile)
+    KotlinPsiManager.readEditorFile(doc.getText(0, doc.length), file) { insert(fqName, doc, it) }
 }
 
 private fun insert(fqName: String, doc: Document, ktFile: KtFile) {
@@ -66,13 +66,10 @@ private fun getOffsetToInsert(importDirectives: List<KtImportDirective>, fqName:
     return null
 }
 
-private fun Project.getPublicFunctions(name: String) = ProjectUtils.getSourceFiles(this)
-        .flatMap { ktFile ->
-            PublicFunctionsVisitor({ it == name }).let {
-                ktFile.acceptChildren(it)
-                it.publicFunctions
-            }
-        }
+private fun Project.getPublicFunctions(name: String) = KotlinDeclarationIndex.findTopLevelCallables(this, name)
+        .filter { it.declaration.kind == IndexedDeclarationKind.FUNCTION && it.declaration.name == name }
+        .map { it.declaration.fqName }
+        .distinct()
 
 class AutoImportFix(kotlinError: KotlinError,
                     parserResult: KotlinParserResult) : KotlinQuickFix(kotlinError, parserResult) {
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.indexer
+
+import org.openide.filesystems.FileObject
+
+enum class IndexedDeclarationKind {
+    CLASS, INTERFACE, OBJECT, FUNCTION, PROPERTY, TYPEALIAS;
+
+    val isClassifier: Boolean
+        get() = this == CLASS || this == INTERFACE || this == OBJECT || this == TYPEALIAS
+
+    val isCallable: Boolean
+        get() = this == FUNCTION || this == PROPERTY
+}
+
+/**
+ * Declaration header as it is stored in the Kotlin index. [container] is the fq name
+ * of the JVM class which owns the declaration: the containing class for members and
+ * the file facade (e.g. `foo.BarKt`) for top-level callables. [receiver] is the fq name
+ * of the receiver type when it is known and the short name otherwise.
+ */
+data class IndexedDeclaration(val kind: IndexedDeclarationKind,
+                              val name: String,
+                              val fqName: String,
+                              val packageName: String,
+                              val container: String,
+                              val receiver: String?,
+                              val offset: Int,
+                              val isTopLevel: Boolean,
+                              val isPrivate: Boolean) {
+
+    // every field is prefixed with its length, so names and paths may contain any character
+    fun serialize() = listOf(kind.name, name, fqName, packageName, container, offset.toString(),
+            isTopLevel.toString(), isPrivate.toString(), receiver ?: "").joinToString("") { "${it.length}$LENGTH_END$it" }
+
+    companion object {
+        private const val LENGTH_END = ':'
+        private const val FIELDS_COUNT = 9
+
+        fun deserialize(value: String?): IndexedDeclaration? {
+            value ?: return null
+            val parts = arrayListOf<String>()
+            var position = 0
+            while (position < value.length) {
+                val lengthEnd = value.indexOf(LENGTH_END, position)
+                if (lengthEnd < 0) return null
+                val length = value.substring(position, lengthEnd).toIntOrNull() ?: return null
+                val end = lengthEnd + 1 + length
+                if (length < 0 || end > value.length) return null
+
+                parts.add(value.substring(lengthEnd + 1, end))
+                position = end
+            }
+            if (parts.size != FIELDS_COUNT) return null
+
+            val kind = IndexedDeclarationKind.values().firstOrNull { it.name == parts[0] } ?: return null
+            val offset = parts[5].toIntOrNull() ?: return null
+
+            return IndexedDeclaration(kind, parts[1], parts[2], parts[3], parts[4], parts[8].takeIf { it.isNotEmpty() },
+                    offset, parts[6].toBoolean(), parts[7].toBoolean())
+        }
+    }
+}
+
+// receiver of extensions of unbounded type parameters
+const val ANY_RECEIVER = "kotlin.Any"
+
+class DeclarationLocation(val file: FileObject, val declaration: IndexedDeclaration)
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.indexer
+
+import java.io.File
+import java.io.IOException
+import java.net.URL
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.utils.ProjectUtils
+import org.netbeans.api.project.Project
+import org.netbeans.modules.parsing.spi.indexing.support.QuerySupport
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileUtil
+
+/**
+ * Query side of the Kotlin declaration index maintained by [KotlinIndexer].
+ * Roots which were not scanned yet are served by parsing project sources.
+ */
+object KotlinDeclarationIndex {
+
+    const val INDEXER_NAME = "Kotlin Indexer"
+    const val INDEX_VERSION = 4
+
+    const val FIELD_NAME = "name"
+    const val FIELD_FQ_NAME = "fqName"
+    const val FIELD_CONTAINER = "container"
+    const val FIELD_DECLARATION = "declaration"
+
+    private val indexedRoots: MutableSet<URL> = Collections.newSetFromMap(ConcurrentHashMap<URL, Boolean>())
+
+    fun rootIndexed(root: URL) = indexedRoots.add(root)
+
+    fun findAllDeclarations(project: Project, withDependencies: Boolean,
+                            predicate: (IndexedDeclaration) -> Boolean) = find(project, withDependencies,
+            FIELD_NAME, "", QuerySupport.Kind.PREFIX, predicate)
+
+    fun findTopLevelCallables(project: Project, prefix: String) = find(project, false,
+            FIELD_NAME, prefix, QuerySupport.Kind.PREFIX) {
+        it.isTopLevel && it.kind.isCallable && !it.isPrivate && it.name.startsWith(prefix)
+    }
+
+    fun findFilesDeclaringJvmClass(project: Project, jvmClassName: String): Set<FileObject> {
+        val fqName = jvmClassName.replace('$', '.')
+        val byFqName = find(project, false, FIELD_FQ_NAME, fqName, QuerySupport.Kind.EXACT) {
+            it.kind.isClassifier && it.fqName == fqName
+        }
+        val byContainer = find(project, false, FIELD_CONTAINER, fqName, QuerySupport.Kind.EXACT) {
+            it.container == fqName
+        }
+
+        return (byFqName + byContainer).mapTo(linkedSetOf()) { it.file }
+    }
+
+    private fun find(project: Project, withDependencies: Boolean,
+                     field: String, value: String, kind: QuerySupport.Kind,
+                     predicate: (IndexedDeclaration) -> Boolean): List<DeclarationLocation> {
+        val roots = project.indexRoots(withDependencies)
+        if (roots.isEmpty() || roots.any { it.toURL() !in indexedRoots }) {
+            return findInSources(project, withDependencies, predicate)
+        }
+
+        return try {
+            QuerySupport.forRoots(INDEXER_NAME, INDEX_VERSION, *roots.toTypedArray())
+                    .query(field, value, kind, FIELD_DECLARATION)
+                    .mapNotNull { result ->
+                        val file = result.file ?: return@mapNotNull null
+                        val declaration = IndexedDeclaration.deserialize(result.getValue(FIELD_DECLARATION))
+                        if (declaration != null && predicate(declaration)) DeclarationLocation(file, declaration) else null
+                    }
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Kotlin index query failed", ex)
+            findInSources(project, withDependencies, predicate)
+        }
+    }
+
+    private fun Project.indexRoots(withDependencies: Boolean): List<FileObject> {
+        val projects = if (withDependencies && isMavenProject()) {
+            listOf(this) + MavenHelper.getDependencyProjects(this)
+        } else listOf(this)
+
+        return projects.flatMap { 
+            QuerySupport.findRoots(it, null, emptyList<String>(), emptyList<String>()) 
+        }.distinct()
+    }
+
+    private fun findInSources(project: Project, withDependencies: Boolean,
+                              predicate: (IndexedDeclaration) -> Boolean): List<DeclarationLocation> {
+        val ktFiles = if (withDependencies) ProjectUtils.getSourceFilesWithDependencies(project)
+                      else ProjectUtils.getSourceFiles(project)
+
+        return ktFiles.flatMap { ktFile ->
+            val file = ktFile.fileObject() ?: return@flatMap emptyList<DeclarationLocation>()
+            ktFile.collectIndexedDeclarations()
+                    .filter(predicate)
+                    .map { DeclarationLocation(file, it) }
+        }
+    }
+
+    private fun KtFile.fileObject(): FileObject? = FileUtil.toFileObject(File(virtualFile.path))
+}
@@ -18,19 +18,73 @@
  */
 package org.jetbrains.kotlin.indexer;
 
+import java.io.IOException;
+import java.util.List;
+import org.jetbrains.kotlin.builder.KotlinPsiManager;
+import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParserResult;
+import org.jetbrains.kotlin.log.KotlinLogger;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.netbeans.modules.parsing.api.Snapshot;
 import org.netbeans.modules.parsing.spi.Parser;
 import org.netbeans.modules.parsing.spi.indexing.Context;
 import org.netbeans.modules.parsing.spi.indexing.EmbeddingIndexer;
 import org.netbeans.modules.parsing.spi.indexing.Indexable;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexDocument;
+import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport;
+import org.openide.filesystems.FileObject;
+
+import static org.jetbrains.kotlin.indexer.KotlinDeclarationIndex.FIELD_CONTAINER;
+import static org.jetbrains.kotlin.indexer.KotlinDeclarationIndex.FIELD_DECLARATION;
+import static org.jetbrains.kotlin.indexer.KotlinDeclarationIndex.FIELD_FQ_NAME;
+import static org.jetbrains.kotlin.indexer.KotlinDeclarationIndex.FIELD_NAME;
 
 /**
- *
+ * Stores one document per declaration of the indexed file.
+ * 
  * @author Alexander.Baratynski
  */
 public class KotlinIndexer extends EmbeddingIndexer {
 
     @Override
     protected void index(Indexable indexable, Parser.Result parserResult, Context context) {
+        KtFile ktFile = getKtFile(parserResult);
+        if (ktFile == null) {
+            return;
+        }
+        
+        try {
+            IndexingSupport support = IndexingSupport.getInstance(context);
+            List<IndexedDeclaration> declarations = DeclarationsCollectorKt.collectIndexedDeclarations(ktFile);
+            for (IndexedDeclaration declaration : declarations) {
+                IndexDocument document = support.createDocument(indexable);
+                document.addPair(FIELD_NAME, declaration.getName(), true, true);
+                document.addPair(FIELD_FQ_NAME, declaration.getFqName(), true, true);
+                document.addPair(FIELD_CONTAINER, declaration.getContainer(), true, true);
+                document.addPair(FIELD_DECLARATION, declaration.serialize(), false, true);
+                support.addDocument(document);
+            }
+            
+            FileObject file = parserResult.getSnapshot().getSource().getFileObject();
+            if (file != null) {
+                KotlinSymbolIndex.fileIndexed(file, declarations);
+            }
+        } catch (IOException ex) {
+            KotlinLogger.INSTANCE.logException("Cannot index " + indexable.getRelativePath(), ex);
+        }
+    }
+    
+    private KtFile getKtFile(Parser.Result parserResult) {
+        if (parserResult instanceof KotlinParserResult) {
+            return ((KotlinParserResult) parserResult).getKtFile();
+        }
+        
+        Snapshot snapshot = parserResult.getSnapshot();
+        FileObject file = snapshot.getSource().getFileObject();
+        if (file == null) {
+            return null;
+        }
+        
+        return KotlinPsiManager.INSTANCE.parseText(snapshot.getText().toString(), file);
     }
     
 }
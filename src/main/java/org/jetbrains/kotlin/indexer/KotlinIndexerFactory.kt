@@ -16,10 +16,13 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.indexer
 
+import java.io.IOException
+import org.jetbrains.kotlin.log.KotlinLogger
 import org.netbeans.modules.parsing.api.Snapshot
 import org.netbeans.modules.parsing.spi.indexing.Context
 import org.netbeans.modules.parsing.spi.indexing.EmbeddingIndexerFactory
 import org.netbeans.modules.parsing.spi.indexing.Indexable
+import org.netbeans.modules.parsing.spi.indexing.support.IndexingSupport
 
 /*
 
@@ -32,11 +35,30 @@ class KotlinIndexerFactory : EmbeddingIndexerFactory() {
     override fun createIndexer(indexable: Indexable, snapshot: Snapshot) = KotlinIndexer()
 
     override fun filesDeleted(deleted: Iterable<Indexable>, context: Context) {
+        try {
+            val support = IndexingSupport.getInstance(context)
+            deleted.forEach { 
+                support.removeDocuments(it)
+                KotlinSymbolIndex.fileDeleted(it.url)
+            }
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot remove deleted files from Kotlin index", ex)
+        }
     }
 
     override fun filesDirty(dirty: Iterable<Indexable>, context: Context) {
+        try {
+            val support = IndexingSupport.getInstance(context)
+            dirty.forEach { support.markDirtyDocuments(it) }
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot mark dirty files in Kotlin index", ex)
+        }
     }
 
-    override fun getIndexerName() = "Kotlin Indexer"
-    override fun getIndexVersion() = 1
+    override fun scanFinished(context: Context) {
+        KotlinDeclarationIndex.rootIndexed(context.rootURI)
+    }
+
+    override fun getIndexerName() = KotlinDeclarationIndex.INDEXER_NAME
+    override fun getIndexVersion() = KotlinDeclarationIndex.INDEX_VERSION
 }
\ No newline at end of file
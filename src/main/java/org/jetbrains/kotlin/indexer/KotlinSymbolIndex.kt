@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.indexer
+
+import java.net.URL
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
+import org.netbeans.api.project.FileOwnerQuery
+import org.netbeans.api.project.Project
+import org.openide.filesystems.FileObject
+
+enum class SymbolMatchKind {
+    EXACT, PREFIX, PREFIX_IGNORE_CASE, CAMEL_HUMPS, SUBSTRING
+}
+
+class SymbolMatch(val location: DeclarationLocation, val kind: SymbolMatchKind) {
+    val name: String
+        get() = location.declaration.name
+    
+    companion object {
+        val BY_RANK = compareBy<SymbolMatch>({ it.kind }, { it.name.length }, { it.name })
+    }
+}
+
+/**
+ * In-memory name index over the declarations shown by Go To Type: top-level declarations
+ * and classifiers at any depth. Candidates come from trigrams of the lower-cased name
+ * (substring matches) and from the first character (prefix and camel-hump matches).
+ * The index is filled from [KotlinDeclarationIndex] on the first query and then kept
+ * up to date by [KotlinIndexer] whenever a file is reindexed or deleted.
+ */
+class KotlinSymbolIndex private constructor(private val project: Project) {
+
+    companion object {
+        const val DEFAULT_LIMIT = 100
+        
+        private val indices = hashMapOf<Project, KotlinSymbolIndex>()
+
+        @JvmStatic @Synchronized fun getInstance(project: Project) = indices.getOrPut(project) { KotlinSymbolIndex(project) }
+
+        @JvmStatic @Synchronized fun remove(project: Project) = indices.remove(project)
+
+        @JvmStatic fun fileIndexed(file: FileObject, declarations: List<IndexedDeclaration>) {
+            val owner = FileOwnerQuery.getOwner(file)
+            synchronized(this) { indices.values.toList() }.forEach { it.update(file, owner, declarations) }
+        }
+
+        @JvmStatic fun fileDeleted(url: URL) {
+            synchronized(this) { indices.values.toList() }.forEach { it.removeFile(url) }
+        }
+        
+        fun isIndexed(declaration: IndexedDeclaration) = declaration.isTopLevel || declaration.kind.isClassifier
+    }
+
+    private class Symbol(val location: DeclarationLocation) {
+        val name = location.declaration.name
+        val lowerName = name.toLowerCase()
+    }
+
+    private val projects: Set<Project> = if (project.isMavenProject()) {
+        setOf(project) + MavenHelper.getDependencyProjects(project)
+    } else setOf(project)
+    
+    private val symbolsByFile = hashMapOf<URL, List<Symbol>>()
+    private val trigrams = hashMapOf<Long, MutableSet<Symbol>>()
+    private val firstChars = hashMapOf<Char, MutableSet<Symbol>>()
+    private var loaded = false
+
+    val size: Int
+        @Synchronized get() = symbolsByFile.values.sumBy { it.size }
+
+    @Synchronized fun search(query: String, limit: Int = DEFAULT_LIMIT): List<SymbolMatch> {
+        if (query.isEmpty()) return emptyList()
+        load()
+        
+        val lowerQuery = query.toLowerCase()
+        val candidates = LinkedHashSet<Symbol>()
+        firstChars[lowerQuery[0]]?.let { candidates.addAll(it) }
+        if (lowerQuery.length >= 3) candidates.addAll(substringCandidates(lowerQuery))
+        
+        return candidates
+                .mapNotNull { symbol -> match(symbol, query, lowerQuery)?.let { SymbolMatch(symbol.location, it) } }
+                .sortedWith(SymbolMatch.BY_RANK)
+                .take(limit)
+    }
+
+    @Synchronized private fun update(file: FileObject, owner: Project?, declarations: List<IndexedDeclaration>) {
+        val url = file.toURL()
+        if (!loaded || (url !in symbolsByFile && owner !in projects)) return
+        
+        removeFile(url)
+        val symbols = declarations.filter { isIndexed(it) }.map { Symbol(DeclarationLocation(file, it)) }
+        symbols.forEach { add(it) }
+        symbolsByFile.put(url, symbols)
+    }
+
+    @Synchronized private fun removeFile(url: URL) {
+        symbolsByFile.remove(url)?.forEach { symbol ->
+            symbol.lowerName.trigrams().forEach { trigrams[it]?.remove(symbol) }
+            firstChars[symbol.lowerName[0]]?.remove(symbol)
+        }
+    }
+
+    private fun load() {
+        if (loaded) return
+        loaded = true
+        
+        KotlinDeclarationIndex.findAllDeclarations(project, true) { isIndexed(it) }
+                .groupBy { it.file }
+                .forEach { (file, locations) ->
+                    val symbols = locations.map { Symbol(it) }
+                    symbols.forEach { add(it) }
+                    symbolsByFile.put(file.toURL(), symbols)
+                }
+    }
+
+    private fun add(symbol: Symbol) {
+        if (symbol.name.isEmpty()) return
+        
+        symbol.lowerName.trigrams().forEach { trigrams.getOrPut(it) { hashSetOf() }.add(symbol) }
+        firstChars.getOrPut(symbol.lowerName[0]) { hashSetOf() }.add(symbol)
+    }
+
+    private fun substringCandidates(lowerQuery: String): Set<Symbol> {
+        val postings = lowerQuery.trigrams().map { trigrams[it] ?: return emptySet() }.sortedBy { it.size }
+        
+        return postings.first().filterTo(hashSetOf()) { symbol -> postings.all { symbol in it } }
+    }
+
+    private fun match(symbol: Symbol, query: String, lowerQuery: String): SymbolMatchKind? = when {
+        symbol.name == query -> SymbolMatchKind.EXACT
+        symbol.name.startsWith(query) -> SymbolMatchKind.PREFIX
+        symbol.lowerName.startsWith(lowerQuery) -> SymbolMatchKind.PREFIX_IGNORE_CASE
+        matchesCamelHumps(symbol.name, query) -> SymbolMatchKind.CAMEL_HUMPS
+        symbol.lowerName.contains(lowerQuery) -> SymbolMatchKind.SUBSTRING
+        else -> null
+    }
+
+}
+
+private fun String.trigrams(): Set<Long> = (0..length - 3).mapTo(hashSetOf()) { 
+    (this[it].toLong() shl 32) or (this[it + 1].toLong() shl 16) or this[it + 2].toLong() 
+}
+
+private fun String.humpStarts(): List<Int> = indices.filter { i -> 
+    i == 0 || this[i].isUpperCase() || (this[i - 1] == '_' && this[i] != '_')
+}
+
+/**
+ * Splits [pattern] before each upper case letter and checks that every part is a prefix
+ * of the name hump at the same position: `KDI` and `KotDecIn` both match `KotlinDeclarationIndex`,
+ * `KI` does not because humps can't be skipped.
+ */
+fun matchesCamelHumps(name: String, pattern: String): Boolean {
+    val parts = pattern.humpStarts().let { starts -> 
+        starts.mapIndexed { i, start -> pattern.substring(start, starts.getOrElse(i + 1) { pattern.length }) }
+    }
+    val humps = name.humpStarts()
+    if (parts.isEmpty() || parts.size > humps.size) return false
+    
+    return parts.withIndex().all { (i, part) -> name.regionMatches(humps[i], part, 0, part.length, ignoreCase = true) }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.indexer
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.TreeMap
+import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
+import org.jetbrains.kotlin.serialization.Flags
+import org.jetbrains.kotlin.serialization.ProtoBuf
+import org.jetbrains.kotlin.serialization.deserialization.NameResolver
+import org.jetbrains.kotlin.serialization.jvm.JvmProtoBufUtil
+import org.netbeans.api.project.Project
+
+/**
+ * Public top-level functions and properties of the libraries on the classpath of a project.
+ * They are read from the metadata of the package parts listed in the module mappings of
+ * the classpath roots when the index is first used. When the classpath changes, only the roots
+ * which were added are read.
+ */
+class LibraryCallablesIndex private constructor(private val project: Project) {
+
+    companion object {
+        private val DEFAULT_IMPORTED_PACKAGES = setOf("kotlin", "kotlin.annotation", "kotlin.collections",
+                "kotlin.comparisons", "kotlin.io", "kotlin.ranges", "kotlin.sequences", "kotlin.text", "kotlin.jvm")
+        
+        private val indices = hashMapOf<Project, LibraryCallablesIndex>()
+
+        @JvmStatic @Synchronized fun getInstance(project: Project) = indices.getOrPut(project) { LibraryCallablesIndex(project) }
+
+        @JvmStatic @Synchronized fun invalidate(project: Project) = indices.remove(project)
+        
+        @JvmStatic @Synchronized fun update(project: Project, change: KotlinEnvironment.ClasspathChange) {
+            indices[project]?.update(change)
+        }
+    }
+
+    private val declarationsByRoot = linkedMapOf<VirtualFile, List<IndexedDeclaration>>()
+    @Volatile private var loadedCallables: TreeMap<String, MutableList<IndexedDeclaration>>? = null
+    
+    private val callables: TreeMap<String, MutableList<IndexedDeclaration>>
+        get() = loadedCallables ?: synchronized(this) { loadedCallables ?: load().also { loadedCallables = it } }
+
+    fun findByPrefix(prefix: String): List<IndexedDeclaration> = callables
+            .subMap(prefix, true, prefix + Character.MAX_VALUE, true)
+            .values.flatten()
+
+    private fun load(): TreeMap<String, MutableList<IndexedDeclaration>> {
+        val start = System.currentTimeMillis()
+        readRoots { true }
+        val result = merge()
+        
+        KotlinLogger.INSTANCE.logInfo("Library callables of ${project.projectDirectory.path} " + 
+                "indexed in ${System.currentTimeMillis() - start} ms: ${result.size} names")
+        
+        return result
+    }
+    
+    @Synchronized private fun update(change: KotlinEnvironment.ClasspathChange) {
+        // nothing was read yet
+        if (loadedCallables == null) return
+        
+        change.removed.forEach { declarationsByRoot.remove(it.file) }
+        val added = change.added.map { it.file }.toSet()
+        readRoots { it in added }
+        loadedCallables = merge()
+    }
+    
+    private fun readRoots(filter: (VirtualFile) -> Boolean) {
+        KotlinResolveSession.getInstance(project).packagePartProvider.getAllPackageParts()
+                .filter { (root, packageParts) -> filter(root) && packageParts.packageFqName !in DEFAULT_IMPORTED_PACKAGES }
+                .groupBy({ it.first }, { it.second })
+                .forEach { (root, packages) ->
+                    declarationsByRoot.put(root, packages.flatMap { packageParts ->
+                        packageParts.parts.flatMap { readPackagePart(root, it, packageParts.packageFqName) }
+                    })
+                }
+    }
+    
+    private fun merge() = TreeMap<String, MutableList<IndexedDeclaration>>().apply {
+        declarationsByRoot.values.forEach { declarations ->
+            declarations.forEach { getOrPut(it.name) { arrayListOf() }.add(it) }
+        }
+    }
+
+    private fun readPackagePart(root: VirtualFile, partInternalName: String, packageName: String): List<IndexedDeclaration> {
+        val classFile = root.findFileByRelativePath("$partInternalName.class") ?: return emptyList()
+        val header = KotlinBinaryClassCache.getKotlinBinaryClass(classFile, null)?.classHeader ?: return emptyList()
+        if (header.kind != KotlinClassHeader.Kind.FILE_FACADE && header.kind != KotlinClassHeader.Kind.MULTIFILE_CLASS_PART) {
+            return emptyList()
+        }
+        
+        val data = header.data ?: return emptyList()
+        val strings = header.strings ?: return emptyList()
+        val (nameResolver, packageProto) = try {
+            JvmProtoBufUtil.readPackageDataFrom(data, strings)
+        } catch (e: Exception) {
+            KotlinLogger.INSTANCE.logException("Cannot read metadata of $partInternalName", e)
+            return emptyList()
+        }
+        
+        val container = (header.multifileClassName ?: partInternalName).replace('/', '.')
+        val declarations = arrayListOf<IndexedDeclaration>()
+        
+        packageProto.functionList
+                .filter { isPublic(it.flags) }
+                .mapNotNullTo(declarations) {
+                    createDeclaration(IndexedDeclarationKind.FUNCTION, nameResolver.getString(it.name), packageName, container,
+                            if (it.hasReceiverType()) it.receiverType else null, it.typeParameterList, nameResolver)
+                }
+        packageProto.propertyList
+                .filter { isPublic(it.flags) }
+                .mapNotNullTo(declarations) {
+                    createDeclaration(IndexedDeclarationKind.PROPERTY, nameResolver.getString(it.name), packageName, container,
+                            if (it.hasReceiverType()) it.receiverType else null, it.typeParameterList, nameResolver)
+                }
+        
+        return declarations
+    }
+
+    private fun NameResolver.fqNameOf(type: ProtoBuf.Type) = getClassId(type.className).asSingleFqName().asString()
+
+    private fun isPublic(flags: Int) = Flags.VISIBILITY.get(flags) == ProtoBuf.Visibility.PUBLIC
+
+    private fun createDeclaration(kind: IndexedDeclarationKind, name: String, packageName: String, container: String,
+                                  receiverType: ProtoBuf.Type?, typeParameters: List<ProtoBuf.TypeParameter>,
+                                  nameResolver: NameResolver): IndexedDeclaration? {
+        val receiver = when {
+            receiverType == null -> null
+            receiverType.hasClassName() -> nameResolver.fqNameOf(receiverType)
+            receiverType.hasTypeParameter() || receiverType.hasTypeParameterName() -> typeParameters
+                    .firstOrNull { 
+                        if (receiverType.hasTypeParameter()) it.id == receiverType.typeParameter 
+                        else it.name == receiverType.typeParameterName
+                    }
+                    ?.upperBoundList?.firstOrNull { it.hasClassName() }
+                    ?.let { nameResolver.fqNameOf(it) } ?: ANY_RECEIVER
+            else -> return null
+        }
+        val fqName = if (packageName.isEmpty()) name else "$packageName.$name"
+        
+        return IndexedDeclaration(kind, name, fqName, packageName, container, receiver, -1, true, false)
+    }
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.indexer
+
+import org.jetbrains.kotlin.fileClasses.NoResolveFileClassesProvider
+import org.jetbrains.kotlin.lexer.KtTokens
+import org.jetbrains.kotlin.psi.*
+
+fun KtFile.collectIndexedDeclarations(): List<IndexedDeclaration> {
+    val packageName = packageFqName.asString()
+    val facadeName = NoResolveFileClassesProvider.getFileClassInfo(this).fileClassFqName.asString()
+
+    return arrayListOf<IndexedDeclaration>().apply {
+        declarations.forEach { it.collectTo(this, packageName, packageName, facadeName, true) }
+    }
+}
+
+private fun KtDeclaration.collectTo(result: MutableList<IndexedDeclaration>,
+                                    packageName: String,
+                                    parentFqName: String,
+                                    container: String,
+                                    topLevel: Boolean) {
+    when (this) {
+        is KtEnumEntry -> return
+        is KtClassOrObject -> {
+            val name = name ?: if (this is KtObjectDeclaration && isCompanion()) "Companion" else return
+            val fqName = fqName(parentFqName, name)
+            result.add(IndexedDeclaration(classKind(), name, fqName, packageName, container, null,
+                    textOffset, topLevel, isPrivate()))
+
+            primaryConstructorParameters
+                    .filter { it.hasValOrVar() }
+                    .forEach { it.collectTo(result, packageName, fqName, fqName, false) }
+            declarations.forEach { it.collectTo(result, packageName, fqName, fqName, false) }
+        }
+        is KtNamedFunction -> addCallable(result, IndexedDeclarationKind.FUNCTION, packageName, parentFqName, container, topLevel)
+        is KtProperty -> addCallable(result, IndexedDeclarationKind.PROPERTY, packageName, parentFqName, container, topLevel)
+        is KtParameter -> addCallable(result, IndexedDeclarationKind.PROPERTY, packageName, parentFqName, container, topLevel)
+        is KtTypeAlias -> {
+            val name = name ?: return
+            result.add(IndexedDeclaration(IndexedDeclarationKind.TYPEALIAS, name, fqName(parentFqName, name),
+                    packageName, container, null, textOffset, topLevel, isPrivate()))
+        }
+    }
+}
+
+private fun KtCallableDeclaration.addCallable(result: MutableList<IndexedDeclaration>,
+                                              kind: IndexedDeclarationKind,
+                                              packageName: String,
+                                              parentFqName: String,
+                                              container: String,
+                                              topLevel: Boolean) {
+    val name = name ?: return
+    result.add(IndexedDeclaration(kind, name, fqName(parentFqName, name), packageName, container,
+            indexedReceiver(), textOffset, topLevel, isPrivate()))
+}
+
+/**
+ * Receiver type of an extension qualified through the imports of its file where possible.
+ * Extensions of a type parameter are stored with the upper bound of the parameter.
+ */
+private fun KtCallableDeclaration.indexedReceiver(): String? {
+    val typeName = receiverTypeReference?.typeName() ?: return null
+    val typeParameter = typeParameters.firstOrNull { it.name == typeName } ?: return containingKtFile.qualify(typeName)
+    
+    val bound = typeParameter.extendsBound ?: typeConstraints
+            .firstOrNull { it.subjectTypeParameterName?.getReferencedName() == typeName }?.boundTypeReference
+    
+    return bound?.typeName()?.let { containingKtFile.qualify(it) } ?: ANY_RECEIVER
+}
+
+private fun KtTypeReference.typeName() = text.substringBefore('<').removeSuffix("?").trim()
+
+private fun KtFile.qualify(typeName: String): String {
+    if (typeName.contains('.')) return typeName
+    
+    importDirectives
+            .firstOrNull { !it.isAllUnder && (it.aliasName ?: it.importedFqName?.shortName()?.asString()) == typeName }
+            ?.importedFqName?.let { return it.asString() }
+    if (declarations.any { it is KtClassOrObject && it.name == typeName }) return fqName(packageFqName.asString(), typeName)
+    
+    // declared in the same package, imported with a star or imported by default
+    return typeName
+}
+
+private fun KtClassOrObject.classKind() = when {
+    this is KtObjectDeclaration -> IndexedDeclarationKind.OBJECT
+    this is KtClass && isInterface() -> IndexedDeclarationKind.INTERFACE
+    else -> IndexedDeclarationKind.CLASS
+}
+
+private fun KtModifierListOwner.isPrivate() = hasModifier(KtTokens.PRIVATE_KEYWORD)
+
+private fun fqName(parent: String, name: String) = if (parent.isEmpty()) name else "$parent.$name"
@@ -16,7 +16,6 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.installer
 
-import org.jetbrains.kotlin.project.KotlinSources
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper
 import org.netbeans.modules.parsing.api.indexing.IndexingManager
 import org.openide.filesystems.FileObject
@@ -26,6 +25,7 @@ import org.openide.windows.WindowManager
 import java.util.HashSet
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getKotlinSources
 import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
 
 class KotlinInstaller : Yenta() {
@@ -69,7 +69,7 @@ class KotlinInstaller : Yenta() {
         val project = ProjectUtils.getKotlinProjectForFileObject(file) ?: return
         if (!KotlinProjectHelper.hasJavaFiles(project)) {
             KotlinProjectHelper.setHasJavaFiles(project)
-            KotlinSources(project).getAllKtFiles().forEach {
+            project.getKotlinSources()?.getAllKtFiles()?.forEach {
                 IndexingManager.getDefault().refreshAllIndices(it)
             }
         }
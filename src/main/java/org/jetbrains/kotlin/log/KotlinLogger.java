@@ -52,4 +52,12 @@ public class KotlinLogger {
         LOGGER.log(Level.INFO, message);
     }
     
+    public boolean isFineLoggable() {
+        return LOGGER.isLoggable(Level.FINE);
+    }
+    
+    public void logFine(String message) {
+        LOGGER.log(Level.FINE, message);
+    }
+    
 }
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.jetbrains.kotlin.name.ClassId
+
+/**
+ * Class files found for [ClassId]s in the classpath of an environment, including the classes 
+ * which were not found. The resolver asks for many classes that don't exist, for example for 
+ * every star import, so misses are cached too. All entries are dropped when the classpath or 
+ * a class output folder changes, which starts a new [generation].
+ */
+class ClassFileLookupCache {
+    
+    // null file for a class which is not on the classpath. An entry is only valid in the generation 
+    // its lookup started in, so a lookup racing with an invalidation can't leave a stale entry behind.
+    private class Entry(val generation: Long, val file: VirtualFile?)
+    
+    private val entries = ConcurrentHashMap<ClassId, Entry>()
+    
+    private val currentGeneration = AtomicLong()
+    
+    val generation: Long
+        get() = currentGeneration.get()
+    
+    val hits = AtomicLong()
+    val negativeHits = AtomicLong()
+    val misses = AtomicLong()
+    
+    val size: Int
+        get() = entries.size
+    
+    fun getOrFind(classId: ClassId, find: (ClassId) -> VirtualFile?): VirtualFile? {
+        val startGeneration = currentGeneration.get()
+        val cached = entries[classId]?.takeIf { it.generation == startGeneration }
+        when {
+            cached == null -> {}
+            cached.file == null -> {
+                negativeHits.incrementAndGet()
+                return null
+            }
+            cached.file.isValid -> {
+                hits.incrementAndGet()
+                return cached.file
+            }
+        }
+        
+        misses.incrementAndGet()
+        val file = find(classId)
+        // a result found while the classpath was changing may be stale already
+        if (startGeneration == currentGeneration.get()) entries.put(classId, Entry(startGeneration, file))
+        
+        return file
+    }
+    
+    fun invalidate() {
+        currentGeneration.incrementAndGet()
+        entries.clear()
+    }
+    
+    fun statistics(): String {
+        val requests = hits.get() + negativeHits.get() + misses.get()
+        val hitRate = if (requests == 0L) 0 else (hits.get() + negativeHits.get()) * 100 / requests
+        
+        return "generation: $generation, entries: ${entries.size}, hits: ${hits.get()}, negative hits: ${negativeHits.get()}, " + 
+                "misses: ${misses.get()} ($hitRate% hit rate)"
+    }
+    
+}
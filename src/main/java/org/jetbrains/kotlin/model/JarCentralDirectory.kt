@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+import org.jetbrains.kotlin.log.KotlinLogger
+
+/**
+ * Index of the central directory of a jar. The central directory is memory-mapped and the index 
+ * keeps only the positions of its entries sorted by name, so whether an entry exists and where 
+ * its data starts is found by a binary search without opening the jar.
+ * Jars in the ZIP64 format are not indexed, [open] returns null for them. The mapping is released 
+ * by [close], as a mapped file stays locked on Windows until then.
+ */
+class JarCentralDirectory private constructor(private val buffer: MappedByteBuffer, 
+                                              private val entries: IntArray) {
+    
+    companion object {
+        private const val END_SIGNATURE = 0x06054b50
+        private const val ENTRY_SIGNATURE = 0x02014b50
+        private const val END_SIZE = 22
+        private const val MAX_COMMENT_SIZE = 0xffff
+        private const val ENTRY_HEADER_SIZE = 46
+        
+        @JvmStatic fun open(jar: File): JarCentralDirectory? = try {
+            RandomAccessFile(jar, "r").use { read(it) }
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot index central directory of $jar", ex)
+            null
+        }
+        
+        private fun read(file: RandomAccessFile): JarCentralDirectory? {
+            val channel = file.channel
+            val length = channel.size()
+            if (length < END_SIZE) return null
+            
+            val tailSize = minOf(length, (END_SIZE + MAX_COMMENT_SIZE).toLong()).toInt()
+            val tail = channel.map(FileChannel.MapMode.READ_ONLY, length - tailSize, tailSize.toLong())
+            val (count, size, offset) = try {
+                tail.order(ByteOrder.LITTLE_ENDIAN)
+                val end = (tailSize - END_SIZE downTo 0).firstOrNull { tail.getInt(it) == END_SIGNATURE } ?: return null
+                
+                Triple(tail.getShort(end + 10).toInt() and 0xffff, 
+                        tail.getInt(end + 12).toLong() and 0xffffffffL, tail.getInt(end + 16).toLong() and 0xffffffffL)
+            } finally {
+                unmap(tail)
+            }
+            if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL || offset + size > length) return null
+            
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size)
+            buffer.order(ByteOrder.LITTLE_ENDIAN)
+            val positions = IntArray(count)
+            var position = 0
+            for (i in 0 until count) {
+                if (position + ENTRY_HEADER_SIZE > size || buffer.getInt(position) != ENTRY_SIGNATURE) {
+                    unmap(buffer)
+                    return null
+                }
+                positions[i] = position
+                position += ENTRY_HEADER_SIZE + buffer.nameLength(position) + 
+                        (buffer.getShort(position + 30).toInt() and 0xffff) + (buffer.getShort(position + 32).toInt() and 0xffff)
+            }
+            
+            val directory = JarCentralDirectory(buffer, positions)
+            val sorted = positions.sortedWith(Comparator { a, b -> directory.compareNames(a, b) }).toIntArray()
+            
+            return JarCentralDirectory(buffer, sorted)
+        }
+        
+        // there is no API for it: the cleaner is run through Unsafe on Java 9 and later, through 
+        // the buffer itself on Java 8. If neither works, the mapping is released with the buffer.
+        private fun unmap(buffer: MappedByteBuffer) {
+            try {
+                val unsafeClass = Class.forName("sun.misc.Unsafe")
+                val invokeCleaner = try {
+                    unsafeClass.getMethod("invokeCleaner", ByteBuffer::class.java)
+                } catch (ex: NoSuchMethodException) {
+                    null
+                }
+                
+                if (invokeCleaner != null) {
+                    val unsafe = unsafeClass.getDeclaredField("theUnsafe").apply { isAccessible = true }.get(null)
+                    invokeCleaner.invoke(unsafe, buffer)
+                } else {
+                    val cleaner = buffer.javaClass.getMethod("cleaner").apply { isAccessible = true }.invoke(buffer)
+                    cleaner?.javaClass?.getMethod("clean")?.invoke(cleaner)
+                }
+            } catch (ex: Exception) {
+                KotlinLogger.INSTANCE.logException("Cannot unmap jar central directory", ex)
+            }
+        }
+        
+        private fun MappedByteBuffer.nameLength(position: Int) = getShort(position + 28).toInt() and 0xffff
+    }
+    
+    // an unmapped buffer must not be read, lookups hold the read lock and [close] the write lock
+    private val lock = ReentrantReadWriteLock()
+    private var closed = false
+    
+    val size: Int
+        get() = entries.size
+    
+    operator fun contains(name: String) = lock.read { !closed && indexOf(name.toByteArray()) >= 0 }
+    
+    /**
+     * Offset of the local header of entry [name] in the jar, or -1 if there is no such entry.
+     */
+    fun offsetOf(name: String): Long = lock.read {
+        val index = if (closed) -1 else indexOf(name.toByteArray())
+        
+        if (index < 0) -1 else buffer.getInt(entries[index] + 42).toLong() and 0xffffffffL
+    }
+    
+    /**
+     * Whether there is an entry under directory [path], given without the trailing slash.
+     */
+    fun hasDirectory(path: String): Boolean = lock.read {
+        if (closed) return false
+        if (path.isEmpty()) return entries.isNotEmpty()
+        
+        val prefix = "$path/".toByteArray()
+        val index = indexOf(prefix).let { if (it >= 0) it else -it - 1 }
+        
+        index < entries.size && startsWith(entries[index], prefix)
+    }
+    
+    /**
+     * Releases the mapping of the central directory. Lookups find nothing afterwards.
+     */
+    fun close() = lock.write {
+        if (!closed) {
+            closed = true
+            unmap(buffer)
+        }
+    }
+    
+    // index of the entry in [entries], or (-insertion point - 1)
+    private fun indexOf(name: ByteArray): Int {
+        var low = 0
+        var high = entries.size - 1
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val comparison = compareName(entries[middle], name)
+            when {
+                comparison < 0 -> low = middle + 1
+                comparison > 0 -> high = middle - 1
+                else -> return middle
+            }
+        }
+        
+        return -(low + 1)
+    }
+    
+    private fun compareName(position: Int, name: ByteArray): Int {
+        val length = buffer.nameLength(position)
+        val start = position + ENTRY_HEADER_SIZE
+        for (i in 0 until minOf(length, name.size)) {
+            val difference = (buffer.get(start + i).toInt() and 0xff) - (name[i].toInt() and 0xff)
+            if (difference != 0) return difference
+        }
+        
+        return length - name.size
+    }
+    
+    private fun compareNames(first: Int, second: Int): Int {
+        val firstLength = buffer.nameLength(first)
+        val secondLength = buffer.nameLength(second)
+        for (i in 0 until minOf(firstLength, secondLength)) {
+            val difference = (buffer.get(first + ENTRY_HEADER_SIZE + i).toInt() and 0xff) - 
+                    (buffer.get(second + ENTRY_HEADER_SIZE + i).toInt() and 0xff)
+            if (difference != 0) return difference
+        }
+        
+        return firstLength - secondLength
+    }
+    
+    private fun startsWith(position: Int, prefix: ByteArray): Boolean {
+        if (buffer.nameLength(position) < prefix.size) return false
+        
+        return prefix.indices.all { buffer.get(position + ENTRY_HEADER_SIZE + it) == prefix[it] }
+    }
+    
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import org.jetbrains.kotlin.load.kotlin.ModuleMapping
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.openide.modules.Places
+
+/**
+ * Contents of a library jar needed before any of its classes is read. [classNames] maps 
+ * the packages with classes to the simple names of their top-level classes, and 
+ * [moduleMappings] maps the names of the `.kotlin_module` files to their contents.
+ */
+class JarMetadata(val classNames: Map<String, Set<String>>, val moduleMappings: Map<String, ByteArray>) {
+    
+    val packages: Set<String>
+        get() = classNames.keys
+    
+    // whether the package or one of its subpackages has classes
+    fun hasPackage(packageFqName: String) = packageFqName.isEmpty() || 
+            classNames.keys.any { it == packageFqName || it.startsWith("$packageFqName.") }
+    
+    companion object {
+        fun read(root: VirtualFile): JarMetadata {
+            val classNames = hashMapOf<String, Set<String>>()
+            collectClassNames(root, "", classNames)
+            val moduleMappings = root.findChild("META-INF")?.children
+                    ?.filter { it.name.endsWith(ModuleMapping.MAPPING_FILE_EXT) }
+                    ?.associate { it.name to it.contentsToByteArray() } ?: emptyMap()
+            
+            return JarMetadata(classNames, moduleMappings)
+        }
+        
+        private fun collectClassNames(dir: VirtualFile, fqName: String, classNames: MutableMap<String, Set<String>>) {
+            val names = hashSetOf<String>()
+            dir.children.forEach { 
+                if (it.isDirectory) {
+                    collectClassNames(it, if (fqName.isEmpty()) it.name else "$fqName.${it.name}", classNames)
+                } else if (it.extension == "class" && '$' !in it.nameWithoutExtension 
+                        && it.nameWithoutExtension != "package-info" && it.nameWithoutExtension != "module-info") {
+                    names.add(it.nameWithoutExtension)
+                }
+            }
+            if (names.isNotEmpty()) classNames.put(fqName, names)
+        }
+    }
+}
+
+/**
+ * On-disk cache of [JarMetadata] in the NetBeans cache directory, so library jars are not 
+ * scanned again on every start. An entry is keyed by the path, size and modification time 
+ * of its jar. Entries are read when a jar segment first needs them and then kept by the segment.
+ * At most [maxEntries] entries are kept, the least recently used ones are deleted first.
+ */
+class JarMetadataCache(private val directory: File, private val maxEntries: Int = MAX_ENTRIES) {
+    
+    companion object {
+        private const val VERSION = 1
+        private const val ENTRY_EXTENSION = ".jm"
+        private const val MAX_ENTRIES = 1000
+        
+        val INSTANCE by lazy { JarMetadataCache(Places.getCacheSubdirectory("kotlin/jars")) }
+        
+        private fun ByteArray.toHex() = joinToString("") { String.format("%02x", it) }
+    }
+    
+    var hits = 0L
+        private set
+    var misses = 0L
+        private set
+    
+    fun get(jar: File, root: VirtualFile): JarMetadata {
+        read(jar)?.let { return it }
+        
+        val start = System.currentTimeMillis()
+        val metadata = JarMetadata.read(root)
+        KotlinLogger.INSTANCE.logInfo("Jar ${jar.path} scanned in ${System.currentTimeMillis() - start} ms: " + 
+                "${metadata.packages.size} packages")
+        write(jar, metadata)
+        
+        return metadata
+    }
+    
+    private fun entryFile(jar: File): File {
+        val digest = MessageDigest.getInstance("SHA-1")
+        digest.update(jar.path.toByteArray())
+        
+        return File(directory, digest.digest().toHex() + ENTRY_EXTENSION)
+    }
+    
+    @Synchronized private fun read(jar: File): JarMetadata? {
+        val file = entryFile(jar)
+        if (!file.isFile) {
+            misses++
+            return null
+        }
+        
+        return try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                // an entry of an older version of the jar is overwritten
+                if (input.readInt() != VERSION || input.readUTF() != jar.path || 
+                        input.readLong() != jar.length() || input.readLong() != jar.lastModified()) {
+                    misses++
+                    return null
+                }
+                input.readMetadata()
+            }.also { 
+                hits++
+                // the modification time of an entry is the time it was last used
+                file.setLastModified(System.currentTimeMillis())
+            }
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot read jar metadata cache entry $file", ex)
+            file.delete()
+            misses++
+            null
+        }
+    }
+    
+    @Synchronized private fun write(jar: File, metadata: JarMetadata) {
+        val file = entryFile(jar)
+        val tmp = File(directory, file.nameWithoutExtension + ".tmp")
+        try {
+            directory.mkdirs()
+            DataOutputStream(tmp.outputStream().buffered()).use { 
+                it.writeInt(VERSION)
+                it.writeUTF(jar.path)
+                it.writeLong(jar.length())
+                it.writeLong(jar.lastModified())
+                it.writeMetadata(metadata)
+            }
+            file.delete()
+            if (!tmp.renameTo(file)) throw IOException("Cannot rename $tmp to $file")
+        } catch (ex: IOException) {
+            KotlinLogger.INSTANCE.logException("Cannot write jar metadata cache entry $file", ex)
+            tmp.delete()
+        }
+        removeLeastRecentlyUsed(file)
+    }
+    
+    // entries of jars which were deleted or are not used anymore would be kept forever otherwise
+    private fun removeLeastRecentlyUsed(written: File) {
+        val entries = directory.listFiles { file -> file.name.endsWith(ENTRY_EXTENSION) && file != written } ?: return
+        val excess = entries.size + 1 - maxEntries
+        if (excess <= 0) return
+        
+        entries.sortedBy { it.lastModified() }.take(excess).forEach { it.delete() }
+        KotlinLogger.INSTANCE.logInfo("$excess jar metadata cache entries removed")
+    }
+    
+    private fun DataOutputStream.writeMetadata(metadata: JarMetadata) {
+        writeInt(metadata.classNames.size)
+        metadata.classNames.forEach { (packageName, names) ->
+            writeUTF(packageName)
+            writeInt(names.size)
+            names.forEach { writeUTF(it) }
+        }
+        writeInt(metadata.moduleMappings.size)
+        metadata.moduleMappings.forEach { (name, bytes) ->
+            writeUTF(name)
+            writeInt(bytes.size)
+            write(bytes)
+        }
+    }
+    
+    private fun DataInputStream.readMetadata(): JarMetadata {
+        val classNames = (1..readInt()).associate { 
+            readUTF() to (1..readInt()).mapTo(hashSetOf()) { readUTF() } 
+        }
+        val moduleMappings = (1..readInt()).associate { 
+            readUTF() to ByteArray(readInt()).apply { readFully(this) } 
+        }
+        
+        return JarMetadata(classNames, moduleMappings)
+    }
+    
+}
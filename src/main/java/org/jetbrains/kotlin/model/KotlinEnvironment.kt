@@ -53,7 +53,6 @@ import com.intellij.psi.impl.PsiTreeChangePreprocessor
 import com.intellij.psi.impl.compiled.ClsCustomNavigationPolicy
 import com.intellij.psi.impl.file.impl.JavaFileManager
 import org.jetbrains.kotlin.filesystem.KotlinLightClassManager
-import org.jetbrains.kotlin.resolve.BuiltInsReferenceResolver
 import org.jetbrains.kotlin.resolve.KotlinCacheServiceImpl
 import org.jetbrains.kotlin.resolve.KotlinSourceIndex
 import org.jetbrains.kotlin.utils.ProjectUtils
@@ -66,7 +65,7 @@ import com.intellij.formatting.KotlinLanguageCodeStyleSettingsProvider
 import com.intellij.formatting.KotlinSettingsProvider
 import java.net.URLDecoder
 import org.jetbrains.kotlin.cli.jvm.index.JavaRoot
-import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndexImpl
+import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndex
 import org.jetbrains.kotlin.cli.jvm.compiler.MockExternalAnnotationsManager
 import org.jetbrains.kotlin.cli.jvm.compiler.MockInferredAnnotationsManager
 import org.jetbrains.kotlin.idea.KotlinFileType
@@ -84,7 +83,11 @@ import org.jetbrains.kotlin.resolve.jvm.extensions.PackageFragmentProviderExtens
 import org.jetbrains.kotlin.script.KotlinScriptDefinitionProvider
 import org.jetbrains.kotlin.script.KotlinScriptExternalImportsProvider
 import org.netbeans.api.project.Project as NBProject
-import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCliJavaFileManagerImpl
+import org.openide.filesystems.FileChangeAdapter
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+import org.openide.filesystems.FileUtil
 import com.intellij.openapi.util.SystemInfo
 
 //copied from kotlin eclipse plugin to avoid RuntimeException: Could not find installation home path. 
@@ -101,45 +104,137 @@ private fun setIdeaIoUseFallback() {
     }
 }
 
-class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable: Disposable) {
+class KotlinEnvironment internal constructor(kotlinProject: NBProject, disposable: Disposable) {
 
     companion object {
-        val CACHED_ENVIRONMENT = hashMapOf<NBProject, KotlinEnvironment>()
+        fun getEnvironment(kotlinProject: NBProject) = KotlinEnvironmentManager.getEnvironment(kotlinProject)
         
-        @Synchronized fun getEnvironment(kotlinProject: NBProject): KotlinEnvironment {
-            if (!CACHED_ENVIRONMENT.containsKey(kotlinProject)) {
-                CACHED_ENVIRONMENT.put(kotlinProject, KotlinEnvironment(kotlinProject, Disposer.newDisposable()))
+        fun updateKotlinEnvironment(kotlinProject: NBProject) = getEnvironment(kotlinProject).configureClasspath(kotlinProject)
+        
+        // shared by the environments of all projects and never disposed: creating another one would 
+        // reset the application and the extensions area the existing environments use
+        private val sharedApplicationEnvironment by lazy {
+            setIdeaIoUseFallback()
+            createJavaCoreApplicationEnvironment(Disposer.newDisposable()).also { 
+                getExtensionsFromCommonXml()
+                getExtensionsFromKotlin2JvmXml()
+            }
+        }
+        
+        private fun createJavaCoreApplicationEnvironment(disposable: Disposable): JavaCoreApplicationEnvironment {
+            Extensions.cleanRootArea(disposable)
+            registerAppExtensionPoints()
+            val javaApplicationEnvironment = JavaCoreApplicationEnvironment(disposable)
+            
+            with (javaApplicationEnvironment) {
+                registerFileType(PlainTextFileType.INSTANCE, "xml")
+                registerFileType(KotlinFileType.INSTANCE, "kt")
+                registerParserDefinition(KotlinParserDefinition())
+                application.registerService(KotlinBinaryClassCache::class.java, KotlinBinaryClassCache())
             }
             
-            return CACHED_ENVIRONMENT[kotlinProject]!!
+            return javaApplicationEnvironment
         }
         
-        @Synchronized fun updateKotlinEnvironment(kotlinProject: NBProject) = getEnvironment(kotlinProject).configureClasspath(kotlinProject)
+        private fun registerAppExtensionPoints() {
+            CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ContainerProvider.EP_NAME,
+                    ContainerProvider::class.java)
+            CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ClsCustomNavigationPolicy.EP_NAME,
+                    ClsCustomNavigationPolicy::class.java)
+            CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ClassFileDecompilers.EP_NAME,
+                    ClassFileDecompilers.Decompiler::class.java)
+            
+            CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), PsiAugmentProvider.EP_NAME, PsiAugmentProvider::class.java)
+            CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), JavaMainMethodProvider.EP_NAME, JavaMainMethodProvider::class.java)
+        }
+
+        private fun getExtensionsFromCommonXml() {
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName("org.jetbrains.kotlin.diagnosticSuppressor"), DiagnosticSuppressor::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName("org.jetbrains.kotlin.defaultErrorMessages"), DefaultErrorMessages.Extension::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName("org.jetbrains.kotlin.suppressStringProvider"), SuppressStringProvider::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName(("org.jetbrains.kotlin.expressionCodegenExtension")), ExpressionCodegenExtension::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName(("org.jetbrains.kotlin.classBuilderFactoryInterceptorExtension")), ClassBuilderInterceptorExtension::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(
+                    ExtensionPointName(("org.jetbrains.kotlin.packageFragmentProviderExtension")), PackageFragmentProviderExtension::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(CodeStyleSettingsProvider.EXTENSION_POINT_NAME, KotlinSettingsProvider::class.java)
+            CoreApplicationEnvironment.registerApplicationExtensionPoint(LanguageCodeStyleSettingsProvider.EP_NAME, KotlinLanguageCodeStyleSettingsProvider::class.java)
+            
+            with (Extensions.getRootArea()) {
+                getExtensionPoint(CodeStyleSettingsProvider.EXTENSION_POINT_NAME).registerExtension(KotlinSettingsProvider())
+                getExtensionPoint(LanguageCodeStyleSettingsProvider.EP_NAME).registerExtension(KotlinLanguageCodeStyleSettingsProvider())
+                getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(DefaultErrorMessagesJvm())
+                getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(DefaultErrorMessagesJs())
+            }
+        }
+        
+        private fun getExtensionsFromKotlin2JvmXml() {
+            CoreApplicationEnvironment.registerComponentInstance<DefaultErrorMessages.Extension>(Extensions.getRootArea().picoContainer,
+                    DefaultErrorMessages.Extension::class.java, DefaultErrorMessagesJvm())
+        }
     }
 
     val applicationEnvironment: JavaCoreApplicationEnvironment
     private val projectEnvironment: JavaCoreProjectEnvironment
     val project: MockProject
-    val roots = hashSetOf<JavaRoot>()
+    // classpath roots by path, in classpath order
+    private val rootsByPath = linkedMapOf<String, JavaRoot>()
+    
+    val roots: List<JavaRoot>
+        @Synchronized get() = rootsByPath.values.toList()
+    
+    private val fileManager: KotlinJavaFileManager
+    
+    private val jarSegments = hashMapOf<String, JarIndexSegment>()
+    private val jarSegmentsByRoot = hashMapOf<VirtualFile, JarIndexSegment>()
+    
+    @Volatile var isDisposed = false
+        private set
     
-    val index by lazy { JvmDependenciesIndexImpl(roots.toList()) }
+    @Volatile private var cachedIndex: JvmDependenciesIndex? = null
+    @Volatile private var cachedPackageRoots: PackageRoots? = null
+    
+    val classFileLookups = ClassFileLookupCache()
+    
+    // incremented whenever roots are added to or removed from the classpath
+    @Volatile var classpathGeneration = 0L
+        private set
+    
+    // class files compiled to an output folder on the classpath make the cached lookups stale
+    private val outputListener = object : FileChangeAdapter() {
+        override fun fileDataCreated(fe: FileEvent) = classFilesChanged(fe.file)
+        override fun fileFolderCreated(fe: FileEvent) = classFilesChanged(fe.file)
+        override fun fileDeleted(fe: FileEvent) = classFilesChanged(fe.file)
+        override fun fileRenamed(fe: FileRenameEvent) = classFilesChanged(fe.file)
+    }
+    
+    private fun classFilesChanged(file: FileObject) {
+        if (file.isFolder || file.ext == "class") classFileLookups.invalidate()
+    }
+    
+    val index: JvmDependenciesIndex
+        @Synchronized get() = cachedIndex ?: SharedDependenciesIndex(roots, HashMap(jarSegmentsByRoot))
+                .also { cachedIndex = it }
     
     val configuration = CompilerConfiguration()
     
     init {
         val startTime = System.nanoTime()
 
-        setIdeaIoUseFallback()
-                
-        applicationEnvironment = createJavaCoreApplicationEnvironment(disposable)
+        applicationEnvironment = sharedApplicationEnvironment
         projectEnvironment = object : JavaCoreProjectEnvironment(disposable, applicationEnvironment) {
             override fun preregisterServices() { 
                 registerProjectExtensionPoints(Extensions.getArea(project)) 
             }
             
-            override fun createCoreFileManager() = KotlinCliJavaFileManagerImpl(PsiManager.getInstance(project))
+            override fun createCoreFileManager() = KotlinJavaFileManager(PsiManager.getInstance(project))
         }
         project = projectEnvironment.project
+        fileManager = ServiceManager.getService(project, JavaFileManager::class.java) as KotlinJavaFileManager
         
         with (project) {
             val scriptDefinitionProvider = KotlinScriptDefinitionProvider()
@@ -150,8 +245,7 @@ class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable
             
             registerService(ModuleVisibilityManager::class.java, CliModuleVisibilityManagerImpl())
             registerService(NullableNotNullManager::class.java, KotlinNullableNotNullManager(kotlinProject))
-            registerService(CoreJavaFileManager::class.java,
-                ServiceManager.getService(project, JavaFileManager::class.java) as CoreJavaFileManager)
+            registerService(CoreJavaFileManager::class.java, fileManager)
             
             val cliLightClassGenerationSupport = CliLightClassGenerationSupport(project)
             registerService(LightClassGenerationSupport::class.java, cliLightClassGenerationSupport)
@@ -160,7 +254,6 @@ class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable
             
             registerService(KtLightClassForFacade.FacadeStubCache::class.java, KtLightClassForFacade.FacadeStubCache(project))
             registerService(KotlinLightClassManager::class.java, KotlinLightClassManager(kotlinProject))
-            registerService(BuiltInsReferenceResolver::class.java, BuiltInsReferenceResolver(project))
             registerService(KotlinSourceIndex::class.java, KotlinSourceIndex())
             registerService(KotlinCacheService::class.java, KotlinCacheServiceImpl(project, kotlinProject))
             registerService(JvmVirtualFileFinderFactory::class.java, NetBeansVirtualFileFinderFactory(kotlinProject))
@@ -176,10 +269,6 @@ class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable
         
         ExpressionCodegenExtension.Companion.registerExtensionPoint(project)
         
-        getExtensionsFromCommonXml()
-        getExtensionsFromKotlin2JvmXml()
-        
-        CACHED_ENVIRONMENT.put(kotlinProject, this)
         KotlinLogger.INSTANCE.logInfo("KotlinEnvironment init: ${(System.nanoTime() - startTime)} ns")
     }
     
@@ -190,89 +279,82 @@ class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable
                 PsiElementFinder.EP_NAME, PsiElementFinder::class.java)
     }
     
-    private fun getExtensionsFromCommonXml() {
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName("org.jetbrains.kotlin.diagnosticSuppressor"), DiagnosticSuppressor::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName("org.jetbrains.kotlin.defaultErrorMessages"), DefaultErrorMessages.Extension::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName("org.jetbrains.kotlin.suppressStringProvider"), SuppressStringProvider::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName(("org.jetbrains.kotlin.expressionCodegenExtension")), ExpressionCodegenExtension::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName(("org.jetbrains.kotlin.classBuilderFactoryInterceptorExtension")), ClassBuilderInterceptorExtension::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(
-                ExtensionPointName(("org.jetbrains.kotlin.packageFragmentProviderExtension")), PackageFragmentProviderExtension::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(CodeStyleSettingsProvider.EXTENSION_POINT_NAME, KotlinSettingsProvider::class.java)
-        CoreApplicationEnvironment.registerApplicationExtensionPoint(LanguageCodeStyleSettingsProvider.EP_NAME, KotlinLanguageCodeStyleSettingsProvider::class.java)
+    /**
+     * Roots added to and removed from the classpath by [configureClasspath]. A jar rebuilt 
+     * in place is both removed and added.
+     */
+    class ClasspathChange(val added: List<JavaRoot>, val removed: List<JavaRoot>) {
+        val isEmpty: Boolean
+            get() = added.isEmpty() && removed.isEmpty()
         
-        with (Extensions.getRootArea()) {
-            getExtensionPoint(CodeStyleSettingsProvider.EXTENSION_POINT_NAME).registerExtension(KotlinSettingsProvider())
-            getExtensionPoint(LanguageCodeStyleSettingsProvider.EP_NAME).registerExtension(KotlinLanguageCodeStyleSettingsProvider())
-            getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(DefaultErrorMessagesJvm())
-            getExtensionPoint(DefaultErrorMessages.Extension.EP_NAME).registerExtension(DefaultErrorMessagesJs())
-        }
+        override fun toString() = "${added.size} roots added, ${removed.size} removed"
     }
     
-    private fun getExtensionsFromKotlin2JvmXml() {
-        CoreApplicationEnvironment.registerComponentInstance<DefaultErrorMessages.Extension>(Extensions.getRootArea().picoContainer,
-                DefaultErrorMessages.Extension::class.java, DefaultErrorMessagesJvm())
-    }
-    
-    fun configureClasspath(kotlinProject: NBProject) {
+    /**
+     * Updates the classpath roots to the current classpath of [kotlinProject]. Roots which are 
+     * still on the classpath are kept with their index segments.
+     */
+    @Synchronized fun configureClasspath(kotlinProject: NBProject): ClasspathChange {
+        val start = System.currentTimeMillis()
         val classpath = ProjectUtils.getClasspath(kotlinProject)
+                .map { if (it.endsWith("!/")) it.split("!/")[0].substringAfter("file:") else it }
         KotlinLogger.INSTANCE.logInfo("Project ${kotlinProject.projectDirectory.path} classpath is $classpath")
-        classpath.forEach {
-            if (it.endsWith("!/")) {
-                addToClasspath(it.split("!/")[0].substringAfter("file:"), null)
-            } else {
-                addToClasspath(it, null)
-            }
-        }
-    }
-    
-    private fun createJavaCoreApplicationEnvironment(disposable: Disposable): JavaCoreApplicationEnvironment {
-        Extensions.cleanRootArea(disposable)
-        registerAppExtensionPoints()
-        val javaApplicationEnvironment = JavaCoreApplicationEnvironment(disposable)
         
-        with (javaApplicationEnvironment) {
-            registerFileType(PlainTextFileType.INSTANCE, "xml")
-            registerFileType(KotlinFileType.INSTANCE, "kt")
-            registerParserDefinition(KotlinParserDefinition())
-            application.registerService(KotlinBinaryClassCache::class.java, KotlinBinaryClassCache())
+        val paths = classpath.toSet()
+        val removed = rootsByPath.keys.filter { it !in paths || isModified(it) }.mapNotNull { removeFromClasspath(it) }
+        val added = classpath.filter { it !in rootsByPath }.mapNotNull { addToClasspath(it, null) }
+        val change = ClasspathChange(added, removed)
+        
+        if (!change.isEmpty) {
+            classpathGeneration++
+            classFileLookups.invalidate()
+            KotlinLogger.INSTANCE.logInfo("Classpath of ${kotlinProject.projectDirectory.path} updated " + 
+                    "in ${System.currentTimeMillis() - start} ms: $change")
         }
         
-        return javaApplicationEnvironment
+        return change
     }
     
-    private fun registerAppExtensionPoints() {
-        CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ContainerProvider.EP_NAME,
-                ContainerProvider::class.java)
-        CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ClsCustomNavigationPolicy.EP_NAME,
-                ClsCustomNavigationPolicy::class.java)
-        CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), ClassFileDecompilers.EP_NAME,
-                ClassFileDecompilers.Decompiler::class.java)
-        
-        CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), PsiAugmentProvider.EP_NAME, PsiAugmentProvider::class.java)
-        CoreApplicationEnvironment.registerExtensionPoint(Extensions.getRootArea(), JavaMainMethodProvider.EP_NAME, JavaMainMethodProvider::class.java)
-    }
+    // a jar rebuilt since its segment was opened
+    private fun isModified(path: String) = jarSegments[path]?.let { it.timestamp != File(path).lastModified() } ?: false
     
-    private fun addToClasspath(path: String, rootType: JavaRoot.RootType?) {
+    private fun addToClasspath(path: String, rootType: JavaRoot.RootType?): JavaRoot? {
         val file = File(path)
-        if (file.isFile) {
-            val jarFile = applicationEnvironment.jarFileSystem.findFileByPath("$path!/") ?: return
-            projectEnvironment.addJarToClassPath(file)
-            val type = rootType ?: JavaRoot.RootType.BINARY
+        cachedIndex = null
+        cachedPackageRoots = null
+        val root = if (file.isFile) {
+            val segment = SharedJarIndex.acquire(file) ?: return null
+            val jarFile = segment.root ?: return null
+            jarSegments.put(path, segment)
+            jarSegmentsByRoot.put(jarFile, segment)
+            projectEnvironment.addSourcesToClasspath(jarFile)
             
-            roots.add(JavaRoot(jarFile, type, null))
+            JavaRoot(jarFile, rootType ?: JavaRoot.RootType.BINARY, null)
         } else {
-            val root = applicationEnvironment.localFileSystem.findFileByPath(path) ?: return
-            projectEnvironment.addSourcesToClasspath(root)
-            val type = rootType ?: JavaRoot.RootType.SOURCE
+            val dir = applicationEnvironment.localFileSystem.findFileByPath(path) ?: return null
+            projectEnvironment.addSourcesToClasspath(dir)
+            FileUtil.addRecursiveListener(outputListener, file)
             
-            roots.add(JavaRoot(root, type, null))
+            JavaRoot(dir, rootType ?: JavaRoot.RootType.SOURCE, null)
         }
+        rootsByPath.put(path, root)
+        
+        return root
+    }
+    
+    private fun removeFromClasspath(path: String): JavaRoot? {
+        cachedIndex = null
+        cachedPackageRoots = null
+        rootsByPath[path]?.let { fileManager.removeFromClasspath(it.file) }
+        val segment = jarSegments.remove(path)
+        if (segment != null) {
+            jarSegmentsByRoot.remove(segment.root)
+            SharedJarIndex.release(segment)
+        } else if (path in rootsByPath) {
+            FileUtil.removeRecursiveListener(outputListener, File(path))
+        }
+        
+        return rootsByPath.remove(path)
     }
     
     fun getVirtualFile(location: String) = applicationEnvironment.localFileSystem.findFileByPath(location)
@@ -281,6 +363,100 @@ class KotlinEnvironment private constructor(kotlinProject: NBProject, disposable
         val decodedPathToJar = URLDecoder.decode(pathToJar, "UTF-8") ?: pathToJar
         val decodedRelativePath = URLDecoder.decode(relativePath, "UTF-8") ?: relativePath
         
-        return applicationEnvironment.jarFileSystem.findFileByPath("$decodedPathToJar!/$decodedRelativePath")
+        return jarSegments[decodedPathToJar]?.findFile(decodedRelativePath) 
+                ?: applicationEnvironment.jarFileSystem.findFileByPath("$decodedPathToJar!/$decodedRelativePath")
+    }
+    
+    @Synchronized fun getJarSegment(root: VirtualFile) = jarSegmentsByRoot[root]
+    
+    /**
+     * Roots which may have files of a package, in classpath order: the jars having classes in 
+     * the package and all directories, whose contents are not indexed.
+     */
+    private class PackageRoots(roots: List<JavaRoot>, segments: Map<VirtualFile, JarIndexSegment>) {
+        
+        private val directories: List<Pair<VirtualFile, JarIndexSegment?>> = 
+                roots.filter { it.file !in segments }.map { it.file to null }
+        private val byPackage = hashMapOf<String, MutableList<Pair<VirtualFile, JarIndexSegment?>>>()
+        
+        init {
+            val directoriesBefore = arrayListOf<Pair<VirtualFile, JarIndexSegment?>>()
+            for (root in roots) {
+                val segment = segments[root.file]
+                if (segment == null) {
+                    directoriesBefore.add(root.file to null)
+                    byPackage.values.forEach { it.add(root.file to null) }
+                } else {
+                    // a package first found in this jar is preceded by the directories before the jar
+                    segment.metadata.packages.forEach { 
+                        byPackage.getOrPut(it.replace('.', '/')) { ArrayList(directoriesBefore) }.add(root.file to segment)
+                    }
+                }
+            }
+        }
+        
+        operator fun get(packagePath: String) = byPackage[packagePath] ?: directories
+    }
+    
+    private val packageRoots: PackageRoots
+        get() {
+            cachedPackageRoots?.let { return it }
+            val (roots, segments) = synchronized(this) { rootsByPath.values.toList() to HashMap(jarSegmentsByRoot) }
+            
+            // jar metadata may be read from disk, so it is not done under the lock
+            return PackageRoots(roots, segments).also { 
+                synchronized(this) { if (roots == rootsByPath.values.toList()) cachedPackageRoots = it }
+            }
+        }
+    
+    /**
+     * Finds a file by its path relative to the classpath roots. Only the roots which may have 
+     * the package of the file are searched: jars are looked up in the index of their central 
+     * directory, directories on disk.
+     */
+    fun findInClasspath(relativePath: String): VirtualFile? {
+        for ((root, segment) in packageRoots[relativePath.substringBeforeLast('/', "")]) {
+            val file = if (segment != null) segment.findFile(relativePath) else root.findFileByRelativePath(relativePath)
+            if (file != null) return file
+        }
+        
+        return null
+    }
+    
+    /**
+     * Simple names of the classes of a package in the jars on the classpath. Returns null when 
+     * a directory root has the package, its classes are known only to the Java infrastructure.
+     */
+    fun getClassNamesInJars(packageFqName: String): Set<String>? {
+        val relativePath = packageFqName.replace('.', '/')
+        val names = hashSetOf<String>()
+        for (root in roots) {
+            val segment = getJarSegment(root.file)
+            if (segment == null) {
+                if (root.file.findFileByRelativePath(relativePath)?.isDirectory ?: false) return null
+            } else {
+                segment.metadata.classNames[packageFqName]?.let { names.addAll(it) }
+            }
+        }
+        
+        return names
+    }
+    
+    fun getPackagesInJars(prefix: String) = synchronized(this) { jarSegments.values.toList() }
+            .flatMapTo(hashSetOf()) { segment -> segment.metadata.packages.filter { it.startsWith(prefix) } }
+    
+    val directoryRootPaths: List<String>
+        @Synchronized get() = rootsByPath.keys.filter { it !in jarSegments }
+    
+    /**
+     * Releases the shared jar segments and the listeners of output folders held by this environment.
+     */
+    @Synchronized fun dispose() {
+        directoryRootPaths.forEach { FileUtil.removeRecursiveListener(outputListener, File(it)) }
+        jarSegments.values.forEach { SharedJarIndex.release(it) }
+        jarSegments.clear()
+        jarSegmentsByRoot.clear()
+        cachedIndex = null
+        isDisposed = true
     }
 }
\ No newline at end of file
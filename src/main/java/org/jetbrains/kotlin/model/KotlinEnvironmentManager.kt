@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.util.Disposer
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.indexer.LibraryCallablesIndex
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
+import org.netbeans.api.project.Project
+import org.openide.util.NbPreferences
+import org.openide.util.RequestProcessor
+
+/**
+ * Owns the Kotlin environments of projects. An environment is created on first use, disposed 
+ * when its project is closed and evicted when it was not used for [idleTimeoutMinutes]. 
+ * An evicted environment is created again by the next [getEnvironment]. Work done through 
+ * [withEnvironment] holds a lease: the environment is not evicted while it runs and a dispose 
+ * requested meanwhile happens when the last lease is returned.
+ */
+object KotlinEnvironmentManager {
+    
+    private const val IDLE_TIMEOUT = "kotlin.environment.idleMinutes"
+    private const val DEFAULT_IDLE_TIMEOUT = 30
+    private const val EVICTION_PERIOD = 60 * 1000
+    
+    // rough heap cost of retained data, only meant for comparing environments
+    private const val PSI_BYTES_PER_CHAR = 40L
+    private const val ANALYSIS_BYTES_PER_CHAR = 120L
+    private const val ROOT_BYTES = 16L * 1024
+    
+    private class Entry(val environment: KotlinEnvironment, val disposable: Disposable) {
+        @Volatile var lastAccess = System.currentTimeMillis()
+        // guarded by the manager
+        var leases = 0
+        var disposeRequested = false
+    }
+    
+    private val entries = hashMapOf<Project, Entry>()
+    // projects whose environment holds state shared by the whole IDE session
+    private val pinned = hashSetOf<Project>()
+    
+    private val processor = RequestProcessor("Kotlin environment eviction", 1)
+    private val evictionTask = processor.create { evictIdle() }
+    
+    // 0 turns eviction of idle environments off
+    var idleTimeoutMinutes: Int
+        get() = NbPreferences.forModule(KotlinEnvironmentManager::class.java).getInt(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT)
+        set(value) = NbPreferences.forModule(KotlinEnvironmentManager::class.java).putInt(IDLE_TIMEOUT, value)
+    
+    val size: Int
+        @Synchronized get() = entries.size
+    
+    @JvmStatic @Synchronized fun getEnvironment(project: Project) = entry(project).environment
+    
+    /**
+     * Runs [action] with the environment of [project], which is neither evicted nor disposed 
+     * before the action returns.
+     */
+    @JvmStatic fun <T> withEnvironment(project: Project, action: (KotlinEnvironment) -> T): T {
+        val entry = synchronized(this) { entry(project).also { it.leases++ } }
+        try {
+            return action(entry.environment)
+        } finally {
+            val dispose = synchronized(this) { 
+                entry.lastAccess = System.currentTimeMillis()
+                --entry.leases == 0 && entry.disposeRequested 
+            }
+            if (dispose) release(project, entry)
+        }
+    }
+    
+    private fun entry(project: Project): Entry {
+        val entry = entries[project] ?: Disposer.newDisposable().let { disposable ->
+            Entry(KotlinEnvironment(project, disposable), disposable).also { 
+                entries.put(project, it)
+                evictionTask.schedule(EVICTION_PERIOD)
+            }
+        }
+        entry.lastAccess = System.currentTimeMillis()
+        
+        return entry
+    }
+    
+    @JvmStatic @Synchronized fun isCreated(project: Project) = entries.containsKey(project)
+    
+    @JvmStatic @Synchronized fun pin(project: Project) = pinned.add(project)
+    
+    @JvmStatic fun dispose(project: Project) {
+        val entry = synchronized(this) { 
+            pinned.remove(project)
+            entries.remove(project)?.takeIf { 
+                it.disposeRequested = it.leases > 0
+                !it.disposeRequested
+            }
+        } ?: return
+        release(project, entry)
+    }
+    
+    // the entry is already removed, the next getEnvironment creates a new environment
+    private fun release(project: Project, entry: Entry) {
+        val retained = retainedMemory(project, entry.environment)
+        
+        // caches holding trees or descriptors of the disposed environment
+        KotlinPsiManager.removeFiles(entry.environment.project)
+        KotlinAnalysisCache.remove(project)
+        KotlinResolveSession.invalidate(project)
+        LibraryCallablesIndex.invalidate(project)
+        
+        entry.environment.dispose()
+        Disposer.dispose(entry.disposable)
+        KotlinLogger.INSTANCE.logInfo("Kotlin environment of ${project.projectDirectory.path} disposed, " + 
+                "about ${retained / 1024} KB released")
+    }
+    
+    /**
+     * Approximate heap retained by the environment of [project]: parsed files, cached analysis 
+     * results and classpath roots. Returns 0 if the environment is not created.
+     */
+    @JvmStatic fun retainedMemory(project: Project): Long {
+        val environment = synchronized(this) { entries[project]?.environment } ?: return 0
+        
+        return retainedMemory(project, environment)
+    }
+    
+    @Synchronized fun statistics() = entries.entries.joinToString("\n") { (project, entry) ->
+        val idle = (System.currentTimeMillis() - entry.lastAccess) / 1000
+        "${project.projectDirectory.path}: about ${retainedMemory(project, entry.environment) / 1024} KB, idle $idle s"
+    }
+    
+    private fun retainedMemory(project: Project, environment: KotlinEnvironment) = 
+            KotlinPsiManager.retainedChars(environment.project) * PSI_BYTES_PER_CHAR +
+            KotlinAnalysisCache.getInstance(project).retainedWeight * ANALYSIS_BYTES_PER_CHAR +
+            environment.roots.size * ROOT_BYTES
+    
+    internal fun evictIdle(now: Long = System.currentTimeMillis()) {
+        val timeout = idleTimeoutMinutes * 60 * 1000L
+        // checked and removed at once, so an environment used meanwhile is kept
+        val idle = synchronized(this) {
+            entries.filter { (project, entry) -> 
+                timeout > 0 && project !in pinned && entry.leases == 0 && now - entry.lastAccess > timeout 
+            }.onEach { entries.remove(it.key) }
+        }
+        idle.forEach { (project, entry) ->
+            KotlinLogger.INSTANCE.logInfo("Evicting idle Kotlin environment of ${project.projectDirectory.path}")
+            release(project, entry) 
+        }
+        
+        synchronized(this) { if (entries.isNotEmpty()) evictionTask.schedule(EVICTION_PERIOD) }
+    }
+    
+}
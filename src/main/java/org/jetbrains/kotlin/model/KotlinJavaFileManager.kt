@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import com.intellij.core.CoreJavaFileManager
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiClass
+import com.intellij.psi.PsiManager
+import com.intellij.psi.PsiPackage
+import com.intellij.psi.search.GlobalSearchScope
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCliJavaFileManagerImpl
+
+/**
+ * Java file manager of a [KotlinEnvironment], whose classpath roots can also be removed. The core 
+ * file manager can only add roots, and a jar rebuilt in place would stay on its classpath with its 
+ * old contents. Lookups go to a core file manager over the current roots, which is replaced 
+ * whenever the roots change, so it is never changed while it is read.
+ */
+class KotlinJavaFileManager(private val psiManager: PsiManager) : CoreJavaFileManager(psiManager) {
+    
+    private val roots = arrayListOf<VirtualFile>()
+    @Volatile private var delegate = KotlinCliJavaFileManagerImpl(psiManager)
+    
+    val classpath: List<VirtualFile>
+        @Synchronized get() = roots.toList()
+    
+    @Synchronized override fun addToClasspath(root: VirtualFile) {
+        roots.add(root)
+        delegate = createDelegate()
+    }
+    
+    @Synchronized fun removeFromClasspath(root: VirtualFile) {
+        if (roots.remove(root)) delegate = createDelegate()
+    }
+    
+    private fun createDelegate() = KotlinCliJavaFileManagerImpl(psiManager).apply { roots.forEach { addToClasspath(it) } }
+    
+    override fun findPackage(packageName: String): PsiPackage? = delegate.findPackage(packageName)
+    
+    override fun findClass(qName: String, scope: GlobalSearchScope): PsiClass? = delegate.findClass(qName, scope)
+    
+    override fun findClasses(qName: String, scope: GlobalSearchScope): Array<PsiClass> = delegate.findClasses(qName, scope)
+    
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.model
+
+import com.intellij.core.CoreJarFileSystem
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.File
+import org.jetbrains.kotlin.cli.jvm.index.JavaRoot
+import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndex
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+
+/**
+ * Opened jar together with the directories of its packages. A segment never changes: 
+ * a jar modified on disk gets a new segment.
+ */
+class JarIndexSegment internal constructor(val path: String, val timestamp: Long) {
+    
+    // every segment has its own file system, so an unused jar is closed with its segment
+    private val fileSystem = CoreJarFileSystem()
+    
+    val root: VirtualFile? = fileSystem.findFileByPath("$path!/")
+    
+    internal var references = 0
+    
+    // read from the on-disk cache or by scanning the jar when first needed
+    val metadata: JarMetadata by lazy { 
+        root?.let { JarMetadataCache.INSTANCE.get(File(path), it) } ?: JarMetadata(emptyMap(), emptyMap()) 
+    }
+    
+    private val centralDirectoryValue = lazy { JarCentralDirectory.open(File(path)) }
+    
+    // null if the jar can't be indexed, then the package directories are collected from the jar file system
+    val centralDirectory: JarCentralDirectory? by centralDirectoryValue
+    
+    private val packageDirectories by lazy { 
+        hashMapOf<String, VirtualFile>().apply { root?.let { collectPackages(it, "", this) } } 
+    }
+    
+    fun findPackageDirectory(packageFqName: FqName): VirtualFile? {
+        val directory = centralDirectory ?: return packageDirectories[packageFqName.asString()]
+        val relativePath = packageFqName.asString().replace('.', '/')
+        
+        return if (directory.hasDirectory(relativePath)) findFile(relativePath) else null
+    }
+    
+    fun findFile(relativePath: String): VirtualFile? {
+        val directory = centralDirectory
+        if (directory != null && relativePath.isNotEmpty() && relativePath !in directory 
+                && !directory.hasDirectory(relativePath.removeSuffix("/"))) return null
+        
+        return fileSystem.findFileByPath("$path!/$relativePath")
+    }
+    
+    // called once the segment is released, the jar is not looked up in anymore
+    internal fun close() {
+        if (centralDirectoryValue.isInitialized()) centralDirectory?.close()
+    }
+    
+    private fun collectPackages(dir: VirtualFile, fqName: String, packages: MutableMap<String, VirtualFile>) {
+        packages.put(fqName, dir)
+        dir.children.filter { it.isDirectory }.forEach { 
+            collectPackages(it, if (fqName.isEmpty()) it.name else "$fqName.${it.name}", packages) 
+        }
+    }
+}
+
+/**
+ * Jar segments shared by the environments of all open projects. The JDK, the Kotlin runtime and 
+ * common libraries are opened and indexed once, whatever the number of projects using them.
+ * Segments are reference counted and dropped when the last environment releases them.
+ */
+object SharedJarIndex {
+    
+    private val segments = hashMapOf<Pair<String, Long>, JarIndexSegment>()
+    
+    val size: Int
+        @Synchronized get() = segments.size
+    
+    @JvmStatic @Synchronized fun acquire(jar: File): JarIndexSegment? {
+        val key = Pair(jar.path, jar.lastModified())
+        val segment = segments[key] ?: JarIndexSegment(key.first, key.second).takeIf { it.root != null }
+                ?.also { segments.put(key, it) } ?: return null
+        segment.references++
+        
+        return segment
+    }
+    
+    @JvmStatic @Synchronized fun release(segment: JarIndexSegment) {
+        if (--segment.references > 0) return
+        
+        segments.remove(Pair(segment.path, segment.timestamp))
+        segment.close()
+        KotlinLogger.INSTANCE.logInfo("Jar index segment for ${segment.path} released")
+    }
+    
+}
+
+/**
+ * Dependencies index of one environment composed of shared jar segments. Other roots are 
+ * looked up directly.
+ */
+class SharedDependenciesIndex(private val roots: List<JavaRoot>,
+                              private val segments: Map<VirtualFile, JarIndexSegment>) : JvmDependenciesIndex {
+    
+    override val indexedRoots: Sequence<JavaRoot>
+        get() = roots.asSequence()
+    
+    override fun <T : Any> findClass(classId: ClassId,
+                                     acceptedRootTypes: Set<JavaRoot.RootType>,
+                                     findClassGivenDirectory: (VirtualFile, JavaRoot.RootType) -> T?): T? {
+        for ((dir, type) in packageDirectories(classId.packageFqName, acceptedRootTypes)) {
+            findClassGivenDirectory(dir, type)?.let { return it }
+        }
+        
+        return null
+    }
+    
+    override fun traverseDirectoriesInPackage(packageFqName: FqName,
+                                              acceptedRootTypes: Set<JavaRoot.RootType>,
+                                              continueSearch: (VirtualFile, JavaRoot.RootType) -> Boolean) {
+        for ((dir, type) in packageDirectories(packageFqName, acceptedRootTypes)) {
+            if (!continueSearch(dir, type)) return
+        }
+    }
+    
+    private fun packageDirectories(packageFqName: FqName, 
+                                   acceptedRootTypes: Set<JavaRoot.RootType>) = roots.asSequence()
+            .filter { it.type in acceptedRootTypes }
+            .mapNotNull { root -> 
+                val segment = segments[root.file]
+                val dir = if (segment != null) segment.findPackageDirectory(packageFqName) 
+                        else root.file.findFileByRelativePath(packageFqName.asString().replace('.', '/'))
+                
+                dir?.takeIf { it.isDirectory }?.let { it to root.type }
+            }
+    
+}
@@ -17,13 +17,16 @@
 package org.jetbrains.kotlin.navigation
 
 import com.intellij.psi.PsiElement
+import com.intellij.openapi.util.text.StringUtilRt
 import javax.swing.text.Document
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.utils.LineEndUtil
 import org.jetbrains.kotlin.utils.ProjectUtils
 
 fun getReferenceExpression(doc: Document, offset: Int): PsiElement? {
     val fo = ProjectUtils.getFileObjectForDocument(doc) ?: return null
-    val ktFile = ProjectUtils.getKtFile(doc.getText(0, doc.length), fo)
+    // the element is kept by the hyperlink provider, so it gets a tree of its own which is never reparsed
+    val ktFile = KotlinPsiManager.parseText(StringUtilRt.convertLineSeparators(doc.getText(0, doc.length)), fo) ?: return null
     
     val documentOffset = LineEndUtil.convertCrToDocumentOffset(ktFile.text, offset)
     return ktFile.findElementAt(documentOffset)
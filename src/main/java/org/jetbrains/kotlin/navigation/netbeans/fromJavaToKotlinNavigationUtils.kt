@@ -24,6 +24,7 @@ import javax.swing.text.Document
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.fileClasses.NoResolveFileClassesProvider
 import org.jetbrains.kotlin.filesystem.lightclasses.LightClassBuilderFactory
+import org.jetbrains.kotlin.indexer.KotlinDeclarationIndex
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.psi.*
 import org.jetbrains.kotlin.resolve.lang.java.ElementHandleFieldContainingClassSearcher
@@ -51,7 +52,8 @@ fun getElement(doc: Document?, offset: Int): ElementHandle<*>? {
 fun findKotlinFileToNavigate(element: ElementHandle<*>?, project: Project?, doc: Document): Pair<KtFile, Int>? {
     if (element == null || project == null) return null
 
-    val ktFiles = ProjectUtils.getSourceFiles(project)
+    val ktFiles = KotlinDeclarationIndex.findFilesDeclaringJvmClass(project, element.qualifiedName)
+            .mapNotNull { ProjectUtils.getKtFile(it) }
 
     ktFiles.forEach {
         if (element.kind == ElementKind.CLASS) {
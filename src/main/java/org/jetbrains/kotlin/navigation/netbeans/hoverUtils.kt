@@ -17,10 +17,12 @@
 package org.jetbrains.kotlin.navigation.netbeans
 
 import javax.swing.text.Document
-import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.psi.*
 import org.jetbrains.kotlin.renderer.DescriptorRenderer
+import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
 import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
 import org.jetbrains.kotlin.resolve.lang.java.getJavaDoc
 import org.jetbrains.kotlin.resolve.lang.java.resolver.NetBeansJavaSourceElement
 import org.jetbrains.kotlin.resolve.lang.java.structure.*
@@ -28,9 +30,17 @@ import org.jetbrains.kotlin.resolve.source.KotlinSourceElement
 import org.jetbrains.kotlin.psi.psiUtil.getNonStrictParentOfType
 import org.jetbrains.kotlin.utils.ProjectUtils
 
-fun getSmartCastHover(offset: Int): String? {
-    val ktFile = KotlinParser.file ?: return null
-    val analysisResult = KotlinParser.analysisResult ?: return null
+// only a result computed for the current text of the editor is used, hovering doesn't start an analysis
+fun getSmartCastHover(doc: Document, offset: Int): String? {
+    val file = ProjectUtils.getFileObjectForDocument(doc) ?: return null
+    val project = ProjectUtils.getKotlinProjectForFileObject(file) ?: return null
+    
+    return KotlinPsiManager.readEditorFile(doc.getText(0, doc.length), file) { ktFile ->
+        KotlinAnalysisCache.getInstance(project).get(ktFile)?.let { getSmartCastHover(ktFile, offset, it) }
+    }
+}
+
+private fun getSmartCastHover(ktFile: KtFile, offset: Int, analysisResult: AnalysisResultWithProvider): String? {
     val bindingContext = analysisResult.analysisResult.bindingContext
     
     val element = ktFile.findElementAt(offset)
@@ -48,7 +58,7 @@ fun getSmartCastHover(offset: Int): String? {
 
 fun getToolTip(referenceExpression: KtReferenceExpression?,
                doc: Document, offset: Int): String {
-    val smartCast = getSmartCastHover(offset) ?: ""
+    val smartCast = getSmartCastHover(doc, offset) ?: ""
     referenceExpression ?: return smartCast
     
     val file = ProjectUtils.getFileObjectForDocument(doc) ?: return smartCast
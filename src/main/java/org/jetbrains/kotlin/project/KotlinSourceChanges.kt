@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.project
+
+import java.util.concurrent.CopyOnWriteArrayList
+import javax.swing.event.ChangeListener
+import org.jetbrains.kotlin.utils.ProjectUtils
+import org.netbeans.api.project.Project
+import org.netbeans.api.project.ProjectUtils as NBProjectUtils
+import org.openide.filesystems.FileAttributeEvent
+import org.openide.filesystems.FileChangeAdapter
+import org.openide.filesystems.FileChangeListener
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+import org.openide.filesystems.FileUtil
+
+/**
+ * Changes of the files in the source folders of a project. Each folder is watched by one recursive 
+ * listener, whose events are passed on to everything keeping data about the sources: the source 
+ * registry, the resolve session and the Java class cache. The folders are watched only while 
+ * there are listeners. They are looked up again when the source groups of the project change or 
+ * a folder is created or deleted in the project directory, newly watched folders are reported 
+ * as created and folders which are not watched anymore as deleted.
+ */
+class KotlinSourceChanges internal constructor(private val computeRoots: () -> List<FileObject>) {
+    
+    internal constructor(roots: List<FileObject>) : this({ roots })
+    
+    companion object {
+        private val instances = hashMapOf<Project, KotlinSourceChanges>()
+        
+        @JvmStatic @Synchronized fun getInstance(project: Project) = instances.getOrPut(project) { 
+            KotlinSourceChanges { watchedRoots(project) }.apply { startWatching(project) }
+        }
+        
+        @JvmStatic @Synchronized fun remove(project: Project) {
+            instances.remove(project)?.stopWatching(project)
+        }
+        
+        // the src folder holds the Kotlin sources also when it is not a Java source root
+        private fun watchedRoots(project: Project): List<FileObject> {
+            val sourceRoots = ProjectUtils.getSourceRoots(project)
+            val src = project.projectDirectory.getFileObject("src")
+                    ?.takeIf { src -> sourceRoots.none { it == src || FileUtil.isParentOf(it, src) } } 
+                    ?: return sourceRoots
+            
+            return listOf(src) + sourceRoots.filter { !FileUtil.isParentOf(src, it) }
+        }
+    }
+    
+    @Volatile var roots = computeRoots()
+        private set
+    
+    private val listeners = CopyOnWriteArrayList<FileChangeListener>()
+    
+    private val dispatcher = object : FileChangeListener {
+        override fun fileFolderCreated(fe: FileEvent) = listeners.forEach { it.fileFolderCreated(fe) }
+        override fun fileDataCreated(fe: FileEvent) = listeners.forEach { it.fileDataCreated(fe) }
+        override fun fileChanged(fe: FileEvent) = listeners.forEach { it.fileChanged(fe) }
+        override fun fileDeleted(fe: FileEvent) = listeners.forEach { it.fileDeleted(fe) }
+        override fun fileRenamed(fe: FileRenameEvent) = listeners.forEach { it.fileRenamed(fe) }
+        override fun fileAttributeChanged(fe: FileAttributeEvent) = listeners.forEach { it.fileAttributeChanged(fe) }
+    }
+    
+    private val sourceGroupsListener = ChangeListener { updateRoots() }
+    
+    // a src folder may be created after the project was opened
+    private val projectDirectoryListener = object : FileChangeAdapter() {
+        override fun fileFolderCreated(fe: FileEvent) = updateRoots()
+        override fun fileDeleted(fe: FileEvent) { if (fe.file.isFolder) updateRoots() }
+        override fun fileRenamed(fe: FileRenameEvent) { if (fe.file.isFolder) updateRoots() }
+    }
+    
+    @Synchronized fun addListener(listener: FileChangeListener) {
+        if (listeners.isEmpty()) roots.forEach { it.addRecursiveListener(dispatcher) }
+        listeners.add(listener)
+    }
+    
+    @Synchronized fun removeListener(listener: FileChangeListener) {
+        if (listeners.remove(listener) && listeners.isEmpty()) roots.forEach { it.removeRecursiveListener(dispatcher) }
+    }
+    
+    fun updateRoots() {
+        val (added, removed) = synchronized(this) {
+            val old = roots
+            val current = computeRoots()
+            if (current == old) return
+            
+            roots = current
+            val added = current.filter { it !in old }
+            val removed = old.filter { it !in current }
+            if (listeners.isEmpty()) return
+            
+            removed.forEach { it.removeRecursiveListener(dispatcher) }
+            added.forEach { it.addRecursiveListener(dispatcher) }
+            added to removed
+        }
+        
+        removed.forEach { dispatcher.fileDeleted(FileEvent(it)) }
+        added.forEach { dispatcher.fileFolderCreated(FileEvent(it)) }
+    }
+    
+    private fun startWatching(project: Project) {
+        NBProjectUtils.getSources(project).addChangeListener(sourceGroupsListener)
+        project.projectDirectory.addFileChangeListener(projectDirectoryListener)
+    }
+    
+    private fun stopWatching(project: Project) {
+        NBProjectUtils.getSources(project).removeChangeListener(sourceGroupsListener)
+        project.projectDirectory.removeFileChangeListener(projectDirectoryListener)
+    }
+    
+}
+
+/**
+ * Whether the file is [folder] or lies in it. Also works for deleted files, whose parents 
+ * may not be known anymore.
+ */
+fun FileObject.isInFolder(folder: FileObject) = this == folder || path.startsWith("${folder.path}/")
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.project
+
+import org.jetbrains.kotlin.builder.isKotlinFile
+import org.openide.filesystems.FileAttributeEvent
+import org.openide.filesystems.FileChangeAdapter
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+
+/**
+ * Kotlin, Java and jar files under the project src directory. The tree is walked once and
+ * then kept current through the events of [changes], so source roots and files can be queried
+ * without touching the disk. Folders are skipped by the same rules [KotlinSources] always used.
+ */
+class KotlinSourceRegistry(val srcDir: FileObject, private val changes: KotlinSourceChanges) {
+
+    // file -> whether it lies in the src/test tree
+    private val files = KotlinProjectConstants.values().associate { it to hashMapOf<FileObject, Boolean>() }
+    
+    private val roots = hashMapOf<Pair<KotlinProjectConstants, Boolean>, List<FileObject>>()
+    private val ktFiles = hashMapOf<Boolean, Set<FileObject>>()
+    
+    private val listener = object : FileChangeAdapter() {
+        override fun fileFolderCreated(fe: FileEvent) {
+            if (!fe.file.isInFolder(srcDir)) return
+            synchronized(this@KotlinSourceRegistry) {
+                scan(fe.file)
+                invalidate()
+            }
+        }
+        
+        override fun fileDataCreated(fe: FileEvent) {
+            if (!fe.file.isInFolder(srcDir)) return
+            synchronized(this@KotlinSourceRegistry) {
+                add(fe.file)
+                invalidate()
+            }
+        }
+        
+        override fun fileDeleted(fe: FileEvent) {
+            if (!fe.file.isInFolder(srcDir)) return
+            synchronized(this@KotlinSourceRegistry) {
+                if (fe.file.isFolder) {
+                    files.values.forEach { map -> map.keys.removeAll { !it.isValid } }
+                } else {
+                    files.values.forEach { it.remove(fe.file) }
+                }
+                invalidate()
+            }
+        }
+        
+        override fun fileRenamed(fe: FileRenameEvent) {
+            if (!fe.file.isInFolder(srcDir)) return
+            synchronized(this@KotlinSourceRegistry) {
+                if (fe.file.isFolder) {
+                    // a renamed folder may start or stop being skipped
+                    files.values.forEach { it.clear() }
+                    scan(srcDir)
+                } else {
+                    files.values.forEach { it.remove(fe.file) }
+                    add(fe.file)
+                }
+                invalidate()
+            }
+        }
+        
+        override fun fileAttributeChanged(fe: FileAttributeEvent) {}
+    }
+    
+    init {
+        scan(srcDir)
+        changes.addListener(listener)
+    }
+    
+    @Synchronized
+    fun getRoots(type: KotlinProjectConstants, test: Boolean): List<FileObject> = roots.getOrPut(Pair(type, test)) {
+        files[type]!!.filter { test || !it.value }.keys.map { it.parent }.distinct()
+    }
+    
+    @Synchronized
+    fun getKotlinFiles(test: Boolean): Set<FileObject> = ktFiles.getOrPut(test) {
+        files[KotlinProjectConstants.KOTLIN_SOURCE]!!.filter { test || !it.value }.keys.toSet()
+    }
+    
+    @Synchronized
+    fun getJavaFiles(): List<FileObject> = files[KotlinProjectConstants.JAVA_SOURCE]!!.keys.toList()
+    
+    fun dispose() {
+        changes.removeListener(listener)
+    }
+    
+    private fun invalidate() {
+        roots.clear()
+        ktFiles.clear()
+    }
+    
+    private fun scan(fo: FileObject) {
+        if (fo.isFolder) {
+            if (isSkipped(fo)) return
+            fo.children.forEach { scan(it) }
+        } else add(fo)
+    }
+    
+    private fun add(fo: FileObject) {
+        val type = typeOf(fo) ?: return
+        
+        var test = false
+        var folder: FileObject? = fo.parent
+        while (folder != null && folder != srcDir.parent) {
+            if (isSkipped(folder)) return
+            if (isTestFolder(folder)) test = true
+            folder = folder.parent
+        }
+        
+        files[type]!!.put(fo, test)
+    }
+    
+    private fun typeOf(fo: FileObject) = when {
+        fo.isKotlinFile() -> KotlinProjectConstants.KOTLIN_SOURCE
+        fo.hasExt("java") -> KotlinProjectConstants.JAVA_SOURCE
+        fo.hasExt("jar") && fo.parent.name != "build" -> KotlinProjectConstants.JAR
+        else -> null
+    }
+    
+    private fun isTestFolder(fo: FileObject) = fo.name == "test" && fo.parent?.name == "src"
+    
+    private fun isSkipped(fo: FileObject) = fo.name == "resources" &&
+            (fo.parent?.name == "test" || fo.parent?.name == "main")
+    
+}
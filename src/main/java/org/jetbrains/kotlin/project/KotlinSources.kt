@@ -20,53 +20,43 @@ package org.jetbrains.kotlin.project
 
 import java.beans.PropertyChangeListener
 import javax.swing.ImageIcon
-import org.jetbrains.kotlin.builder.isKotlinFile
 import org.netbeans.api.project.Project
 import org.netbeans.api.project.SourceGroup
 import org.openide.filesystems.FileObject
 
 class KotlinSources(private val kotlinProject: Project) {
 
-    private fun findSrc(fo: FileObject,
-                        files: MutableCollection<FileObject>,
-                        type: KotlinProjectConstants?,
-                        test: Boolean) {
-        if (fo.isFolder) {
-            if (!test && fo.name == "test" && fo.parent.name == "src") return
-            if (fo.name == "resources" &&
-                    (fo.parent.name == "test" || fo.parent.name == "main")) return
-
-            
-            fo.children.forEach { findSrc(it, files, type, test) }
-        } else when (type) {
-            KotlinProjectConstants.KOTLIN_SOURCE -> if (fo.isKotlinFile()) files.add(fo.parent)
-
-            KotlinProjectConstants.JAVA_SOURCE -> if (fo.hasExt("java")) files.add(fo.parent)
-
-            KotlinProjectConstants.JAR -> if (fo.hasExt("jar")) {
-                if (fo.parent.name != "build") files.add(fo.parent)
-            }
-        }
+    private var registry: KotlinSourceRegistry? = null
+    
+    // the src folder may be created after the project was opened, or deleted and created again
+    @Synchronized
+    private fun getRegistry(): KotlinSourceRegistry? {
+        registry?.let { if (it.srcDir.isValid) return it else it.dispose() }
+        registry = null
+        val srcDir = kotlinProject.projectDirectory.getFileObject("src") ?: return null
+        
+        return KotlinSourceRegistry(srcDir, KotlinSourceChanges.getInstance(kotlinProject)).also { registry = it }
     }
 
     private fun getSrcDirectories(type: KotlinProjectConstants,
-                                  test: Boolean = true): List<FileObject> {
-        val orderedFiles = hashSetOf<FileObject>()
-        val srcDir = kotlinProject.projectDirectory.getFileObject("src") ?: return emptyList()
-
-        findSrc(srcDir, orderedFiles, type, test)
-        return orderedFiles.toList()
-    }
-
-    fun getAllKtFiles() = getSrcDirectories(KotlinProjectConstants.KOTLIN_SOURCE)
-            .flatMap { it.children.toList() }
-            .filter { it.hasExt("kt") }
+                                  test: Boolean = true) = getRegistry()?.getRoots(type, test) ?: emptyList()
 
+    fun getAllKtFiles() = getKotlinFiles().toList()
+    
+    fun getKotlinFiles(test: Boolean = true) = getRegistry()?.getKotlinFiles(test) ?: emptySet()
+    
+    fun getJavaFiles() = getRegistry()?.getJavaFiles() ?: emptyList()
 
     fun getSourceGroups(type: KotlinProjectConstants,
                         test: Boolean = true) = getSrcDirectories(type, test)
             .map { KotlinSourceGroup(it) }
             .toTypedArray()
+    
+    @Synchronized
+    fun dispose() {
+        registry?.dispose()
+        registry = null
+    }
 
 }
 
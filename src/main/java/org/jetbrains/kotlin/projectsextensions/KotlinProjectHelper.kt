@@ -16,17 +16,24 @@
  ****************************************************************************** */
 package org.jetbrains.kotlin.projectsextensions
 
+import org.jetbrains.kotlin.indexer.KotlinSymbolIndex
+import org.jetbrains.kotlin.indexer.LibraryCallablesIndex
 import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
 import org.jetbrains.kotlin.project.KotlinProjectConstants
 import org.jetbrains.kotlin.projectsextensions.gradle.classpath.GradleExtendedClassPath
 import org.jetbrains.kotlin.projectsextensions.j2se.classpath.J2SEExtendedClassPathProvider
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassDependencyHash
+import org.jetbrains.kotlin.project.KotlinSourceChanges
 import org.jetbrains.kotlin.project.KotlinSources
 import org.jetbrains.kotlin.projectsextensions.maven.classpath.MavenExtendedClassPath
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
 import org.jetbrains.kotlin.resolve.lang.java.JavaEnvironment
+import org.jetbrains.kotlin.resolve.lang.java.NetBeansJavaClassCache
 import org.netbeans.api.java.classpath.ClassPath
 import org.netbeans.api.project.Project
 import org.netbeans.spi.java.classpath.support.ClassPathSupport
-import org.openide.util.RequestProcessor
 
 /**
  *
@@ -37,14 +44,11 @@ object KotlinProjectHelper {
     private val kotlinSources = hashMapOf<Project, KotlinSources>()
     private val extendedClassPaths = hashMapOf<Project, ClassPathExtender>()
     private val fullClasspaths = hashMapOf<Project, ClassPath>()
-    private val environmentLoader = RequestProcessor("Kotlin Environment loader")
     private val isScanning = hashMapOf<Project, Boolean>()
     private val hasJavaFiles = hashMapOf<Project, Boolean>()
     
     fun Project.isScanning() = isScanning[this] ?: false
 
-    fun postTask(run: Runnable): RequestProcessor.Task = environmentLoader.post(run)
-    
     fun hasJavaFiles(project: Project) = hasJavaFiles[project] ?: false
     
     fun setHasJavaFiles(project: Project) = hasJavaFiles.put(project, true)
@@ -65,9 +69,18 @@ object KotlinProjectHelper {
     fun Project.isMavenProject(): Boolean = this::class.java.name == "org.netbeans.modules.maven.NbMavenProjectImpl"
 
     fun Project.removeProjectCache() {
-        kotlinSources.remove(this)
+        KotlinProjectWarmUp.cancel(this)
+        kotlinSources.remove(this)?.dispose()
         extendedClassPaths.remove(this)
         fullClasspaths.remove(this)
+        KotlinAnalysisCache.remove(this)
+        KotlinResolveSession.invalidate(this)
+        KotlinSymbolIndex.remove(this)
+        LibraryCallablesIndex.invalidate(this)
+        NetBeansJavaClassCache.remove(this)
+        LightClassDependencyHash.remove(this)
+        KotlinSourceChanges.remove(this)
+        KotlinEnvironmentManager.dispose(this)
     }
 
     fun Project.getKotlinSources(): KotlinSources? {
@@ -125,7 +138,13 @@ object KotlinProjectHelper {
         
         updateFullClassPath()
         JavaEnvironment.updateClasspathInfo(this)
-        KotlinEnvironment.updateKotlinEnvironment(this)
+        val change = KotlinEnvironment.updateKotlinEnvironment(this)
+        if (change.isEmpty) return
+        
+        // deserialized descriptors of all libraries are kept in one module
+        KotlinResolveSession.invalidate(this)
+        LibraryCallablesIndex.update(this, change)
+        KotlinAnalysisCache.getInstance(this).clear()
     }
     
     private fun getJavaFilesByProject(project: Project) = project.getKotlinSources()
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.projectsextensions
+
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.AnalysisPriority
+import org.jetbrains.kotlin.resolve.CancellationToken
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCancellation
+import org.jetbrains.kotlin.resolve.KotlinAnalysisScheduler
+import org.jetbrains.kotlin.resolve.KotlinAnalyzer
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
+import org.jetbrains.kotlin.resolve.lang.java.getPackages
+import org.jetbrains.kotlin.utils.ProjectUtils
+import org.netbeans.api.progress.ProgressHandleFactory
+import org.netbeans.api.project.Project
+import org.openide.util.Cancellable
+import org.openide.util.NbPreferences
+import org.openide.util.RequestProcessor
+
+/**
+ * Loads the Kotlin environment of an opened project in the background. Unless it is turned off,
+ * it also warms up everything the first completion or highlighting would wait for: library
+ * metadata, deserialized libraries and analysis of the most recently edited files.
+ */
+object KotlinProjectWarmUp {
+    
+    private const val WARM_UP_ENABLED = "kotlin.warmup.enabled"
+    private const val WARM_UP_FILES = "kotlin.warmup.files"
+    
+    private class WarmUp(val project: Project) : Runnable, Cancellable {
+        val token = CancellationToken()
+        lateinit var task: RequestProcessor.Task
+        
+        override fun run() {
+            val thread = Thread.currentThread()
+            val priority = thread.priority
+            thread.priority = Thread.MIN_PRIORITY
+            try {
+                warmUp(this)
+            } catch (e: Exception) {
+                if (!token.isCanceled) KotlinLogger.INSTANCE.logException("Warm-up of ${project.projectDirectory.name} failed", e)
+            } finally {
+                thread.priority = priority
+                finished(this)
+            }
+        }
+        
+        override fun cancel(): Boolean {
+            token.cancel()
+            task.cancel()
+            
+            return true
+        }
+    }
+    
+    private val processor = RequestProcessor("Kotlin warm-up", 1, true)
+    private val warmUps = hashMapOf<Project, WarmUp>()
+    
+    private val preferences
+        get() = NbPreferences.forModule(KotlinProjectWarmUp::class.java)
+    
+    var isEnabled: Boolean
+        get() = preferences.getBoolean(WARM_UP_ENABLED, true)
+        set(value) = preferences.putBoolean(WARM_UP_ENABLED, value)
+    
+    // how many of the most recently modified files are analyzed
+    var filesToAnalyze: Int
+        get() = preferences.getInt(WARM_UP_FILES, 3)
+        set(value) = preferences.putInt(WARM_UP_FILES, value)
+    
+    @JvmStatic @Synchronized fun schedule(project: Project) {
+        if (warmUps.containsKey(project)) return
+        
+        val warmUp = WarmUp(project)
+        warmUps.put(project, warmUp)
+        warmUp.task = processor.create(warmUp)
+        warmUp.task.schedule(0)
+    }
+    
+    @JvmStatic @Synchronized fun cancel(project: Project) {
+        warmUps.remove(project)?.cancel()
+    }
+    
+    @Synchronized private fun finished(warmUp: WarmUp) {
+        if (warmUps[warmUp.project] === warmUp) warmUps.remove(warmUp.project)
+    }
+    
+    private fun warmUp(warmUp: WarmUp) {
+        val project = warmUp.project
+        val steps = arrayListOf<Pair<String, () -> Unit>>()
+        fun step(name: String, action: () -> Unit) = steps.add(name to action)
+        
+        if (isEnabled) {
+            step("Reading library metadata") { "".getPackages(project) }
+            step("Loading Kotlin libraries") { KotlinResolveSession.getInstance(project) }
+            KotlinPsiManager.getFilesByProject(project, false)
+                    .sortedByDescending { it.lastModified().time }
+                    .take(filesToAnalyze)
+                    .forEach { file ->
+                        step("Analyzing ${file.nameExt}") { analyze(project, ProjectUtils.getKtFile(file), warmUp.token) }
+                    }
+        }
+        
+        val startTime = System.nanoTime()
+        val progress = ProgressHandleFactory.createHandle("Warming up Kotlin support for ${project.projectDirectory.name}", warmUp)
+        progress.start(steps.size + 1)
+        try {
+            progress.progress("Loading Kotlin environment", 0)
+            // the environment is not evicted between the steps
+            KotlinEnvironmentManager.withEnvironment(project) {
+                steps.forEachIndexed { i, (name, step) ->
+                    if (warmUp.token.isCanceled || Thread.interrupted()) return@withEnvironment
+                    progress.progress(name, i + 1)
+                    step()
+                }
+            }
+        } finally {
+            progress.finish()
+        }
+        KotlinLogger.INSTANCE.logInfo("Warm-up of ${project.projectDirectory.name} took ${(System.nanoTime() - startTime) / 1000000} ms")
+    }
+    
+    // only fills the analysis cache, the result of the parser belongs to the file open in the editor
+    private fun analyze(project: Project, ktFile: KtFile, token: CancellationToken) {
+        KotlinAnalysisCache.getInstance(project).getOrAnalyze(ktFile) {
+            KotlinAnalysisScheduler.run(AnalysisPriority.BACKGROUND, "Warm-up analysis of ${ktFile.name}") {
+                KotlinAnalysisCancellation.runCancelable(token, "Warm-up analysis of ${ktFile.name}") {
+                    KotlinAnalyzer.analyzeFile(project, it)
+                }
+            }
+        }
+    }
+    
+}
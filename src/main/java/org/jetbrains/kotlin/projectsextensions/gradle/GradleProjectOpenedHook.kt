@@ -16,10 +16,9 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.projectsextensions.gradle
 
-import org.jetbrains.kotlin.model.KotlinEnvironment
-import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.doInitialScan
-import org.netbeans.api.progress.ProgressHandleFactory
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.removeProjectCache
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectWarmUp
 import org.netbeans.api.project.Project
 import org.netbeans.spi.project.ui.ProjectOpenedHook
 import kotlin.concurrent.thread
@@ -32,17 +31,12 @@ class GradleProjectOpenedHook(private val project: Project) : ProjectOpenedHook(
 
     override fun projectOpened() {
         thread {
-            KotlinProjectHelper.postTask(Runnable {
-                val progressBar = ProgressHandleFactory.createHandle("Loading Kotlin environment")
-                progressBar.start()
-                KotlinEnvironment.getEnvironment(project)
-                progressBar.finish()
-            })
+            KotlinProjectWarmUp.schedule(project)
             
             project.doInitialScan()
         }
     }
 
-    override fun projectClosed() {}
+    override fun projectClosed() = project.removeProjectCache()
     
 }
\ No newline at end of file
@@ -19,10 +19,8 @@
 package org.jetbrains.kotlin.projectsextensions.j2se;
 
 import org.jetbrains.kotlin.projectsextensions.j2se.buildextender.KotlinBuildExtender;
-import org.jetbrains.kotlin.model.KotlinEnvironment;
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper;
-import org.netbeans.api.progress.ProgressHandle;
-import org.netbeans.api.progress.ProgressHandleFactory;
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectWarmUp;
 import org.netbeans.api.project.Project;
 import org.netbeans.spi.project.ui.ProjectOpenedHook;
 
@@ -43,17 +41,7 @@ public class J2SEProjectOpenedHook extends ProjectOpenedHook {
         Thread thread = new Thread() {
             @Override
             public void run() {
-                Runnable run = new Runnable() {
-                    @Override
-                    public void run() {
-                        final ProgressHandle progressBar
-                                = ProgressHandleFactory.createHandle("Loading Kotlin environment");
-                        progressBar.start();
-                        KotlinEnvironment.Companion.getEnvironment(project);
-                        progressBar.finish();
-                    }
-                };
-                KotlinProjectHelper.INSTANCE.postTask(run);
+                KotlinProjectWarmUp.schedule(project);
                 KotlinBuildExtender extender = new KotlinBuildExtender(project);
                 extender.addKotlinTasksToScript(project);
 
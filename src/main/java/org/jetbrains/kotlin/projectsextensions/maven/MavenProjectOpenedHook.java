@@ -20,10 +20,8 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.lang.reflect.Method;
 import org.jetbrains.kotlin.log.KotlinLogger;
-import org.jetbrains.kotlin.model.KotlinEnvironment;
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper;
-import org.netbeans.api.progress.ProgressHandle;
-import org.netbeans.api.progress.ProgressHandleFactory;
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectWarmUp;
 import org.netbeans.api.project.Project;
 import org.netbeans.modules.maven.api.NbMavenProject;
 import org.netbeans.spi.project.ui.ProjectOpenedHook;
@@ -39,7 +37,6 @@ import org.openide.filesystems.FileRenameEvent;
  */
 public class MavenProjectOpenedHook extends ProjectOpenedHook{
 
-    private static volatile boolean progressHandleRun = false;
     private final Project project;
     
     public MavenProjectOpenedHook(Project project) {
@@ -51,21 +48,7 @@ public class MavenProjectOpenedHook extends ProjectOpenedHook{
         Thread thread = new Thread(){
                 @Override
                 public void run(){
-                        Runnable run = new Runnable(){
-                            @Override
-                            public void run(){
-                                progressHandleRun = true;
-                                final ProgressHandle progressBar = 
-                                    ProgressHandleFactory.createHandle("Loading Kotlin environment");
-                                progressBar.start();
-                                KotlinEnvironment.Companion.getEnvironment(project);
-                                progressBar.finish();
-                                progressHandleRun = false;
-                            }
-                        };
-                        if (!progressHandleRun) {
-                            KotlinProjectHelper.INSTANCE.postTask(run);
-                        }
+                        KotlinProjectWarmUp.schedule(project);
                         
                         PomXmlChangeListener pomListener = new PomXmlChangeListener(project);
                         final FileObject pomXml = project.getProjectDirectory().getFileObject("pom.xml");
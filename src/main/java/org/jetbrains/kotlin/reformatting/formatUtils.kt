@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.reformatting
 
 import javax.swing.text.Document
+import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.formatting.KotlinFormatterUtils
 import org.jetbrains.kotlin.navigation.netbeans.moveCaretToOffset
 import org.jetbrains.kotlin.utils.ProjectUtils
@@ -28,11 +29,10 @@ import javax.swing.SwingUtilities
 fun format(doc: Document, offset: Int, proj: Project? = null) {
     val file = ProjectUtils.getFileObjectForDocument(doc) ?: return
 
-    val parsedFile = ProjectUtils.getKtFile(doc.getText(0, doc.length), file) ?: return
-
     val project = proj ?: ProjectUtils.getKotlinProjectForFileObject(file)
-    val code = parsedFile.text
-    val formattedCode = KotlinFormatterUtils.formatCode(code, parsedFile.name, project, "\n")
+    val formattedCode = KotlinPsiManager.readEditorFile(doc.getText(0, doc.length), file) { parsedFile ->
+        KotlinFormatterUtils.formatCode(parsedFile.text, parsedFile.name, project, "\n")
+    } ?: return
     doc.remove(0, doc.length)
     doc.insertString(0, formattedCode, null)
     doc.moveCursorTo(offset)
@@ -19,5 +19,17 @@ package org.jetbrains.kotlin.resolve
 import org.jetbrains.kotlin.analyzer.AnalysisResult
 import org.jetbrains.kotlin.container.ComponentProvider
 
+/**
+ * How much of a file is resolved. Features request the lowest level they need:
+ * syntax-only features use the PSI, declaration headers are resolved lazily 
+ * without bodies and the full level also resolves all bodies and reports diagnostics.
+ */
+enum class AnalysisLevel {
+    SYNTAX, DECLARATIONS, FULL;
+    
+    fun covers(level: AnalysisLevel) = ordinal >= level.ordinal
+}
+
 data class AnalysisResultWithProvider(val analysisResult: AnalysisResult, 
-                                      val componentProvider: ComponentProvider)
\ No newline at end of file
+                                      val componentProvider: ComponentProvider,
+                                      val level: AnalysisLevel = AnalysisLevel.FULL)
\ No newline at end of file
@@ -21,13 +21,16 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.builtins.DefaultBuiltIns;
+import org.jetbrains.kotlin.bundledcompiler.BundledCompiler;
 import org.jetbrains.kotlin.builtins.KotlinBuiltIns;
 import org.jetbrains.kotlin.config.LanguageVersionSettingsImpl;
 import org.jetbrains.kotlin.context.ContextKt;
@@ -50,7 +53,6 @@ import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter;
 import org.jetbrains.kotlin.resolve.scopes.MemberScope;
 import org.jetbrains.kotlin.serialization.deserialization.FindClassInModuleKt;
 
-import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.text.StringUtil;
@@ -66,25 +68,63 @@ import com.intellij.util.io.URLUtil;
 
 import kotlin.collections.CollectionsKt;
 import org.jetbrains.kotlin.model.KotlinEnvironment;
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager;
+import org.jetbrains.kotlin.utils.KotlinMockProject;
 import org.jetbrains.kotlin.utils.ProjectUtils;
 
+/**
+ * Resolves descriptors of built-ins to the bundled runtime sources. The built-ins are the same 
+ * for all projects, so there is one resolver per runtime version for the whole IDE session. 
+ * The sources are parsed on the first lookup.
+ */
 public class BuiltInsReferenceResolver {
     private static final String RUNTIME_SRC_DIR = 
             "jar:file:"+ ProjectUtils.buildLibPath("kotlin-runtime-sources")+ "!/kotlin";
+    
+    private static final Map<String, BuiltInsReferenceResolver> RESOLVERS = new HashMap<>();
 
     private volatile ModuleDescriptor moduleDescriptor;
     private volatile PackageFragmentDescriptor builtinsPackageFragment = null;
+    private volatile boolean initialized = false;
+    private final org.netbeans.api.project.Project hostProject;
     private final Project myProject;
 
-    public BuiltInsReferenceResolver(Project project) {
+    private BuiltInsReferenceResolver(org.netbeans.api.project.Project hostProject, Project project) {
+        this.hostProject = hostProject;
         myProject = project;
-        initialize();
     }
     
     @NotNull
-    public static BuiltInsReferenceResolver getInstance(@NotNull org.netbeans.api.project.Project kotlinProject) {
-        Project ideaProject = KotlinEnvironment.Companion.getEnvironment(kotlinProject).getProject();
-        return ServiceManager.getService(ideaProject, BuiltInsReferenceResolver.class);
+    public static synchronized BuiltInsReferenceResolver getInstance(@NotNull org.netbeans.api.project.Project kotlinProject) {
+        BuiltInsReferenceResolver resolver = RESOLVERS.get(BundledCompiler.KOTLIN_VERSION);
+        // the environment keeping the built-ins is gone when its project was closed
+        if (resolver == null || !KotlinEnvironmentManager.isCreated(resolver.hostProject)) {
+            // the resolver outlives the project which asked for it first, so the built-ins 
+            // are kept in the environment of the mock project when it is available
+            org.netbeans.api.project.Project host = KotlinMockProject.INSTANCE.getMockProject();
+            if (host == null) {
+                host = kotlinProject;
+            }
+            KotlinEnvironmentManager.pin(host);
+            Project ideaProject = KotlinEnvironment.Companion.getEnvironment(host).getProject();
+            resolver = new BuiltInsReferenceResolver(host, ideaProject);
+            RESOLVERS.put(BundledCompiler.KOTLIN_VERSION, resolver);
+        }
+        
+        return resolver;
+    }
+    
+    private void ensureInitialized() {
+        if (initialized) {
+            return;
+        }
+        
+        synchronized (this) {
+            if (!initialized) {
+                initialize();
+                initialized = true;
+            }
+        }
     }
 
     private void initialize() {
@@ -240,6 +280,7 @@ public class BuiltInsReferenceResolver {
 
     @Nullable
     public DeclarationDescriptor findCurrentDescriptor(@NotNull DeclarationDescriptor originalDescriptor) {
+        ensureInitialized();
         //if there's no sources
         if (moduleDescriptor == null) {
             return null;
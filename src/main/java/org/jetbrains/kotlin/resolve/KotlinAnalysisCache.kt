@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve
+
+import com.intellij.openapi.util.Key
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.psi.KtFile
+import org.netbeans.api.project.Project
+
+/**
+ * Per-project LRU cache of analysis results keyed by file path and content stamp.
+ * Entries are evicted when there are more than [maxEntries] of them, when the total
+ * length of analyzed sources exceeds [maxWeight] or when the heap is almost full.
+ */
+class KotlinAnalysisCache(private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+                          private val maxWeight: Long = DEFAULT_MAX_WEIGHT) {
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 16
+        const val DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024
+        private const val LOW_MEMORY_RATIO = 0.1
+
+        private val CONTENT_STAMP = Key.create<Long>("KOTLIN_CONTENT_STAMP")
+        private val caches = hashMapOf<Project, KotlinAnalysisCache>()
+
+        @JvmStatic @Synchronized fun getInstance(project: Project) = caches.getOrPut(project) { KotlinAnalysisCache() }
+
+        @JvmStatic @Synchronized fun remove(project: Project) = caches.remove(project)?.clear()
+
+        val KtFile.contentStamp: Long
+            get() = getUserData(CONTENT_STAMP) ?: text.let { (it.hashCode().toLong() shl 32) or it.length.toLong() }
+                    .also { putUserData(CONTENT_STAMP, it) }
+        
+        // has to be called when the tree of the file is changed in place
+        fun KtFile.resetContentStamp() = putUserData(CONTENT_STAMP, null)
+    }
+
+    private class Entry(val stamp: Long, val weight: Int, val result: AnalysisResultWithProvider)
+
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+    private var weight = 0L
+
+    var hits = 0L
+        private set
+    var misses = 0L
+        private set
+    var evictions = 0L
+        private set
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    // total length of the analyzed sources
+    val retainedWeight: Long
+        @Synchronized get() = weight
+
+    @Synchronized fun get(ktFile: KtFile, level: AnalysisLevel = AnalysisLevel.FULL): AnalysisResultWithProvider? {
+        val entry = ktFile.path?.let { entries[it] }
+        if (entry != null && entry.stamp == ktFile.contentStamp && entry.result.level.covers(level)) {
+            hits++
+            return entry.result
+        }
+        
+        misses++
+        return null
+    }
+
+    // full result for an earlier content of the file, whatever the current content is
+    @Synchronized fun getPrevious(ktFile: KtFile, stamp: Long): AnalysisResultWithProvider? {
+        val entry = ktFile.path?.let { entries[it] } ?: return null
+        
+        return entry.result.takeIf { entry.stamp == stamp && it.level == AnalysisLevel.FULL }
+    }
+
+    @Synchronized fun put(ktFile: KtFile, result: AnalysisResultWithProvider, declarationsChanged: Boolean = true) =
+            put(ktFile, ktFile.contentStamp, result, declarationsChanged)
+
+    // [stamp] is the content stamp of the file the result was computed for
+    @Synchronized fun put(ktFile: KtFile, stamp: Long, result: AnalysisResultWithProvider, declarationsChanged: Boolean = true) {
+        val path = ktFile.path ?: return
+        val previous = entries[path]
+        if (previous != null && previous.stamp == stamp && !result.level.covers(previous.result.level)) return
+        
+        entries.remove(path)
+        if (previous != null) {
+            weight -= previous.weight
+            // declarations of the edited file may be used by other cached files
+            if (declarationsChanged && previous.stamp != stamp) clear()
+        }
+        
+        val entry = Entry(stamp, ktFile.textLength, result)
+        entries.put(path, entry)
+        weight += entry.weight
+        
+        evict()
+    }
+
+    fun getOrAnalyze(ktFile: KtFile, level: AnalysisLevel = AnalysisLevel.FULL,
+                     analyze: (KtFile) -> AnalysisResultWithProvider?): AnalysisResultWithProvider? {
+        get(ktFile, level)?.let { return it }
+        
+        // the file may be reparsed while it is analyzed, the result belongs to the content it had before
+        val stamp = ktFile.contentStamp
+        return analyze(ktFile)?.also { put(ktFile, stamp, it) }
+    }
+
+    @Synchronized fun invalidate(ktFile: KtFile) {
+        val path = ktFile.path ?: return
+        entries.remove(path)?.let { weight -= it.weight }
+    }
+
+    @Synchronized fun clear() {
+        entries.clear()
+        weight = 0
+    }
+
+    @Synchronized fun statistics(): String {
+        val requests = hits + misses
+        val hitRate = if (requests == 0L) 0 else hits * 100 / requests
+        
+        return "entries: ${entries.size}, weight: $weight, hits: $hits, misses: $misses ($hitRate% hit rate), evictions: $evictions"
+    }
+
+    private fun evict() {
+        val lowMemory = isMemoryLow()
+        val iterator = entries.values.iterator()
+        while (entries.size > 1 && iterator.hasNext() && 
+                (lowMemory || entries.size > maxEntries || weight > maxWeight)) {
+            weight -= iterator.next().weight
+            iterator.remove()
+            evictions++
+        }
+        
+        if (lowMemory) KotlinLogger.INSTANCE.logInfo("Analysis cache trimmed because of low memory: ${statistics()}")
+    }
+
+    private fun isMemoryLow(): Boolean {
+        val runtime = Runtime.getRuntime()
+        val used = runtime.totalMemory() - runtime.freeMemory()
+        
+        return runtime.maxMemory() - used < runtime.maxMemory() * LOW_MEMORY_RATIO
+    }
+
+    private val KtFile.path: String?
+        get() = virtualFile?.path
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve
+
+import com.intellij.openapi.progress.ProcessCanceledException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.progress.CompilationCanceledException
+import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
+import org.netbeans.api.project.Project
+
+class CancellationToken {
+    
+    @Volatile var isCanceled = false
+        private set
+    
+    @Volatile var canceledAt = 0L
+        private set
+    
+    fun cancel() {
+        if (isCanceled) return
+        canceledAt = System.nanoTime()
+        isCanceled = true
+    }
+    
+}
+
+/**
+ * Makes the compiler's progress checks observe the [CancellationToken]s bound to the current thread,
+ * so analysis of a stale snapshot stops at the next check instead of running to completion.
+ * Also keeps track of how much work was thrown away.
+ * 
+ * Lazy values of a storage manager remember the exception their computation failed with, so a
+ * [KotlinResolveSession] used by a canceled run is invalidated instead of being reused.
+ */
+object KotlinAnalysisCancellation : CompilationCanceledStatus {
+    
+    private val tokens = ThreadLocal<List<CancellationToken>>()
+    // projects whose resolve sessions were used by the runs of the current thread
+    private val sessionProjects = ThreadLocal<MutableSet<Project>>()
+    
+    val completed = AtomicLong()
+    val canceled = AtomicLong()
+    // time spent in runs which were canceled afterwards
+    val canceledWorkMillis = AtomicLong()
+    // time between CancellationToken.cancel and the moment the run noticed it
+    val cancelLatencyMillis = AtomicLong()
+    
+    init {
+        ProgressIndicatorAndCompilationCanceledStatus.setCompilationCanceledStatus(this)
+    }
+    
+    override fun checkCanceled() {
+        val boundTokens = tokens.get() ?: return
+        if (boundTokens.any { it.isCanceled }) throw CompilationCanceledException()
+    }
+    
+    fun sessionUsed(project: Project) {
+        sessionProjects.get()?.add(project)
+    }
+    
+    /**
+     * Runs [action] with [token] bound to the current thread. Returns null if the token was canceled 
+     * before or during the run. Cancellation of a token bound by an outer run is propagated to that run.
+     */
+    fun <T> runCancelable(token: CancellationToken?, name: String, action: () -> T): T? {
+        if (token == null) return action()
+        
+        val previous = tokens.get()
+        tokens.set(if (previous == null) listOf(token) else previous + token)
+        val previousProjects = sessionProjects.get()
+        val usedProjects = hashSetOf<Project>()
+        sessionProjects.set(usedProjects)
+        val start = System.nanoTime()
+        
+        try {
+            checkCanceled()
+            return action().also { completed.incrementAndGet() }
+        } catch (e: ProcessCanceledException) {
+            if (!token.isCanceled) throw e
+            
+            usedProjects.forEach { KotlinResolveSession.invalidate(it) }
+            val now = System.nanoTime()
+            canceled.incrementAndGet()
+            canceledWorkMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(now - start))
+            cancelLatencyMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(now - maxOf(start, token.canceledAt)))
+            if (KotlinLogger.INSTANCE.isFineLoggable) KotlinLogger.INSTANCE.logFine("$name canceled: ${statistics()}")
+            
+            return null
+        } finally {
+            if (previous == null) tokens.remove() else tokens.set(previous)
+            if (previousProjects == null) sessionProjects.remove() else {
+                previousProjects.addAll(usedProjects)
+                sessionProjects.set(previousProjects)
+            }
+        }
+    }
+    
+    fun statistics(): String {
+        val canceledRuns = canceled.get()
+        val averageLatency = if (canceledRuns == 0L) 0 else cancelLatencyMillis.get() / canceledRuns
+        
+        return "completed: ${completed.get()}, canceled: $canceledRuns, " + 
+                "canceled work: ${canceledWorkMillis.get()} ms, average cancel latency: $averageLatency ms"
+    }
+    
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve
+
+import java.beans.PropertyChangeListener
+import java.awt.EventQueue
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import javax.swing.text.Document
+import javax.swing.text.JTextComponent
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.netbeans.api.editor.EditorRegistry
+import org.openide.filesystems.FileObject
+import org.openide.loaders.DataObject
+
+enum class AnalysisPriority {
+    FOCUSED_EDITOR, VISIBLE_EDITOR, OPEN_FILE, BACKGROUND
+}
+
+/**
+ * Orders analysis runs by the priority of the file they are for. A run waits while runs of a higher
+ * priority are running or waiting, and starting it cancels running lower-priority runs. Those stop 
+ * at the next cancellation check and start again when the more important work is done. A run for 
+ * the focused editor only waits for the runs it canceled to stop: they share the resolve session,
+ * whose lazy values keep the cancellation until the canceled run has invalidated it.
+ */
+object KotlinAnalysisScheduler {
+    
+    private class Job(val priority: AnalysisPriority) {
+        @Volatile var token = CancellationToken()
+    }
+    
+    private val lock = Object()
+    private val waiting = arrayListOf<Job>()
+    private val running = arrayListOf<Job>()
+    private val currentJob = ThreadLocal<Job>()
+    
+    private val started = AnalysisPriority.values().map { AtomicLong() }
+    private val waitNanos = AnalysisPriority.values().map { AtomicLong() }
+    val preemptions = AtomicLong()
+    
+    @Volatile private var focusedFile: FileObject? = null
+    @Volatile private var visibleFiles = emptySet<FileObject>()
+    @Volatile private var openFiles = emptySet<FileObject>()
+    
+    private val editorListener = PropertyChangeListener { updateEditors() }
+    
+    init {
+        EditorRegistry.addPropertyChangeListener(editorListener)
+        EventQueue.invokeLater { updateEditors() }
+    }
+    
+    fun priorityOf(file: FileObject?) = when {
+        file == null -> AnalysisPriority.BACKGROUND
+        file == focusedFile -> AnalysisPriority.FOCUSED_EDITOR
+        file in visibleFiles -> AnalysisPriority.VISIBLE_EDITOR
+        file in openFiles -> AnalysisPriority.OPEN_FILE
+        else -> AnalysisPriority.BACKGROUND
+    }
+    
+    val queueDepth: Int
+        get() = synchronized(lock) { waiting.size }
+    
+    fun queueDepth(priority: AnalysisPriority) = synchronized(lock) { waiting.count { it.priority == priority } }
+    
+    fun averageWaitMillis(priority: AnalysisPriority): Long {
+        val runs = started[priority.ordinal].get()
+        
+        return if (runs == 0L) 0 else TimeUnit.NANOSECONDS.toMillis(waitNanos[priority.ordinal].get() / runs)
+    }
+    
+    /**
+     * Runs [action] on the calling thread once no more important analysis is pending. 
+     * Returns null if the thread was interrupted while waiting. Runs nested in another 
+     * run of the same thread are not scheduled again.
+     */
+    fun <T> run(priority: AnalysisPriority, name: String, action: () -> T): T? {
+        if (currentJob.get() != null) return action()
+        
+        val job = Job(priority)
+        while (true) {
+            if (!awaitTurn(job)) return null
+            
+            currentJob.set(job)
+            var completed = false
+            try {
+                val result = KotlinAnalysisCancellation.runCancelable(job.token, name) { 
+                    action().also { completed = true } 
+                }
+                if (completed) return result
+            } finally {
+                currentJob.remove()
+                synchronized(lock) {
+                    running.remove(job)
+                    lock.notifyAll()
+                }
+            }
+            if (KotlinLogger.INSTANCE.isFineLoggable) KotlinLogger.INSTANCE.logFine("$name preempted, ${statistics()}")
+        }
+    }
+    
+    fun statistics() = AnalysisPriority.values().joinToString(prefix = "preemptions: ${preemptions.get()}, ") { 
+        "$it: ${started[it.ordinal].get()} runs, queued ${queueDepth(it)}, average wait ${averageWaitMillis(it)} ms" 
+    }
+    
+    private fun mustWait(job: Job) = running.any { it.priority < job.priority } || waiting.any { it.priority < job.priority }
+    
+    // a fork-join worker waiting for its turn is replaced by a spare thread of its pool
+    private class TurnBlocker(private val job: Job) : ForkJoinPool.ManagedBlocker {
+        
+        override fun isReleasable() = synchronized(lock) { !mustWait(job) }
+        
+        override fun block(): Boolean {
+            synchronized(lock) { 
+                while (mustWait(job)) lock.wait() 
+            }
+            return true
+        }
+    }
+    
+    // a run leaves the running runs after its canceled sessions were invalidated by KotlinAnalysisCancellation
+    private class PreemptionBlocker(private val preempted: List<Job>) : ForkJoinPool.ManagedBlocker {
+        
+        override fun isReleasable() = synchronized(lock) { preempted.none { it in running } }
+        
+        override fun block(): Boolean {
+            synchronized(lock) { 
+                while (preempted.any { it in running }) lock.wait() 
+            }
+            return true
+        }
+    }
+    
+    private fun awaitTurn(job: Job): Boolean {
+        val start = System.nanoTime()
+        val blocker = TurnBlocker(job)
+        synchronized(lock) { waiting.add(job) }
+        
+        while (true) {
+            try {
+                ForkJoinPool.managedBlock(blocker)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                synchronized(lock) {
+                    waiting.remove(job)
+                    lock.notifyAll()
+                }
+                return false
+            }
+            
+            val preempted = synchronized(lock) {
+                // a more important run may have come between the wait and this check
+                if (mustWait(job)) return@synchronized null
+                
+                waiting.remove(job)
+                // lower-priority runs may be waiting for this one to leave the queue
+                lock.notifyAll()
+                
+                // the job is running from now on, so the preempted runs wait when they come back
+                job.token = CancellationToken()
+                running.add(job)
+                running.filter { it.priority > job.priority }.onEach { 
+                    it.token.cancel()
+                    preemptions.incrementAndGet()
+                }
+            } ?: continue
+            
+            try {
+                ForkJoinPool.managedBlock(PreemptionBlocker(preempted))
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                synchronized(lock) {
+                    running.remove(job)
+                    lock.notifyAll()
+                }
+                return false
+            }
+            
+            started[job.priority.ordinal].incrementAndGet()
+            waitNanos[job.priority.ordinal].addAndGet(System.nanoTime() - start)
+            return true
+        }
+    }
+    
+    private fun updateEditors() {
+        val components = EditorRegistry.componentList()
+        openFiles = components.mapNotNullTo(hashSetOf()) { it.fileObject }
+        visibleFiles = components.filter { it.isShowing }.mapNotNullTo(hashSetOf()) { it.fileObject }
+        focusedFile = EditorRegistry.lastFocusedComponent()?.fileObject
+    }
+    
+    private val JTextComponent.fileObject: FileObject?
+        get() = (document?.getProperty(Document.StreamDescriptionProperty) as? DataObject)?.primaryFile
+    
+}
@@ -18,17 +18,26 @@ package org.jetbrains.kotlin.resolve
 
 import org.jetbrains.kotlin.log.KotlinLogger
 import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.lang.java.NetBeansJavaClassCache
 import org.netbeans.api.project.Project
 
 object KotlinAnalyzer {
     
-    fun analyzeFile(project: Project, file: KtFile): AnalysisResultWithProvider {
-        KotlinLogger.INSTANCE.logInfo("Analyzing ${file.virtualFile.path}")
-        val kotlinEnvironment = KotlinEnvironment.getEnvironment(project)
-
-        return NetBeansAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
-                project, kotlinEnvironment.project, listOf(file))
+    @JvmOverloads
+    fun analyzeFile(project: Project, file: KtFile, 
+                    level: AnalysisLevel = AnalysisLevel.FULL): AnalysisResultWithProvider {
+        KotlinLogger.INSTANCE.logInfo("Analyzing ${file.virtualFile.path} ($level)")
+        return KotlinEnvironmentManager.withEnvironment(project) { kotlinEnvironment ->
+            NetBeansAnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                    project, kotlinEnvironment.project, listOf(file), level).also {
+                if (KotlinLogger.INSTANCE.isFineLoggable) {
+                    KotlinLogger.INSTANCE.logFine("Class file lookups: ${kotlinEnvironment.classFileLookups.statistics()}")
+                    KotlinLogger.INSTANCE.logFine("Java classes: ${NetBeansJavaClassCache.getInstance(project).statistics()}")
+                }
+            }
+        }
     }
     
     private fun analyzeFiles(kotlinProject: Project,
@@ -39,7 +48,6 @@ object KotlinAnalyzer {
                      filesToAnalyze: Collection<KtFile>): AnalysisResultWithProvider {
         if (filesToAnalyze.size == 1) return analyzeFile(kotlinProject, filesToAnalyze.iterator().next())
         
-        val kotlinEnvironment = KotlinEnvironment.getEnvironment(kotlinProject)
-        return analyzeFiles(kotlinProject, kotlinEnvironment, filesToAnalyze)
+        return KotlinEnvironmentManager.withEnvironment(kotlinProject) { analyzeFiles(kotlinProject, it, filesToAnalyze) }
     }
 }
\ No newline at end of file
@@ -67,7 +67,8 @@ class KotlinSimpleResolutionFacade(
         val files = elements.map { it.containingKtFile }.toSet()
         if (files.isEmpty()) throw IllegalStateException("Elements should not be empty")
 
-        val componentProvider = KotlinAnalyzer.analyzeFiles(nbProject, files).componentProvider
+        val componentProvider = (if (files.size == 1) KotlinParser.getAnalysisResult(files.first(), nbProject) else null)
+                ?.componentProvider ?: KotlinAnalyzer.analyzeFiles(nbProject, files).componentProvider
 
         return componentProvider.getService(serviceClass)
     }
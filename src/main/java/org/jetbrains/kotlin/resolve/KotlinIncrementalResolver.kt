@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve
+
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.util.TextRange
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.util.PsiTreeUtil
+import org.jetbrains.kotlin.analyzer.AnalysisResult
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.diagnostics.Diagnostic
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.psi.KtAnonymousInitializer
+import org.jetbrains.kotlin.psi.KtBlockExpression
+import org.jetbrains.kotlin.psi.KtClassBody
+import org.jetbrains.kotlin.psi.KtClassOrObject
+import org.jetbrains.kotlin.psi.KtDeclaration
+import org.jetbrains.kotlin.psi.KtExpression
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.KtObjectDeclaration
+import org.jetbrains.kotlin.psi.KtProperty
+import org.jetbrains.kotlin.psi.KtPropertyAccessor
+import org.jetbrains.kotlin.psi.KtSecondaryConstructor
+import org.jetbrains.kotlin.psi.KtTreeVisitorVoid
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache.Companion.contentStamp
+import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.util.KotlinFrontEndException
+import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice
+import org.jetbrains.kotlin.util.slicedMap.WritableSlice
+
+/**
+ * Re-resolves only the declarations whose bodies were edited since the file was fully analyzed.
+ * [org.jetbrains.kotlin.builder.KotlinIncrementalReparser] reports every in-place change here:
+ * when the signature of the enclosing declaration is the same before and after the change,
+ * descriptors of the file are still valid and the body is resolved again against them, into
+ * a new trace on top of the previous one. The previous result is never changed, the new one 
+ * is published when it is complete. Any other change needs a full analysis.
+ */
+object KotlinIncrementalResolver {
+    
+    private class BodyChanges(val baseStamp: Long) {
+        val declarations = linkedSetOf<KtDeclaration>()
+        var declarationsChanged = false
+    }
+    
+    private val BODY_CHANGES = Key.create<BodyChanges>("KOTLIN_BODY_CHANGES")
+    // lookups in a trace walk through all the traces below it
+    private const val MAX_TRACE_DEPTH = 16
+    private val lock = Any()
+    
+    /**
+     * Top-level or member declaration whose body contains [block], if changes 
+     * of the block may be limited to that body.
+     */
+    fun bodyOwner(block: PsiElement): KtDeclaration? {
+        if (block !is KtBlockExpression) return null
+        
+        var element: PsiElement? = block.parent
+        while (element != null && element !is KtFile) {
+            if (element is KtDeclaration && element.isNonLocal()) {
+                return element.takeIf { 
+                    it is KtNamedFunction || it is KtProperty || it is KtSecondaryConstructor || it is KtAnonymousInitializer 
+                }
+            }
+            element = element.parent
+        }
+        
+        return null
+    }
+    
+    /**
+     * Text of the declaration without parts which can not change its descriptor: block bodies
+     * and initializers of properties with an explicit type.
+     */
+    fun signature(declaration: KtDeclaration): String {
+        val bodies = arrayListOf<PsiElement>()
+        declaration.accept(object : KtTreeVisitorVoid() {
+            override fun visitDeclaration(dcl: KtDeclaration) {
+                val body = when (dcl) {
+                    is KtNamedFunction -> dcl.bodyExpression as? KtBlockExpression
+                    is KtPropertyAccessor -> dcl.bodyExpression as? KtBlockExpression
+                    is KtSecondaryConstructor -> dcl.bodyExpression
+                    is KtAnonymousInitializer -> dcl.body
+                    is KtProperty -> if (dcl.typeReference != null) dcl.initializer else null
+                    else -> null
+                }
+                if (body != null) bodies.add(body)
+                super.visitDeclaration(dcl)
+            }
+        })
+        
+        // bodies of local declarations lie inside of the bodies found before them
+        val ranges = arrayListOf<TextRange>()
+        bodies.map { it.textRange }.sortedBy { it.startOffset }.forEach { 
+            if (ranges.isEmpty() || !ranges.last().contains(it)) ranges.add(it)
+        }
+        
+        val offset = declaration.textRange.startOffset
+        val text = StringBuilder(declaration.text)
+        ranges.asReversed().forEach { text.delete(it.startOffset - offset, it.endOffset - offset) }
+        
+        return text.toString()
+    }
+    
+    /**
+     * Has to be called after the tree of [ktFile] has been changed in place. [baseStamp] is the
+     * content stamp of the file before the change and [changedBody] is the declaration whose body 
+     * was changed, or null if the change was not limited to a body.
+     */
+    fun bodyChanged(ktFile: KtFile, baseStamp: Long, changedBody: KtDeclaration?) {
+        synchronized(lock) {
+            val changes = ktFile.getUserData(BODY_CHANGES) ?: BodyChanges(baseStamp).also { ktFile.putUserData(BODY_CHANGES, it) }
+            if (changedBody == null) changes.declarationsChanged = true else changes.declarations.add(changedBody)
+        }
+    }
+    
+    /**
+     * The file has been analyzed fully with the content of [stamp]. Changes are counted from there
+     * unless the file has been changed again in the meantime.
+     */
+    fun analyzed(ktFile: KtFile, stamp: Long) {
+        synchronized(lock) {
+            if (ktFile.contentStamp == stamp) ktFile.putUserData(BODY_CHANGES, null)
+        }
+    }
+    
+    /**
+     * Result of the previous full analysis of [ktFile] updated for changed bodies, 
+     * or null if the file has to be analyzed fully.
+     */
+    fun reanalyze(ktFile: KtFile, cache: KotlinAnalysisCache): AnalysisResultWithProvider? {
+        val stamp = ktFile.contentStamp
+        val (changes, declarations) = synchronized(lock) { 
+            val changes = ktFile.getUserData(BODY_CHANGES) ?: return null
+            if (changes.declarationsChanged) return null
+            changes to changes.declarations.toList()
+        }
+        
+        val base = cache.getPrevious(ktFile, changes.baseStamp) ?: return null
+        val bindingContext = base.analysisResult.bindingContext
+        // the previous result has to be for this very tree
+        if (bindingContext[BindingContext.FILE_TO_PACKAGE_FRAGMENT, ktFile] == null) return null
+        
+        val depth = (bindingContext as? IncrementalBindingContext)?.depth ?: 0
+        if (depth >= MAX_TRACE_DEPTH) return null
+        val sharedTrace = base.componentProvider.get<BindingTrace>() as? RedirectingBindingTrace ?: return null
+        
+        val startTime = System.nanoTime()
+        val trace = DelegatingBindingTrace(bindingContext, "Incremental analysis of ${ktFile.name}")
+        try {
+            KotlinPsiManager.readFiles(listOf(ktFile)) {
+                sharedTrace.redirectTo(trace) {
+                    base.componentProvider.get<LazyTopDownAnalyzer>()
+                            .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, declarations.filter { it.isAttached() })
+                }
+            }
+        } catch (e: Exception) {
+            // lazy values of the previous analysis may be resolved partially
+            synchronized(lock) { changes.declarationsChanged = true }
+            
+            val cause = if (e is KotlinFrontEndException) e.cause else e
+            if (cause is ProcessCanceledException) throw cause
+            KotlinLogger.INSTANCE.logException("Incremental analysis of ${ktFile.name} failed", e)
+            return null
+        }
+        
+        // diagnostics of the replaced bodies are reported by the new trace
+        val diagnostics = bindingContext.diagnostics.all().filter { diagnostic ->
+            declarations.none { PsiTreeUtil.isAncestor(it, diagnostic.psiElement, false) }
+        } + trace.bindingContext.diagnostics.all()
+        val result = AnalysisResultWithProvider(
+                AnalysisResult.success(IncrementalBindingContext(trace.bindingContext, diagnostics, depth + 1), 
+                        base.analysisResult.moduleDescriptor),
+                base.componentProvider,
+                AnalysisLevel.FULL)
+        
+        analyzed(ktFile, stamp)
+        cache.put(ktFile, stamp, result, declarationsChanged = false)
+        if (KotlinLogger.INSTANCE.isFineLoggable) {
+            KotlinLogger.INSTANCE.logFine("Bodies of ${declarations.size} declarations in ${ktFile.name} " +
+                    "resolved in ${(System.nanoTime() - startTime) / 1000000} ms")
+        }
+        
+        return result
+    }
+    
+    private fun KtDeclaration.isNonLocal(): Boolean {
+        val parent = parent
+        if (parent is KtFile) return true
+        if (parent !is KtClassBody) return false
+        
+        val classOrObject = parent.parent as? KtClassOrObject ?: return false
+        if (classOrObject is KtObjectDeclaration && classOrObject.isObjectLiteral()) return false
+        
+        return classOrObject.isNonLocal()
+    }
+    
+    private fun PsiElement.isAttached(): Boolean {
+        var element: PsiElement = this
+        while (element !is PsiFile) element = element.parent ?: return false
+        
+        return true
+    }
+    
+    /**
+     * Trace of the previous analysis with bodies resolved again and their diagnostics. 
+     * Diagnostics reported again for unchanged declarations are shown once.
+     */
+    private class IncrementalBindingContext(val delegate: BindingContext,
+                                            private val diagnosticList: List<Diagnostic>,
+                                            val depth: Int) : BindingContext by delegate {
+        
+        override fun getDiagnostics(): Diagnostics {
+            val diagnostics = delegate.diagnostics
+            
+            return object : Diagnostics by diagnostics {
+                override fun all() = diagnosticList.filterActual()
+                
+                override fun forElement(psiElement: PsiElement) = diagnosticList.filter { it.psiElement == psiElement }.filterActual()
+                
+                override fun isEmpty() = all().isEmpty()
+                
+                override fun iterator() = all().iterator()
+            }
+        }
+        
+        private fun Collection<Diagnostic>.filterActual() = filter { it.psiElement.isAttached() }
+                .distinctBy { Triple(it.factory, it.psiElement, it.textRanges) }
+    }
+    
+}
+
+/**
+ * Trace of a full analysis shared by the components of its container. Records made on a thread
+ * inside of [redirectTo] go to another trace, so results published with the shared trace never change.
+ */
+class RedirectingBindingTrace(val base: BindingTrace) : BindingTrace by base {
+    
+    private val redirect = ThreadLocal<BindingTrace>()
+    
+    private val current: BindingTrace
+        get() = redirect.get() ?: base
+    
+    fun <T> redirectTo(trace: BindingTrace, action: () -> T): T {
+        redirect.set(trace)
+        try {
+            return action()
+        } finally {
+            redirect.remove()
+        }
+    }
+    
+    override fun getBindingContext() = current.bindingContext
+    
+    override fun <K, V> record(slice: WritableSlice<K, V>, key: K, value: V) = current.record(slice, key, value)
+    
+    override fun <K> record(slice: WritableSlice<K, Boolean>, key: K) = current.record(slice, key)
+    
+    override fun <K, V> get(slice: ReadOnlySlice<K, V>, key: K): V? = current.get(slice, key)
+    
+    override fun <K, V> getKeys(slice: WritableSlice<K, V>): Collection<K> = current.getKeys(slice)
+    
+    override fun getType(expression: KtExpression) = current.getType(expression)
+    
+    override fun recordType(expression: KtExpression, type: KotlinType?) = current.recordType(expression, type)
+    
+    override fun report(diagnostic: Diagnostic) = current.report(diagnostic)
+    
+}
@@ -12,10 +12,13 @@ import org.jetbrains.kotlin.utils.SmartList
 class KotlinPackagePartProvider(val project: Project) : PackagePartProvider {
     private data class ModuleMappingInfo(val root: VirtualFile, val mapping: ModuleMapping)
     
+    private val environment = KotlinEnvironment.getEnvironment(project)
+    
     private val notLoadedRoots by lazy(LazyThreadSafetyMode.NONE) {
-        KotlinEnvironment.getEnvironment(project).roots
+        environment.roots
                 .map { it.file }
-                .filter { it.findChild("META-INF") != null }
+                .filter { root -> environment.getJarSegment(root)?.let { it.metadata.moduleMappings.isNotEmpty() } 
+                        ?: (root.findChild("META-INF") != null) }
                 .toMutableList()
     }
     
@@ -44,6 +47,17 @@ class KotlinPackagePartProvider(val project: Project) : PackagePartProvider {
             .flatMap(PackageParts::metadataParts)
             .distinct()
     
+    /**
+     * Package parts of every root which has a module mapping, paired with the root they belong to.
+     */
+    @Synchronized fun getAllPackageParts(): List<Pair<VirtualFile, PackageParts>> {
+        loadRoots(notLoadedRoots.toList(), "")
+        
+        return loadedModules.flatMap { (root, mapping) -> 
+            mapping.packageFqName2Parts.values.map { root to it } 
+        }
+    }
+    
     @Synchronized private fun getPackageParts(packageFqName: String): Map<VirtualFile, PackageParts> {
         processNotLoadedRelevantRoots(packageFqName)
         
@@ -61,15 +75,29 @@ class KotlinPackagePartProvider(val project: Project) : PackagePartProvider {
         
         val pathParts = packageFqName.split('.')
         val relevantRoots = notLoadedRoots.filter { 
+            environment.getJarSegment(it)?.let { segment -> return@filter segment.metadata.hasPackage(packageFqName) }
             pathParts.fold(it) { parent, part ->
                 if (part.isEmpty()) parent
                 else parent.findChild(part) ?: return@filter false
             }
             true
         }
-        notLoadedRoots.removeAll(relevantRoots)
+        loadRoots(relevantRoots, packageFqName)
+    }
+    
+    private fun loadRoots(roots: List<VirtualFile>, packageFqName: String) {
+        notLoadedRoots.removeAll(roots)
         
-        for (root in relevantRoots) {
+        for (root in roots) {
+            // module mappings of library jars are kept in the jar metadata cache
+            val segment = environment.getJarSegment(root)
+            if (segment != null) {
+                segment.metadata.moduleMappings.forEach { (name, bytes) ->
+                    loadedModules.add(ModuleMappingInfo(root, ModuleMapping.create(bytes, "${segment.path}!/META-INF/$name")))
+                }
+                continue
+            }
+            
             val metaInf = root.findChild("META-INF") ?: continue
             val moduleFiles = metaInf.children.filter { it.name.endsWith(ModuleMapping.MAPPING_FILE_EXT) }
             for (moduleFile in moduleFiles) {
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve
+
+import com.intellij.psi.search.GlobalSearchScope
+import org.jetbrains.kotlin.builtins.JvmBuiltInsPackageFragmentProvider
+import org.jetbrains.kotlin.cli.jvm.compiler.CliLightClassGenerationSupport
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.config.LanguageVersionSettingsImpl
+import org.jetbrains.kotlin.context.ContextForNewModule
+import org.jetbrains.kotlin.context.ProjectContext
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.descriptors.impl.CompositePackageFragmentProvider
+import org.jetbrains.kotlin.descriptors.impl.ModuleDescriptorImpl
+import org.jetbrains.kotlin.incremental.components.LookupTracker
+import org.jetbrains.kotlin.load.java.lazy.ModuleClassResolver
+import org.jetbrains.kotlin.load.java.structure.JavaClass
+import org.jetbrains.kotlin.log.KotlinLogger
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.platform.JvmBuiltIns
+import org.jetbrains.kotlin.project.KotlinSourceChanges
+import org.jetbrains.kotlin.project.isInFolder
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.jvm.JavaDescriptorResolver
+import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM
+import org.jetbrains.kotlin.resolve.lazy.declarations.DeclarationProviderFactory
+import org.jetbrains.kotlin.utils.ProjectUtils
+import org.netbeans.api.project.Project
+import org.openide.filesystems.FileAttributeEvent
+import org.openide.filesystems.FileChangeListener
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+
+/**
+ * Long-lived part of the resolve for a project: built-ins and the module of binary dependencies
+ * with its deserialized descriptors. Only the source module is created again for each analysis.
+ * The session is dropped when the classpath or a Java source of the project changes.
+ */
+class KotlinResolveSession private constructor(val kotlinProject: Project) {
+    
+    companion object {
+        private val sessions = hashMapOf<Project, KotlinResolveSession>()
+        
+        @JvmStatic @Synchronized fun getInstance(project: Project): KotlinResolveSession {
+            KotlinAnalysisCancellation.sessionUsed(project)
+            
+            return sessions.getOrPut(project) { KotlinResolveSession(project).apply { startListening() } }
+        }
+        
+        @JvmStatic @Synchronized fun invalidate(project: Project) {
+            sessions.remove(project)?.stopListening()
+        }
+    }
+    
+    private class DependenciesClassResolver : ModuleClassResolver {
+        lateinit var resolver: JavaDescriptorResolver
+        
+        override fun resolveClass(javaClass: JavaClass) = resolver.resolveClass(javaClass)
+    }
+    
+    private val environment = KotlinEnvironment.getEnvironment(kotlinProject)
+    val moduleName: String = environment.configuration.getNotNull<String>(CommonConfigurationKeys.MODULE_NAME)
+    val languageVersionSettings = LanguageVersionSettingsImpl.DEFAULT
+    val packagePartProvider = KotlinPackagePartProvider(kotlinProject)
+    
+    private val projectContext = ProjectContext(environment.project)
+    val builtIns = JvmBuiltIns(projectContext.storageManager, false)
+    val optionalBuiltInsModule: ModuleDescriptor
+    val dependencyModule: ModuleDescriptorImpl
+    val compiledCodeResolver: JavaDescriptorResolver
+    
+    @Volatile private var sourceFiles: List<KtFile>? = null
+    // Java source roots of the project and its dependency projects, the watched folders may be wider
+    private var sourceRoots = emptyList<FileObject>()
+    private val watchedChanges = arrayListOf<KotlinSourceChanges>()
+    
+    init {
+        val startTime = System.nanoTime()
+        val dependenciesContext = ContextForNewModule(projectContext, 
+                Name.special("<dependencies of $moduleName>"), builtIns, null)
+        builtIns.builtInsModule = dependenciesContext.module
+        optionalBuiltInsModule = JvmBuiltIns(projectContext.storageManager).apply { 
+            initialize(dependenciesContext.module, true) 
+        }.builtInsModule
+        
+        val dependenciesClassResolver = DependenciesClassResolver()
+        val sourceScope = TopDownAnalyzerFacadeForJVM.newModuleSearchScope(environment.project, emptyList())
+        val dependenciesContainer = createContainerForTopDownAnalyzerForJvm(
+                dependenciesContext, 
+                CliLightClassGenerationSupport.CliBindingTrace(), 
+                DeclarationProviderFactory.EMPTY, 
+                GlobalSearchScope.notScope(sourceScope), 
+                LookupTracker.DO_NOTHING,
+                packagePartProvider, 
+                languageVersionSettings,
+                dependenciesClassResolver,
+                kotlinProject)
+        
+        compiledCodeResolver = dependenciesContainer.get()
+        dependenciesClassResolver.resolver = compiledCodeResolver
+        
+        dependenciesContext.setDependencies(listOf(dependenciesContext.module, optionalBuiltInsModule))
+        dependenciesContext.initializeModuleContents(CompositePackageFragmentProvider(listOf(
+                compiledCodeResolver.packageFragmentProvider,
+                dependenciesContainer.get<JvmBuiltInsPackageFragmentProvider>()
+        )))
+        
+        dependencyModule = dependenciesContext.module
+        builtIns.initialize(dependencyModule, true)
+        KotlinLogger.INSTANCE.logInfo("Resolve session for $moduleName created: ${System.nanoTime() - startTime} ns")
+    }
+    
+    /**
+     * Kotlin sources of the project and its dependency projects. The list is collected again
+     * only after a Kotlin file has been changed on disk.
+     */
+    fun getSourceFiles(): List<KtFile> = sourceFiles ?: 
+            ProjectUtils.getSourceFilesWithDependencies(kotlinProject).also { sourceFiles = it }
+    
+    private val sourcesListener = object : FileChangeListener {
+        override fun fileFolderCreated(fe: FileEvent) {
+            sourceFiles = null
+            // an empty folder changes nothing, a copied one may bring Java sources
+            if (isInSourceRoots(fe.file) && fe.file.containsJavaSources()) invalidate(kotlinProject)
+        }
+        override fun fileDataCreated(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileChanged(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileDeleted(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileRenamed(fe: FileRenameEvent) {
+            sourceFiles = null
+            sourceChanged(fe.file)
+        }
+        override fun fileAttributeChanged(fe: FileAttributeEvent) {}
+    }
+    
+    // Java sources are resolved by the dependency module, Kotlin sources only by the source module
+    private fun sourceChanged(file: FileObject) {
+        when {
+            file.isFolder -> {
+                sourceFiles = null
+                if (isInSourceRoots(file)) invalidate(kotlinProject)
+            }
+            file.ext == "java" -> if (isInSourceRoots(file)) invalidate(kotlinProject)
+            file.ext == "kt" -> sourceFiles = null
+        }
+    }
+    
+    private fun isInSourceRoots(file: FileObject) = sourceRoots.any { file.isInFolder(it) }
+    
+    private fun FileObject.containsJavaSources(): Boolean = children.any { 
+        if (it.isFolder) it.containsJavaSources() else it.ext == "java" 
+    }
+    
+    private fun startListening() {
+        val projects = if (kotlinProject.isMavenProject()) {
+            listOf(kotlinProject) + MavenHelper.getDependencyProjects(kotlinProject)
+        } else listOf(kotlinProject)
+        
+        sourceRoots = projects.flatMap { ProjectUtils.getSourceRoots(it) }
+        projects.map { KotlinSourceChanges.getInstance(it) }.forEach { 
+            it.addListener(sourcesListener)
+            watchedChanges.add(it)
+        }
+    }
+    
+    private fun stopListening() {
+        watchedChanges.forEach { it.removeListener(sourcesListener) }
+        watchedChanges.clear()
+    }
+    
+}
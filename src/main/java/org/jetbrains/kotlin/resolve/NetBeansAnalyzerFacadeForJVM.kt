@@ -16,34 +16,32 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.resolve
 
-import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.openapi.progress.ProcessCanceledException
 import org.jetbrains.kotlin.analyzer.AnalysisResult
-import org.jetbrains.kotlin.builtins.JvmBuiltInsPackageFragmentProvider
 import org.jetbrains.kotlin.cli.jvm.compiler.CliLightClassGenerationSupport
-import org.jetbrains.kotlin.config.CommonConfigurationKeys
-import org.jetbrains.kotlin.config.CompilerConfiguration
-import org.jetbrains.kotlin.config.LanguageVersionSettingsImpl
-import org.jetbrains.kotlin.context.MutableModuleContext
 import org.jetbrains.kotlin.context.ProjectContext
 import org.jetbrains.kotlin.util.KotlinFrontEndException
-import org.jetbrains.kotlin.frontend.java.di.initJvmBuiltInsForTopDownAnalysis
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.context.ContextForNewModule
 import org.jetbrains.kotlin.descriptors.PackageFragmentProvider
 import org.jetbrains.kotlin.name.Name
-import org.jetbrains.kotlin.platform.JvmBuiltIns
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.psi.KtClassOrObject
+import org.jetbrains.kotlin.psi.KtDeclarationContainer
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.KtProperty
+import org.jetbrains.kotlin.psi.KtTypeAlias
 import org.jetbrains.kotlin.resolve.jvm.JavaDescriptorResolver
 import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM
 import org.jetbrains.kotlin.resolve.jvm.TopDownAnalyzerFacadeForJVM.SourceOrBinaryModuleClassResolver
 import org.jetbrains.kotlin.resolve.jvm.extensions.PackageFragmentProviderExtension
 import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory
 import org.jetbrains.kotlin.resolve.lazy.KotlinCodeAnalyzer
-import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.resolve.lazy.ResolveSession
 import org.jetbrains.kotlin.descriptors.impl.CompositePackageFragmentProvider
 import org.jetbrains.kotlin.descriptors.impl.ModuleDependenciesImpl
 import java.util.LinkedHashSet
-import org.jetbrains.kotlin.utils.ProjectUtils
 import org.netbeans.api.project.Project as NBProject
 import com.intellij.openapi.project.Project
 
@@ -52,60 +50,30 @@ object NetBeansAnalyzerFacadeForJVM {
     fun analyzeFilesWithJavaIntegration(
             kotlinProject: NBProject,
             project : Project,
-            filesToAnalyze: Collection<KtFile>): AnalysisResultWithProvider {
+            filesToAnalyze: Collection<KtFile>,
+            level: AnalysisLevel = AnalysisLevel.FULL): AnalysisResultWithProvider {
         val filesSet = filesToAnalyze.toSet()
+        val session = KotlinResolveSession.getInstance(kotlinProject)
         
         val allFiles = LinkedHashSet<KtFile>(filesSet)
         val addedFiles = filesSet.mapNotNullTo(hashSetOf()) { getPath(it) }
-        ProjectUtils.getSourceFilesWithDependencies(kotlinProject).filterNotTo(allFiles) {
+        session.getSourceFiles().filterNotTo(allFiles) {
             getPath(it) in addedFiles
         }
         
-        val environment = KotlinEnvironment.getEnvironment(kotlinProject)
-        
-        val moduleContext = createModuleContext(project, 
-                environment.configuration,
-                true)
+        val moduleContext = ContextForNewModule(ProjectContext(project), 
+                Name.special("<${session.moduleName}>"), session.builtIns, null)
         val storageManager = moduleContext.storageManager
         val module = moduleContext.module
         
         val providerFactory = FileBasedDeclarationProviderFactory(storageManager, allFiles)
-        val trace = CliLightClassGenerationSupport.CliBindingTrace()
+        val sharedTrace = CliLightClassGenerationSupport.CliBindingTrace()
+        // bodies may be resolved again later on this container, see KotlinIncrementalResolver
+        val trace = RedirectingBindingTrace(sharedTrace)
         
         val sourceScope = TopDownAnalyzerFacadeForJVM.newModuleSearchScope(project, filesToAnalyze)
         val moduleClassResolver = SourceOrBinaryModuleClassResolver(sourceScope)
-        
-        val languageVersionSettings = LanguageVersionSettingsImpl.DEFAULT
-        val optionalBuiltInsModule = JvmBuiltIns(storageManager).apply { initialize(module, true) }.builtInsModule
-        
-        val dependencyModule = run { 
-            val dependenciesContext = ContextForNewModule(
-                    moduleContext,  Name.special("<dependencies of ${environment.configuration.getNotNull<String>(CommonConfigurationKeys.MODULE_NAME)}>"),
-                    module.builtIns, null
-            )
-            
-            val dependencyScope = GlobalSearchScope.notScope(sourceScope)
-            val dependenciesContainer = createContainerForTopDownAnalyzerForJvm(
-                    moduleContext, 
-                    trace, 
-                    providerFactory, 
-                    dependencyScope, 
-                    LookupTracker.DO_NOTHING,
-                    KotlinPackagePartProvider(kotlinProject), 
-                    languageVersionSettings,
-                    moduleClassResolver,
-                    kotlinProject)
-            
-            moduleClassResolver.compiledCodeResolver = dependenciesContainer.get()
-            
-            dependenciesContext.setDependencies(listOfNotNull(dependenciesContext.module, optionalBuiltInsModule))
-            dependenciesContext.initializeModuleContents(CompositePackageFragmentProvider(listOf(
-                    moduleClassResolver.compiledCodeResolver.packageFragmentProvider,
-                    dependenciesContainer.get<JvmBuiltInsPackageFragmentProvider>()
-            )))
-            
-            dependenciesContext.module
-        }
+        moduleClassResolver.compiledCodeResolver = session.compiledCodeResolver
         
         val container = createContainerForTopDownAnalyzerForJvm(
                 moduleContext, 
@@ -113,12 +81,10 @@ object NetBeansAnalyzerFacadeForJVM {
                 providerFactory, 
                 sourceScope, 
                 LookupTracker.DO_NOTHING, 
-                KotlinPackagePartProvider(kotlinProject), 
-                languageVersionSettings, 
+                session.packagePartProvider, 
+                session.languageVersionSettings, 
                 moduleClassResolver, 
-                kotlinProject).apply {
-            initJvmBuiltInsForTopDownAnalysis(module, languageVersionSettings)
-        }
+                kotlinProject)
         
         moduleClassResolver.sourceCodeResolver = container.get()
         
@@ -130,39 +96,49 @@ object NetBeansAnalyzerFacadeForJVM {
         }
         
         module.setDependencies(ModuleDependenciesImpl(
-                listOfNotNull(module, dependencyModule, optionalBuiltInsModule),
-                setOf(dependencyModule)
+                listOf(module, session.dependencyModule, session.optionalBuiltInsModule),
+                setOf(session.dependencyModule)
         ))
         module.initialize(CompositePackageFragmentProvider(
                 listOf(container.get<KotlinCodeAnalyzer>().packageFragmentProvider) + additionalProviders
         ))
         
         try {
-            container.get<LazyTopDownAnalyzer>().analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, filesSet)
-        } catch (e: KotlinFrontEndException) {}
+            KotlinPsiManager.readFiles(allFiles) {
+                when (level) {
+                    AnalysisLevel.FULL -> container.get<LazyTopDownAnalyzer>()
+                            .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, filesSet)
+                    AnalysisLevel.DECLARATIONS -> {
+                        val resolveSession = container.get<ResolveSession>()
+                        filesSet.forEach { resolveSession.resolveDeclarationHeaders(it) }
+                    }
+                    AnalysisLevel.SYNTAX -> {}
+                }
+            }
+        } catch (e: KotlinFrontEndException) {
+            // canceled analysis must not be mistaken for a complete one
+            if (e.cause is ProcessCanceledException) throw e.cause as ProcessCanceledException
+        }
         
         return AnalysisResultWithProvider(
-                AnalysisResult.success(trace.bindingContext, module),
-                container
+                AnalysisResult.success(sharedTrace.bindingContext, module),
+                container,
+                level
         )
     }
     
-    private fun getPath(jetFile: KtFile): String? = jetFile.virtualFile?.path
-    
-    private fun createModuleContext(project: Project,
-                                    configuration: CompilerConfiguration,
-                                    createBuiltInsFromModule: Boolean): MutableModuleContext {
-        val projectContext = ProjectContext(project)
-        val builtIns = JvmBuiltIns(projectContext.storageManager, !createBuiltInsFromModule)
-        
-        return ContextForNewModule(
-                projectContext, Name.special("<${configuration.getNotNull<String>(CommonConfigurationKeys.MODULE_NAME)}>"), builtIns, null
-        ).apply { 
-            if (createBuiltInsFromModule) {
-                builtIns.builtInsModule = module
+    private fun ResolveSession.resolveDeclarationHeaders(container: KtDeclarationContainer) {
+        for (declaration in container.declarations) {
+            when (declaration) {
+                is KtClassOrObject -> {
+                    resolveToDescriptor(declaration)
+                    resolveDeclarationHeaders(declaration)
+                }
+                is KtNamedFunction, is KtProperty, is KtTypeAlias -> resolveToDescriptor(declaration)
             }
         }
-        
     }
     
+    private fun getPath(jetFile: KtFile): String? = jetFile.virtualFile?.path
+    
 }
\ No newline at end of file
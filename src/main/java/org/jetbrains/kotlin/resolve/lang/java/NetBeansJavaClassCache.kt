@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.resolve.lang.java
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.jetbrains.kotlin.load.java.structure.JavaClass
+import org.jetbrains.kotlin.load.java.structure.JavaPackage
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.project.KotlinSourceChanges
+import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.isMavenProject
+import org.jetbrains.kotlin.projectsextensions.maven.MavenHelper
+import org.netbeans.api.project.Project
+import org.openide.filesystems.FileAttributeEvent
+import org.openide.filesystems.FileChangeListener
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileRenameEvent
+
+/**
+ * Java classes and packages found by [NetBeansJavaClassFinder] for a project, including the ones 
+ * which don't exist. The same wrappers are returned during and across analyses, so the data 
+ * they read from javac is read once. The cache is cleared when the classpath changes, which 
+ * is seen as a new classpath generation of the environment, and when a Java source of the 
+ * project or of its dependency projects changes.
+ */
+class NetBeansJavaClassCache private constructor(private val project: Project) {
+    
+    companion object {
+        private val caches = hashMapOf<Project, NetBeansJavaClassCache>()
+        
+        @JvmStatic @Synchronized fun getInstance(project: Project) = caches.getOrPut(project) { 
+            NetBeansJavaClassCache(project).apply { startListening() } 
+        }
+        
+        @JvmStatic @Synchronized fun remove(project: Project) {
+            caches.remove(project)?.stopListening()
+        }
+    }
+    
+    // cached result for a class or package which was not found
+    private object NotFound
+    
+    private val classes = ConcurrentHashMap<ClassId, Any>()
+    private val packages = ConcurrentHashMap<FqName, Any>()
+    
+    @Volatile private var classpathGeneration = -1L
+    @Volatile private var sourceStamp = 0L
+    
+    private val watchedChanges = arrayListOf<KotlinSourceChanges>()
+    
+    val hits = AtomicLong()
+    val misses = AtomicLong()
+    
+    fun findClass(classId: ClassId, find: (ClassId) -> JavaClass?): JavaClass? = get(classes, classId, find)
+    
+    fun findPackage(fqName: FqName, find: (FqName) -> JavaPackage?): JavaPackage? = get(packages, fqName, find)
+    
+    fun clear() {
+        sourceStamp++
+        classes.clear()
+        packages.clear()
+    }
+    
+    fun statistics(): String {
+        val requests = hits.get() + misses.get()
+        val hitRate = if (requests == 0L) 0 else hits.get() * 100 / requests
+        
+        return "classes: ${classes.size}, packages: ${packages.size}, hits: ${hits.get()}, misses: ${misses.get()} ($hitRate% hit rate)"
+    }
+    
+    @Suppress("UNCHECKED_CAST")
+    private fun <K : Any, V : Any> get(entries: ConcurrentHashMap<K, Any>, key: K, find: (K) -> V?): V? {
+        val generation = KotlinEnvironment.getEnvironment(project).classpathGeneration
+        if (generation != classpathGeneration) {
+            clear()
+            classpathGeneration = generation
+        }
+        
+        val cached = entries[key]
+        if (cached != null) {
+            hits.incrementAndGet()
+            return if (cached === NotFound) null else cached as V
+        }
+        
+        misses.incrementAndGet()
+        val stamp = sourceStamp
+        val value = find(key)
+        // a wrapper created while a source was changing may hold stale data
+        if (stamp == sourceStamp && generation == classpathGeneration) entries.put(key, value ?: NotFound)
+        
+        return value
+    }
+    
+    private val sourcesListener = object : FileChangeListener {
+        override fun fileFolderCreated(fe: FileEvent) {}
+        override fun fileDataCreated(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileChanged(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileDeleted(fe: FileEvent) = sourceChanged(fe.file)
+        override fun fileRenamed(fe: FileRenameEvent) = sourceChanged(fe.file)
+        override fun fileAttributeChanged(fe: FileAttributeEvent) {}
+    }
+    
+    private fun sourceChanged(file: FileObject) {
+        if (file.isFolder || file.ext == "java") clear()
+    }
+    
+    private fun startListening() {
+        val projects = if (project.isMavenProject()) {
+            listOf(project) + MavenHelper.getDependencyProjects(project)
+        } else listOf(project)
+        
+        projects.map { KotlinSourceChanges.getInstance(it) }.forEach { 
+            it.addListener(sourcesListener)
+            watchedChanges.add(it)
+        }
+    }
+    
+    private fun stopListening() {
+        watchedChanges.forEach { it.removeListener(sourcesListener) }
+        watchedChanges.clear()
+    }
+    
+}
@@ -28,6 +28,7 @@ import org.jetbrains.kotlin.resolve.lang.java.structure.NetBeansJavaPackage
 import org.jetbrains.kotlin.resolve.lazy.KotlinCodeAnalyzer
 import org.jetbrains.kotlin.resolve.BindingTrace
 import org.jetbrains.kotlin.resolve.CodeAnalyzerInitializer
+import org.jetbrains.kotlin.resolve.RedirectingBindingTrace
 import org.jetbrains.kotlin.model.KotlinEnvironment
 import org.netbeans.api.project.Project
 
@@ -41,20 +42,18 @@ class NetBeansJavaClassFinder : JavaClassFinder {
     
     @PostConstruct fun initialize(trace: BindingTrace, codeAnalyzer: KotlinCodeAnalyzer) {
         val ideaProject = KotlinEnvironment.getEnvironment(project).project
-        CodeAnalyzerInitializer.Companion.getInstance(ideaProject).initialize(trace, codeAnalyzer.moduleDescriptor, codeAnalyzer)
+        // light class support expects the trace it was created with
+        val sharedTrace = (trace as? RedirectingBindingTrace)?.base ?: trace
+        CodeAnalyzerInitializer.Companion.getInstance(ideaProject).initialize(sharedTrace, codeAnalyzer.moduleDescriptor, codeAnalyzer)
     }
     
     
-    override fun findClass(classId: ClassId): JavaClass? {
-        val element = project.findType(classId.asSingleFqName().asString()) ?: return null
-        
-        return NetBeansJavaClass(element, project)
+    override fun findClass(classId: ClassId): JavaClass? = NetBeansJavaClassCache.getInstance(project).findClass(classId) {
+        project.findType(it.asSingleFqName().asString())?.let { element -> NetBeansJavaClass(element, project) }
     }
     
-    override fun findPackage(fqName: FqName): JavaPackage? {
-        val pack = project.findPackage(fqName.asString()) ?: return null
-        
-        return NetBeansJavaPackage(pack, project)
+    override fun findPackage(fqName: FqName): JavaPackage? = NetBeansJavaClassCache.getInstance(project).findPackage(fqName) {
+        project.findPackage(it.asString())?.let { pack -> NetBeansJavaPackage(pack, project) }
     }
 
     override fun knownClassNamesInPackage(packageFqName: FqName) = knownClassNamesInPackage(packageFqName.asString(), project)
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.resolve.lang.java
 
 import javax.lang.model.element.AnnotationMirror
+import javax.lang.model.element.Element
 import javax.lang.model.element.AnnotationValue
 import javax.lang.model.element.VariableElement
 import javax.lang.model.type.TypeMirror
@@ -68,6 +69,15 @@ private fun getArrayAnnotationArgument(values: Collection<*>, name: Name,
     return NetBeansJavaArrayAnnotationArgument(args, name)
 }
 
+fun Element.getJavaAnnotations(info: CompilationController, project: Project): List<JavaAnnotation> = 
+        getJavaAnnotationsByFqName(info, project).values.toList()
+
+fun Element.getJavaAnnotationsByFqName(info: CompilationController, project: Project): Map<String, JavaAnnotation> =
+        annotationMirrors.associate { 
+            it.annotationType.toString() to NetBeansJavaAnnotation(project, TypeMirrorHandle.create(it.annotationType), 
+                    getMirrorArguments(it, info, project)) 
+        }
+
 class AnnotationsSearcher(val handle: ElemHandle<*>, val project: Project) : Task<CompilationController> {
     val annotations = arrayListOf<JavaAnnotation>()
     
@@ -75,11 +85,7 @@ class AnnotationsSearcher(val handle: ElemHandle<*>, val project: Project) : Tas
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        for (mirror in element.annotationMirrors) {
-            val mirrorHandle = TypeMirrorHandle.create(mirror.annotationType)
-            annotations.add(NetBeansJavaAnnotation(project, mirrorHandle,
-                        getMirrorArguments(mirror, info, project)))
-        }
+        annotations.addAll(element.getJavaAnnotations(info, project))
     }
 }
 
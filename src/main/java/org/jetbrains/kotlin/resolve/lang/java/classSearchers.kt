@@ -18,11 +18,14 @@ package org.jetbrains.kotlin.resolve.lang.java
 
 import javax.lang.model.element.ElementKind
 import javax.lang.model.element.ExecutableElement
+import javax.lang.model.element.Modifier
 import javax.lang.model.element.TypeElement
 import javax.lang.model.element.VariableElement
 import javax.lang.model.type.NoType
 import javax.lang.model.type.TypeKind
 import javax.lang.model.type.TypeMirror
+import org.jetbrains.kotlin.descriptors.Visibility
+import org.jetbrains.kotlin.load.java.structure.JavaAnnotation
 import org.jetbrains.kotlin.load.java.structure.JavaClass
 import org.jetbrains.kotlin.load.java.structure.JavaClassifierType
 import org.jetbrains.kotlin.load.java.structure.JavaConstructor
@@ -55,36 +58,63 @@ class NameSearcher(val handle: ElemHandle<TypeElement>) : Task<CompilationContro
     }
 }
 
-class SuperTypesSearcher(val handle: ElemHandle<TypeElement>, val project: Project) : Task<CompilationController> {
-    val superTypes = arrayListOf<JavaClassifierType>()
+private fun getSuperTypesMirrors(typeBinding: TypeElement): List<TypeMirror> {
+    val superTypesList = typeBinding.interfaces.toMutableList()
     
-    private fun getSuperTypesMirrors(typeBinding: TypeElement): List<TypeMirror> {
-        val superTypesList = typeBinding.interfaces.toMutableList()
-        
-        val superclass = typeBinding.superclass
-        if (superclass !is NoType) superTypesList.add(superclass)
-        
-        return superTypesList
-    }
+    val superclass = typeBinding.superclass
+    if (superclass !is NoType) superTypesList.add(superclass)
     
-    private fun getSuperTypesWithObject(typeBinding: TypeElement, info: CompilationController): Array<TypeMirror> {
-        val allSuperTypes = getSuperTypesMirrors(typeBinding).toMutableList()
-        val hasObject = !allSuperTypes.none{ it.toString() == CommonClassNames.JAVA_LANG_OBJECT }
-        
-        if (!hasObject && typeBinding.toString() != CommonClassNames.JAVA_LANG_OBJECT) {
-            allSuperTypes.add(info.elements.getTypeElement(CommonClassNames.JAVA_LANG_OBJECT).asType())
-        }
-        
-        return allSuperTypes.toTypedArray()
+    return superTypesList
+}
+
+private fun getSuperTypesWithObject(typeBinding: TypeElement, info: CompilationController): Array<TypeMirror> {
+    val allSuperTypes = getSuperTypesMirrors(typeBinding).toMutableList()
+    val hasObject = !allSuperTypes.none{ it.toString() == CommonClassNames.JAVA_LANG_OBJECT }
+    
+    if (!hasObject && typeBinding.toString() != CommonClassNames.JAVA_LANG_OBJECT) {
+        allSuperTypes.add(info.elements.getTypeElement(CommonClassNames.JAVA_LANG_OBJECT).asType())
     }
     
+    return allSuperTypes.toTypedArray()
+}
+
+fun TypeElement.getJavaSuperTypes(info: CompilationController, project: Project): List<JavaClassifierType> = 
+        getSuperTypesWithObject(this, info).map { NetBeansJavaClassifierType(TypeMirrorHandle.create(it), project) }
+
+fun TypeElement.getJavaInnerClasses(project: Project): List<JavaClass> = enclosedElements
+        .filterIsInstance(TypeElement::class.java)
+        .map { NetBeansJavaClass(ElemHandle.create(it, project), project) }
+
+fun TypeElement.getJavaOuterClass(project: Project): JavaClass? {
+    val outer = enclosingElement ?: return null
+    if (outer.asType().kind != TypeKind.DECLARED) return null
+    
+    return NetBeansJavaClass(ElemHandle.create(outer as TypeElement, project), project)
+}
+
+fun TypeElement.getJavaMethods(project: Project, containingClass: JavaClass): List<JavaMethod> = enclosedElements
+        .filter { it.kind == ElementKind.METHOD }
+        .map { NetBeansJavaMethod(ElemHandle.create(it as ExecutableElement, project), containingClass, project) }
+
+fun TypeElement.getJavaConstructors(project: Project, containingClass: JavaClass): List<JavaConstructor> = enclosedElements
+        .filter { it.kind == ElementKind.CONSTRUCTOR }
+        .map { NetBeansJavaConstructor(ElemHandle.create(it as ExecutableElement, project), containingClass, project) }
+
+fun TypeElement.getJavaFields(project: Project, containingClass: JavaClass): List<JavaField> = enclosedElements
+        .filter { it.kind.isField && Name.isValidIdentifier(it.simpleName.toString()) }
+        .map { NetBeansJavaField(ElemHandle.create(it as VariableElement, project), containingClass, project) }
+
+fun TypeElement.getJavaTypeParameters(project: Project): List<JavaTypeParameter> = typeParameters
+        .map { NetBeansJavaTypeParameter(ElemHandle.create(it, project), project) }
+
+class SuperTypesSearcher(val handle: ElemHandle<TypeElement>, val project: Project) : Task<CompilationController> {
+    val superTypes = arrayListOf<JavaClassifierType>()
+    
     override fun run(info: CompilationController) {
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        getSuperTypesWithObject(element as TypeElement, info)
-                .forEach{ superTypes.add(
-                        NetBeansJavaClassifierType(TypeMirrorHandle.create(it), project)) }
+        superTypes.addAll((element as TypeElement).getJavaSuperTypes(info, project))
     }
 }
  
@@ -96,10 +126,7 @@ class InnerClassesSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        val filteredMembers = element.enclosedElements
-                .filterIsInstance(TypeElement::class.java)
-                .map{ NetBeansJavaClass(ElemHandle.create(it, project), project) }
-        innerClasses.addAll(filteredMembers)
+        innerClasses.addAll((element as TypeElement).getJavaInnerClasses(project))
     }
 }
 
@@ -111,10 +138,7 @@ class OuterClassSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        val outer = element.enclosingElement ?: return
-        if (outer.asType().kind != TypeKind.DECLARED) return
-        
-        outerClass = NetBeansJavaClass(ElemHandle.create(outer as TypeElement, project), project)
+        outerClass = (element as TypeElement).getJavaOuterClass(project)
     }
 }
 
@@ -126,10 +150,7 @@ class MethodsSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        val filteredMembers = element.enclosedElements
-                .filter { it.kind == ElementKind.METHOD }
-                .map { NetBeansJavaMethod(ElemHandle.create(it as ExecutableElement, project), containingClass, project) }
-        methods.addAll(filteredMembers)
+        methods.addAll((element as TypeElement).getJavaMethods(project, containingClass))
     }
 }
 
@@ -156,10 +177,7 @@ class ConstructorsSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        val filteredMembers = element.enclosedElements
-                .filter { it.kind == ElementKind.CONSTRUCTOR }
-                .map { NetBeansJavaConstructor(ElemHandle.create(it as ExecutableElement, project), containingClass, project) }
-        constructors.addAll(filteredMembers)
+        constructors.addAll((element as TypeElement).getJavaConstructors(project, containingClass))
     }
 }
 
@@ -171,10 +189,7 @@ class FieldsSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        val filteredMembers = element.enclosedElements
-                .filter { it.kind.isField && Name.isValidIdentifier(it.simpleName.toString()) }
-                .map { NetBeansJavaField(ElemHandle.create(it as VariableElement, project), containingClass, project) }
-        fields.addAll(filteredMembers)
+        fields.addAll((element as TypeElement).getJavaFields(project, containingClass))
     }
 }
 
@@ -186,7 +201,53 @@ class TypeParametersSearcher(val handle: ElemHandle<TypeElement>,
         info.toResolvedPhase()
         val element = handle.resolve(info) ?: return
         
-        (element as TypeElement).typeParameters
-                .forEach{ typeParameters.add(NetBeansJavaTypeParameter(ElemHandle.create(it, project), project)) }
+        typeParameters.addAll((element as TypeElement).getJavaTypeParameters(project))
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Class-level data of a Java class collected in a single Java task. Members returned
+ * here are still handles: their types, parameters and annotations are resolved by
+ * a separate task per property when they are requested.
+ */
+class JavaClassSnapshot(val name: Name,
+                        val supertypes: List<JavaClassifierType>,
+                        val innerClasses: List<JavaClass>,
+                        val outerClass: JavaClass?,
+                        val methods: List<JavaMethod>,
+                        val constructors: List<JavaConstructor>,
+                        val fields: List<JavaField>,
+                        val visibility: Visibility,
+                        val typeParameters: List<JavaTypeParameter>,
+                        val annotations: Map<String, JavaAnnotation>,
+                        val isDeprecated: Boolean,
+                        val isAbstract: Boolean,
+                        val isStatic: Boolean,
+                        val isFinal: Boolean)
+
+class ClassSnapshotSearcher(val handle: ElemHandle<TypeElement>,
+                            val project: Project, val javaClass: JavaClass) : Task<CompilationController> {
+    var snapshot: JavaClassSnapshot? = null
+    
+    override fun run(info: CompilationController) {
+        info.toResolvedPhase()
+        val element = handle.resolve(info) as? TypeElement ?: return
+        val modifiers = element.modifiers
+        
+        snapshot = JavaClassSnapshot(
+                SpecialNames.safeIdentifier(element.simpleName.toString()),
+                element.getJavaSuperTypes(info, project),
+                element.getJavaInnerClasses(project),
+                element.getJavaOuterClass(project),
+                element.getJavaMethods(project, javaClass),
+                element.getJavaConstructors(project, javaClass),
+                element.getJavaFields(project, javaClass),
+                modifiers.toJavaVisibility(),
+                element.getJavaTypeParameters(project),
+                element.getJavaAnnotationsByFqName(info, project),
+                info.elements.isDeprecated(element),
+                modifiers.contains(Modifier.ABSTRACT),
+                modifiers.contains(Modifier.STATIC),
+                modifiers.contains(Modifier.FINAL))
+    }
+}
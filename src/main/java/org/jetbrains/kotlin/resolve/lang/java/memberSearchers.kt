@@ -20,6 +20,7 @@ import javax.lang.model.element.Modifier
 import javax.lang.model.element.TypeElement
 import javax.lang.model.element.VariableElement
 import org.jetbrains.kotlin.descriptors.Visibilities
+import org.jetbrains.kotlin.descriptors.Visibility
 import org.jetbrains.kotlin.load.java.JavaVisibilities
 import org.jetbrains.kotlin.load.java.structure.JavaType
 import org.jetbrains.kotlin.name.Name
@@ -104,26 +105,27 @@ class ElementHandleNameSearcher(val handle: ElementHandle<*>) : Task<Compilation
 
 class VisibilitySearcher(val handle: ElemHandle<*>) : Task<CompilationController> {
 
-    var visibility = JavaVisibilities.PACKAGE_VISIBILITY
+    var visibility: Visibility = JavaVisibilities.PACKAGE_VISIBILITY
 
     override fun run(info: CompilationController) {
         info.toResolvedPhase()
 
         val elem = handle.resolve(info) ?: return
-        val modifiers = elem.modifiers
-        visibility = when {
-            modifiers.contains(Modifier.PUBLIC) -> Visibilities.PUBLIC
-            modifiers.contains(Modifier.PRIVATE) -> Visibilities.PRIVATE
-            modifiers.contains(Modifier.PROTECTED) -> {
-                if (modifiers.contains(Modifier.STATIC)) {
-                    JavaVisibilities.PROTECTED_STATIC_VISIBILITY
-                } else {
-                    JavaVisibilities.PROTECTED_AND_PACKAGE
-                }
-            }
-            else -> JavaVisibilities.PACKAGE_VISIBILITY
+        visibility = elem.modifiers.toJavaVisibility()
+    }
+}
+
+fun Set<Modifier>.toJavaVisibility(): Visibility = when {
+    contains(Modifier.PUBLIC) -> Visibilities.PUBLIC
+    contains(Modifier.PRIVATE) -> Visibilities.PRIVATE
+    contains(Modifier.PROTECTED) -> {
+        if (contains(Modifier.STATIC)) {
+            JavaVisibilities.PROTECTED_STATIC_VISIBILITY
+        } else {
+            JavaVisibilities.PROTECTED_AND_PACKAGE
         }
     }
+    else -> JavaVisibilities.PACKAGE_VISIBILITY
 }
 
 class FieldTypeSearcher(val handle: ElemHandle<*>,
@@ -46,6 +46,9 @@ fun ElemHandle<TypeElement>.getFields(project: Project, javaClass: JavaClass) =
 fun ElemHandle<TypeElement>.getTypeParameters(project: Project) = 
         TypeParametersSearcher(this, project).execute(project).typeParameters
 
+fun ElemHandle<TypeElement>.getSnapshot(project: Project, javaClass: JavaClass) =
+        ClassSnapshotSearcher(this, project, javaClass).execute(project).snapshot
+
 fun ElemHandle<TypeElement>.getFqName() = FqName(this.qualifiedName)
  
 fun ElementHandle<TypeElement>.getMethodsHandles(project: Project) =
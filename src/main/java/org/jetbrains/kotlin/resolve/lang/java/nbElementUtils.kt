@@ -16,7 +16,9 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.resolve.lang.java
 
+import java.util.concurrent.atomic.AtomicLong
 import javax.lang.model.element.TypeElement
+import org.jetbrains.kotlin.model.KotlinEnvironment
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getExtendedClassPath
 import org.jetbrains.kotlin.resolve.lang.java.structure.NetBeansJavaClass
 import org.netbeans.api.java.classpath.ClassPath
@@ -31,6 +33,7 @@ import org.netbeans.api.java.source.TypeMirrorHandle
 import org.netbeans.api.java.source.ui.ElementOpen
 import org.netbeans.api.project.Project
 import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileUtil
 import javax.lang.model.type.DeclaredType
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.CallableMemberDescriptor
@@ -39,6 +42,14 @@ import javax.lang.model.element.ExecutableElement
 
 object JavaEnvironment {
     val JAVA_SOURCE = hashMapOf<Project, JavaSource>()
+    
+    /**
+     * When enabled [NetBeansJavaClass] captures all its data in a single javac task
+     * instead of running one task per property.
+     */
+    var useClassSnapshots = System.getProperty("kotlin.netbeans.java.snapshots") != "false"
+    
+    val userActionTasksCount = AtomicLong()
 
     private fun getClasspathInfo(project: Project): ClasspathInfo {
         val extendedProvider = project.getExtendedClassPath() ?: 
@@ -64,9 +75,13 @@ object JavaEnvironment {
 }
 
 fun knownClassNamesInPackage(packageFqName: String, project: Project): Set<String> {
+    // classes of library jars are listed by the jar metadata cache, javac is needed only for sources
+    KotlinEnvironment.getEnvironment(project).getClassNamesInJars(packageFqName)?.let { return it }
+    
     val classes = hashSetOf<String>()
     JavaEnvironment.checkJavaSource(project)
     JavaEnvironment.JAVA_SOURCE[project]?.let {
+        JavaEnvironment.userActionTasksCount.incrementAndGet()
         it.runUserActionTask({
             it.toResolvedPhase()
             it.elements.getPackageElement(packageFqName)
@@ -85,8 +100,17 @@ fun ElementHandle<*>.getFileObject(project: Project): FileObject? =
 
 fun String.getPackages(project: Project): Set<String> {
     JavaEnvironment.checkJavaSource(project)
-    return JavaEnvironment.JAVA_SOURCE[project]!!.classpathInfo.classIndex.
-            getPackageNames(this, false, hashSetOf(ClassIndex.SearchScope.SOURCE, ClassIndex.SearchScope.DEPENDENCIES))
+    val classpathInfo = JavaEnvironment.JAVA_SOURCE[project]!!.classpathInfo
+    val environment = KotlinEnvironment.getEnvironment(project)
+    
+    // packages of library jars come from the jar metadata cache, the class index still has to 
+    // be asked for dependencies which are not jars, like output folders of other modules
+    val sourceRoots = classpathInfo.getClassPath(ClasspathInfo.PathKind.SOURCE).roots()
+            .mapNotNull { FileUtil.toFile(it)?.path }.toSet()
+    val scope = if (environment.directoryRootPaths.all { it in sourceRoots }) hashSetOf(ClassIndex.SearchScope.SOURCE)
+            else hashSetOf(ClassIndex.SearchScope.SOURCE, ClassIndex.SearchScope.DEPENDENCIES)
+    
+    return classpathInfo.classIndex.getPackageNames(this, false, scope) + environment.getPackagesInJars(this)
 }
 
 fun Project.findType(fqName: String) = TypeElementSearcher(fqName, this).execute(this).element
@@ -95,6 +119,7 @@ fun Project.findTypeElementHandle(fqName: String) = TypeElementHandleSearcher(fq
 
 fun <T : Task<CompilationController>> T.execute(project: Project): T {
     JavaEnvironment.checkJavaSource(project)
+    JavaEnvironment.userActionTasksCount.incrementAndGet()
     JavaEnvironment.JAVA_SOURCE[project]!!.runUserActionTask(this, true)
     
     return this
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.resolve.lang.java.structure
 
 import javax.lang.model.element.ElementKind
 import org.jetbrains.kotlin.descriptors.Visibility
+import org.jetbrains.kotlin.load.java.structure.JavaAnnotation
 import org.jetbrains.kotlin.load.java.structure.JavaClass
 import org.jetbrains.kotlin.load.java.structure.JavaClassifierType
 import org.jetbrains.kotlin.load.java.structure.JavaConstructor
@@ -38,35 +39,39 @@ import javax.lang.model.element.TypeElement
 class NetBeansJavaClass(elementHandle: ElemHandle<TypeElement>, project: Project) :
         NetBeansJavaClassifier<TypeElement>(elementHandle, project), JavaClass {
 
+    private val snapshot by lazy {
+        if (JavaEnvironment.useClassSnapshots) elementHandle.getSnapshot(project, this) else null
+    }
+
     override val name 
-        get() = elementHandle.getName(project)
+        get() = snapshot?.name ?: elementHandle.getName(project)
 
     override val fqName: FqName?
         get() = elementHandle.getFqName()
 
     override val supertypes: Collection<JavaClassifierType>
-        get() = elementHandle.getSuperTypes(project)
+        get() = snapshot?.supertypes ?: elementHandle.getSuperTypes(project)
 
     override val innerClasses: Collection<JavaClass>
-        get() = elementHandle.getInnerClasses(project)
+        get() = snapshot?.innerClasses ?: elementHandle.getInnerClasses(project)
 
     override val outerClass: JavaClass?
-        get() = elementHandle.getOuterClass(project)
+        get() = snapshot.let { if (it != null) it.outerClass else elementHandle.getOuterClass(project) }
 
     override val methods: Collection<JavaMethod>
-        get() = elementHandle.getMethods(project, this)
+        get() = snapshot?.methods ?: elementHandle.getMethods(project, this)
 
     override val constructors: Collection<JavaConstructor>
-        get() = elementHandle.getConstructors(project, this)
+        get() = snapshot?.constructors ?: elementHandle.getConstructors(project, this)
 
     override val fields: Collection<JavaField>
-        get() = elementHandle.getFields(project, this)
+        get() = snapshot?.fields ?: elementHandle.getFields(project, this)
 
     override val visibility: Visibility
-        get() = elementHandle.getVisibility(project)
+        get() = snapshot?.visibility ?: elementHandle.getVisibility(project)
 
     override val typeParameters: List<JavaTypeParameter>
-        get() = elementHandle.getTypeParameters(project)
+        get() = snapshot?.typeParameters ?: elementHandle.getTypeParameters(project)
 
     override val isInterface 
         get() = elementHandle.kind == ElementKind.INTERFACE
@@ -75,11 +80,22 @@ class NetBeansJavaClass(elementHandle: ElemHandle<TypeElement>, project: Project
     override val isEnum 
         get() = elementHandle.kind == ElementKind.ENUM
     override val isAbstract 
-        get() = elementHandle.isAbstract(project)
+        get() = snapshot?.isAbstract ?: elementHandle.isAbstract(project)
     override val isStatic 
-        get() = elementHandle.isStatic(project)
+        get() = snapshot?.isStatic ?: elementHandle.isStatic(project)
     override val isFinal 
-        get() = elementHandle.isFinal(project)
+        get() = snapshot?.isFinal ?: elementHandle.isFinal(project)
+
+    override val annotations: Collection<JavaAnnotation>
+        get() = snapshot?.annotations?.values ?: super.annotations
+
+    override val isDeprecatedInJavaDoc
+        get() = snapshot?.isDeprecated ?: super.isDeprecatedInJavaDoc
+
+    override fun findAnnotation(fqName: FqName): JavaAnnotation? {
+        val annotations = snapshot?.annotations ?: return super.findAnnotation(fqName)
+        return annotations[fqName.asString()]
+    }
 
     override val lightClassOriginKind = null
 
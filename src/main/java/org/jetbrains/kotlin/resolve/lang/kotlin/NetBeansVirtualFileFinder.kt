@@ -24,7 +24,6 @@ import java.io.InputStream
 import org.jetbrains.kotlin.builtins.BuiltInSerializerProtocol
 import org.jetbrains.kotlin.cli.jvm.index.JavaRoot
 import org.jetbrains.kotlin.model.KotlinEnvironment
-import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper.getFullClassPath
 import org.jetbrains.kotlin.load.kotlin.JvmVirtualFileFinder
 import org.jetbrains.kotlin.load.kotlin.VirtualFileKotlinClassFinder
 import org.jetbrains.kotlin.load.kotlin.JvmVirtualFileFinderFactory
@@ -33,15 +32,12 @@ import org.netbeans.api.project.Project
 import org.jetbrains.kotlin.load.java.structure.JavaClass
 import org.jetbrains.kotlin.load.kotlin.KotlinBinaryClassCache
 import org.jetbrains.kotlin.load.kotlin.KotlinJvmBinaryClass
-import org.jetbrains.kotlin.log.KotlinLogger
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.serialization.deserialization.MetadataPackageFragment
 import org.jetbrains.kotlin.resolve.lang.java.computeClassId
 import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndex
 import org.jetbrains.kotlin.resolve.lang.java.structure.NetBeansJavaClass
-import org.openide.filesystems.FileObject
-import org.openide.filesystems.FileStateInvalidException
 
 class NetBeansVirtualFileFinder(private val project: Project,
                                 private val scope: GlobalSearchScope) : VirtualFileKotlinClassFinder() {
@@ -49,29 +45,7 @@ class NetBeansVirtualFileFinder(private val project: Project,
     val index: JvmDependenciesIndex
         get() = KotlinEnvironment.getEnvironment(project).index
 
-    private fun isClassFileName(name: String?): Boolean {
-        if (name == null) return false
-
-        val suffixClass = ".class".toCharArray()
-        val suffixClass2 = ".CLASS".toCharArray()
-        val nameLength = name.length
-        val suffixLength = suffixClass.size
-        if (nameLength < suffixLength) return false
-
-        for (i in 0 until suffixLength) {
-            val c = name[nameLength - i - 1]
-            val suffixIndex = suffixLength - i - 1
-
-            if (c != suffixClass[suffixIndex] && c != suffixClass2[suffixIndex]) return false
-        }
-        return true
-    }
-
-    private fun getJarPath(file: FileObject) = file.fileSystem?.displayName
-
     override fun findVirtualFileWithHeader(classId: ClassId): VirtualFile? {
-        val proxy = project.getFullClassPath()
-
         val classFqName = if (classId.isNestedClass) {
             val className = classId.shortClassName.asString()
             val fqName = classId.asSingleFqName().asString()
@@ -80,27 +54,9 @@ class NetBeansVirtualFileFinder(private val project: Project,
                     .append("$").append(className).append(".class").toString()
         } else "${classId.asSingleFqName().asString().replace(".", "/")}.class"
 
-        val resource = proxy?.findResource(classFqName) ?: return if (isClassFileName(classFqName)) {
-            KotlinEnvironment.getEnvironment(project).getVirtualFile(classFqName)
-        } else throw IllegalArgumentException("Virtual file not found for $classFqName")
-
-        val path = resource.toURL().path
-        if (path.contains("!/")) {
-            try {
-                val pathToJar = getJarPath(resource) ?: return null
-                val splittedPath = path.split("!/")
-                if (splittedPath.size < 2) return null
-
-                return KotlinEnvironment.Companion.getEnvironment(project).getVirtualFileInJar(pathToJar, splittedPath[1])
-            } catch (ex: FileStateInvalidException) {
-                KotlinLogger.INSTANCE.logException("Can't get file in jar", ex)
-                return null
-            }
-        }
-
-        if (isClassFileName(path)) {
-            return KotlinEnvironment.Companion.getEnvironment(project).getVirtualFile(path)
-        } else throw IllegalArgumentException("Virtual file not found for $path")
+        // jars answer from the index of their central directory without being opened
+        val environment = KotlinEnvironment.getEnvironment(project)
+        return environment.classFileLookups.getOrFind(classId) { environment.findInClasspath(classFqName) }
     }
 
     private fun classFileName(jClass: JavaClass): String {
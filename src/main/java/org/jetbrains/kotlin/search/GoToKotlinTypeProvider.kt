@@ -16,32 +16,27 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.search
 
-import java.io.File
 import org.jetbrains.kotlin.navigation.netbeans.openFileAtOffset
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.netbeans.api.project.ui.OpenProjects
 import org.netbeans.spi.quicksearch.SearchProvider
 import org.netbeans.spi.quicksearch.SearchRequest
 import org.netbeans.spi.quicksearch.SearchResponse
-import org.openide.filesystems.FileUtil
 
 class GoToKotlinTypeProvider : SearchProvider {
 
     override fun evaluate(request: SearchRequest, response: SearchResponse) {
-        OpenProjects.getDefault().openProjects
-                .flatMap { KotlinTypeSearcher.searchDeclaration(it, request.text) }
-                .forEach {
-                    val file = it.first
-                    it.second.forEach {
-                        val html = "${it.name} (${file.packageFqName.asString()})"
-                        response.addResult(action@{
-                            val f = File(file.virtualFile.path)
-                            val fo = FileUtil.toFileObject(f) ?: return@action
-
-                            val doc = ProjectUtils.getDocumentFromFileObject(fo) ?: return@action
-                            openFileAtOffset(doc, it.textRange.startOffset)
-                        }, html)
-                    }
-                }
+        val matches = KotlinTypeSearcher.searchDeclaration(OpenProjects.getDefault().openProjects.toList(), request.text)
+        for (match in matches) {
+            val file = match.location.file
+            val declaration = match.location.declaration
+            val html = "${declaration.name} (${declaration.packageName})"
+            val accepted = response.addResult(action@{
+                val doc = ProjectUtils.getDocumentFromFileObject(file) ?: return@action
+                openFileAtOffset(doc, declaration.offset)
+            }, html)
+            
+            if (!accepted) break
+        }
     }
 }
\ No newline at end of file
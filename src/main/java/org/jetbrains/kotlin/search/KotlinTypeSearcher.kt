@@ -16,23 +16,20 @@
  *******************************************************************************/
 package org.jetbrains.kotlin.search
 
-import org.jetbrains.kotlin.psi.KtFile
-import org.jetbrains.kotlin.utils.ProjectUtils
+import org.jetbrains.kotlin.indexer.KotlinSymbolIndex
+import org.jetbrains.kotlin.indexer.SymbolMatch
 import org.netbeans.api.project.Project
 
 object KotlinTypeSearcher {
     
-    private fun findDeclarationsInFile(ktFile: KtFile, 
-                                       fqName: String) = ktFile.declarations
-            .filter { it.name?.contains(fqName) == true }
+    fun searchDeclaration(project: Project, namePart: String, 
+                          limit: Int = KotlinSymbolIndex.DEFAULT_LIMIT): List<SymbolMatch> = KotlinSymbolIndex.getInstance(project).search(namePart, limit)
     
-    fun searchDeclaration(project: Project, fqName: String) = ProjectUtils.getSourceFilesWithDependencies(project)
-            .mapNotNull {
-                val declarationsInFile = findDeclarationsInFile(it, fqName)
-                if (declarationsInFile.isNotEmpty()) {
-                    it to findDeclarationsInFile(it, fqName)
-                }
-                else null
-            }
+    fun searchDeclaration(projects: Collection<Project>, namePart: String,
+                          limit: Int = KotlinSymbolIndex.DEFAULT_LIMIT): List<SymbolMatch> = projects
+            .flatMap { searchDeclaration(it, namePart, limit) }
+            .distinctBy { it.location.file to it.location.declaration.offset }
+            .sortedWith(SymbolMatch.BY_RANK)
+            .take(limit)
     
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import org.netbeans.modules.csl.api.StructureItem
 import org.netbeans.modules.csl.api.StructureScanner
 import org.netbeans.modules.csl.spi.ParserResult
 import org.openide.filesystems.FileObject
+import org.jetbrains.kotlin.resolve.AnalysisLevel
 import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.psi.*
@@ -33,7 +34,8 @@ class KotlinStructureScanner : StructureScanner {
     
     override fun scan(info: ParserResult): List<StructureItem> {
         val file = info.snapshot.source.fileObject ?: return emptyList()
-        val context = (info as KotlinParserResult).analysisResult?.analysisResult?.bindingContext ?: return emptyList()
+        val context = (info as KotlinParserResult).getAnalysisResult(AnalysisLevel.DECLARATIONS)
+                ?.analysisResult?.bindingContext ?: BindingContext.EMPTY
         
         return structureItems(file, context)
     }
@@ -32,6 +32,7 @@ object KotlinImageProvider {
 
     val typeImage = ImageIcon(ImageUtilities.loadImage("${imagesLocation}class.png"))
     val functionImage = ImageIcon(ImageUtilities.loadImage("${imagesLocation}method.png"))
+    val propertyImage = ImageIcon(ImageUtilities.loadImage("${imagesLocation}field.png"))
     
     private fun getImageIcon(name: String) = ImageIcon(ImageUtilities.loadImage("$imagesLocation$name"))
 
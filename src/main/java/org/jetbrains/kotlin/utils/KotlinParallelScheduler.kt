@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package org.jetbrains.kotlin.utils
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.RecursiveTask
+
+/**
+ * Fork-join pool for whole-project work such as parsing every file of every module and
+ * generating light classes. Lists are split in halves down to batches, so results always come
+ * back in the order of the input whatever the number of threads.
+ * 
+ * Parallelism defaults to the number of cores and can be set with the
+ * kotlin.netbeans.parallelism system property; 1 keeps everything on the calling thread.
+ */
+object KotlinParallelScheduler {
+    
+    const val PARALLELISM_PROPERTY = "kotlin.netbeans.parallelism"
+    
+    @JvmStatic
+    val parallelism = (Integer.getInteger(PARALLELISM_PROPERTY) ?: Runtime.getRuntime().availableProcessors())
+            .coerceAtLeast(1)
+    
+    private val pool by lazy {
+        val factory = ForkJoinPool.ForkJoinWorkerThreadFactory { pool ->
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool).apply {
+                name = "Kotlin analysis worker $poolIndex"
+                contextClassLoader = KotlinParallelScheduler::class.java.classLoader
+            }
+        }
+        ForkJoinPool(parallelism, factory, null, false)
+    }
+    
+    @JvmStatic
+    @JvmOverloads
+    fun <T, R> map(items: List<T>, batchSize: Int = 1, transform: (T) -> R): List<R> {
+        if (parallelism == 1 || items.size <= batchSize) return items.map(transform)
+        
+        val task = MapTask(items, 0, items.size, batchSize.coerceAtLeast(1), transform)
+        val thread = Thread.currentThread()
+        
+        return if (thread is ForkJoinWorkerThread && thread.pool == pool) task.invoke() else pool.invoke(task)
+    }
+    
+    private class MapTask<T, R>(private val items: List<T>,
+                                private val from: Int,
+                                private val to: Int,
+                                private val batchSize: Int,
+                                private val transform: (T) -> R) : RecursiveTask<List<R>>() {
+        
+        override fun compute(): List<R> {
+            if (to - from <= batchSize) return (from until to).map { transform(items[it]) }
+            
+            val middle = (from + to) ushr 1
+            val left = MapTask(items, from, middle, batchSize, transform).fork()
+            val right = MapTask(items, middle, to, batchSize, transform).compute()
+            
+            return left.join() + right
+        }
+    }
+    
+}
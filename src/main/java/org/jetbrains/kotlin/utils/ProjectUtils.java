@@ -23,10 +23,13 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import javax.swing.text.Document;
 import javax.swing.text.StyledDocument;
+import kotlin.jvm.functions.Function1;
 import org.jetbrains.kotlin.builder.KotlinPsiManager;
 import org.jetbrains.kotlin.bundledcompiler.BundledCompiler;
 import org.jetbrains.kotlin.projectsextensions.KotlinProjectHelper;
@@ -36,8 +39,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.log.KotlinLogger;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.java.project.JavaProjectConstants;
 import org.netbeans.api.project.FileOwnerQuery;
 import org.netbeans.api.project.Project;
+import org.netbeans.api.project.SourceGroup;
+import org.netbeans.api.project.Sources;
 import org.netbeans.api.project.ui.OpenProjects;
 import org.openide.cookies.EditorCookie;
 import org.openide.filesystems.FileObject;
@@ -51,6 +57,7 @@ public class ProjectUtils {
 
     private static final String LIB_FOLDER = "lib";
     private static final String LIB_EXTENSION = "jar";
+    private static final int PARSE_BATCH_SIZE = 8;
     public static final String FILE_SEPARATOR = System.getProperty("file.separator");
     public static String KT_HOME;
 
@@ -166,14 +173,7 @@ public class ProjectUtils {
     
     @NotNull
     public static List<KtFile> getSourceFiles(@NotNull Project project){
-        List<KtFile> ktFiles = new ArrayList<>();
-        
-        for (FileObject file : KotlinPsiManager.INSTANCE.getFilesByProject(project, true)){
-            ktFiles.add(getKtFile(file));
-            
-        }
-        
-        return ktFiles; 
+        return parseFiles(sortedFiles(project, true));
     }
     
     @NotNull
@@ -182,10 +182,16 @@ public class ProjectUtils {
         if (project.getClass().getName().
                     equals("org.netbeans.modules.maven.NbMavenProjectImpl")) {
             List<? extends Project> depProjects = MavenHelper.getDependencyProjects(project);
-            for (Project depProject : depProjects) {
-                for (FileObject file : KotlinPsiManager.INSTANCE.getFilesByProject(depProject, false)){
-                    depFiles.add(getKtFile(file));
-                }
+            // modules are parsed in parallel, and so are the files of each module
+            List<List<KtFile>> depProjectFiles = KotlinParallelScheduler.map(depProjects, 
+                    new Function1<Project, List<KtFile>>() {
+                        @Override
+                        public List<KtFile> invoke(Project depProject) {
+                            return parseFiles(sortedFiles(depProject, false));
+                        }
+                    });
+            for (List<KtFile> files : depProjectFiles) {
+                depFiles.addAll(files);
             }
         }
         List<KtFile> files = getSourceFiles(project);
@@ -193,6 +199,66 @@ public class ProjectUtils {
         
         return files;
     }
+    
+    /**
+     * Source roots of the project as declared by its Java source groups. Projects
+     * without Java source groups fall back to the src folder. Roots nested in other
+     * roots are dropped, so each root may be watched with a recursive listener.
+     */
+    @NotNull
+    public static List<FileObject> getSourceRoots(@NotNull Project project) {
+        Set<FileObject> roots = new LinkedHashSet<>();
+        Sources sources = org.netbeans.api.project.ProjectUtils.getSources(project);
+        for (SourceGroup group : sources.getSourceGroups(JavaProjectConstants.SOURCES_TYPE_JAVA)) {
+            roots.add(group.getRootFolder());
+        }
+        if (roots.isEmpty()) {
+            FileObject srcDir = project.getProjectDirectory().getFileObject("src");
+            if (srcDir != null) roots.add(srcDir);
+        }
+        
+        List<FileObject> topLevelRoots = new ArrayList<>();
+        for (FileObject root : roots) {
+            boolean nested = false;
+            for (FileObject other : roots) {
+                if (other != root && FileUtil.isParentOf(other, root)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) topLevelRoots.add(root);
+        }
+        
+        return topLevelRoots;
+    }
+    
+    private static List<FileObject> sortedFiles(Project project, boolean test) {
+        List<FileObject> files = new ArrayList<>(KotlinPsiManager.INSTANCE.getFilesByProject(project, test));
+        Collections.sort(files, new Comparator<FileObject>() {
+            @Override
+            public int compare(FileObject first, FileObject second) {
+                return first.getPath().compareTo(second.getPath());
+            }
+        });
+        
+        return files;
+    }
+    
+    private static List<KtFile> parseFiles(List<FileObject> files) {
+        List<KtFile> ktFiles = new ArrayList<>();
+        List<KtFile> parsed = KotlinParallelScheduler.map(files, PARSE_BATCH_SIZE, 
+                new Function1<FileObject, KtFile>() {
+                    @Override
+                    public KtFile invoke(FileObject file) {
+                        return getKtFile(file);
+                    }
+                });
+        for (KtFile ktFile : parsed) {
+            if (ktFile != null) ktFiles.add(ktFile);
+        }
+        
+        return ktFiles;
+    }
 
     public static Project getKotlinProjectForFileObject(FileObject file) {
         return FileOwnerQuery.getOwner(file);
@@ -22,7 +22,7 @@ class CompletionTest : KotlinTestCase("Completion test", "completion") {
         
         val resultWithProvider = KotlinAnalyzer.analyzeFile(project, ktFile)
         
-        val completionItems = createProposals(doc, caret, resultWithProvider, "")
+        val completionItems = createProposals(doc, caret, ktFile, resultWithProvider, "")
         assertNotNull(completionItems)
         
         val completions = completionItems.map { it.sortText }
@@ -68,5 +68,12 @@ class CompletionTest : KotlinTestCase("Completion test", "completion") {
     fun testNonImported() = doTest("checkUnimported.kt", listOf("completion.pack.function1", "completion.pack.function2"))
 
     fun testNonImportedPrivate() = doTest("checkNonImportedPrivate.kt")
+    
+    fun testNonImportedExtension() = doTest("checkUnimportedExtension.kt", listOf("completion.pack.stringExtension"))
+    
+    fun testNonImportedSupertypeExtension() = doTest("checkUnimportedSupertypeExtension.kt", 
+            listOf("completion.pack.charSequenceExtension"))
+    
+    fun testNonImportedGenericExtension() = doTest("checkUnimportedGenericExtension.kt", listOf("completion.pack.anyExtension"))
         
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package diagnostics
+
+import org.jetbrains.kotlin.builder.KotlinIncrementalReparser
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.AnalysisLevel
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
+import org.jetbrains.kotlin.resolve.KotlinAnalyzer
+import utils.KotlinTestCase
+
+class AnalysisCacheTest : KotlinTestCase("Analysis cache test", "analysisCache") {
+    
+    private val file = dir.getFileObject("cached.kt")
+    private val text = file.asText()
+    
+    private fun parse() = KotlinPsiManager.parseText(text, file)!!
+    
+    private fun analyze(ktFile: KtFile) = KotlinAnalyzer.analyzeFile(project, ktFile)
+    
+    fun testHit() {
+        val cache = KotlinAnalysisCache()
+        val ktFile = parse()
+        
+        val first = cache.getOrAnalyze(ktFile) { analyze(it) }
+        val second = cache.getOrAnalyze(ktFile) { fail("cached result expected"); null }
+        
+        assertSame(first, second)
+        assertEquals(1L, cache.hits)
+        assertEquals(1L, cache.misses)
+    }
+    
+    fun testLevels() {
+        val cache = KotlinAnalysisCache()
+        val ktFile = parse()
+        cache.getOrAnalyze(ktFile) { analyze(it) }
+        
+        assertNotNull(cache.get(ktFile, AnalysisLevel.FULL))
+        assertNotNull(cache.get(ktFile, AnalysisLevel.DECLARATIONS))
+    }
+    
+    fun testChangedContentIsMissed() {
+        val cache = KotlinAnalysisCache()
+        val ktFile = parse()
+        cache.getOrAnalyze(ktFile) { analyze(it) }
+        
+        assertTrue(KotlinIncrementalReparser.reparse(ktFile, text.replaceFirst("var result = 0", "var result = 1")))
+        
+        assertNull(cache.get(ktFile))
+    }
+    
+    fun testInvalidate() {
+        val cache = KotlinAnalysisCache()
+        val ktFile = parse()
+        cache.getOrAnalyze(ktFile) { analyze(it) }
+        
+        cache.invalidate(ktFile)
+        
+        assertNull(cache.get(ktFile))
+        assertEquals(0, cache.size)
+        assertEquals(0L, cache.retainedWeight)
+    }
+    
+    fun testResultIsStoredUnderStampBeforeAnalysis() {
+        val cache = KotlinAnalysisCache()
+        val ktFile = parse()
+        
+        cache.getOrAnalyze(ktFile) { 
+            val result = analyze(it)
+            // the file is edited while the analysis is running
+            assertTrue(KotlinIncrementalReparser.reparse(it, text.replaceFirst("var result = 0", "var result = 1")))
+            result
+        }
+        
+        assertNull(cache.get(ktFile))
+    }
+    
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package diagnostics
+
+import com.intellij.openapi.progress.ProcessCanceledException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
+import org.jetbrains.kotlin.resolve.AnalysisPriority
+import org.jetbrains.kotlin.resolve.KotlinAnalysisScheduler
+import utils.KotlinTestCase
+
+class AnalysisSchedulerTest : KotlinTestCase("Analysis scheduler test", "diagnostics") {
+    
+    fun testBackgroundRunIsPreempted() {
+        val attempts = AtomicInteger()
+        val started = CountDownLatch(1)
+        val preempted = CountDownLatch(1)
+        val focusedDone = CountDownLatch(1)
+        var backgroundResult: String? = null
+        
+        val background = thread {
+            backgroundResult = KotlinAnalysisScheduler.run(AnalysisPriority.BACKGROUND, "Background run") {
+                attempts.incrementAndGet()
+                started.countDown()
+                while (focusedDone.count > 0) {
+                    try {
+                        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
+                    } catch (e: ProcessCanceledException) {
+                        preempted.countDown()
+                        throw e
+                    }
+                    Thread.sleep(1)
+                }
+                "background"
+            }
+        }
+        
+        assertTrue(started.await(10, TimeUnit.SECONDS))
+        val focusedResult = KotlinAnalysisScheduler.run(AnalysisPriority.FOCUSED_EDITOR, "Focused run") {
+            preempted.await(10, TimeUnit.SECONDS)
+        }
+        focusedDone.countDown()
+        background.join()
+        
+        assertEquals(true, focusedResult)
+        assertEquals("background", backgroundResult)
+        assertEquals(2, attempts.get())
+        assertEquals(0, KotlinAnalysisScheduler.queueDepth)
+    }
+    
+    fun testPreemptingRunStartsAfterPreemptedRunStopped() {
+        val started = CountDownLatch(1)
+        val stopped = AtomicInteger()
+        val focusedDone = CountDownLatch(1)
+        
+        val background = thread {
+            KotlinAnalysisScheduler.run(AnalysisPriority.BACKGROUND, "Background run") {
+                started.countDown()
+                try {
+                    while (focusedDone.count > 0) {
+                        ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
+                        Thread.sleep(1)
+                    }
+                } finally {
+                    // a canceled run may take a while to unwind
+                    Thread.sleep(100)
+                    stopped.incrementAndGet()
+                }
+            }
+        }
+        
+        assertTrue(started.await(10, TimeUnit.SECONDS))
+        val stoppedBeforeFocused = KotlinAnalysisScheduler.run(AnalysisPriority.FOCUSED_EDITOR, "Focused run") {
+            stopped.get()
+        }
+        focusedDone.countDown()
+        background.join()
+        
+        assertEquals(1, stoppedBeforeFocused)
+    }
+    
+}
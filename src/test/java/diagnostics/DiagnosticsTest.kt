@@ -1,8 +1,14 @@
 package diagnostics
 
 import utils.*
+import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
+import org.jetbrains.kotlin.resolve.AnalysisLevel
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
+import org.jetbrains.kotlin.resolve.CancellationToken
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCancellation
+import org.jetbrains.kotlin.resolve.KotlinAnalysisCache
 import org.jetbrains.kotlin.resolve.KotlinAnalyzer
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
 import org.jetbrains.kotlin.utils.ProjectUtils
 import org.jetbrains.kotlin.diagnostics.Severity
 import org.jetbrains.kotlin.resolve.AnalyzingUtils
@@ -86,4 +92,36 @@ class DiagnosticsTest : KotlinTestCase("Diagnostics test", "diagnostics") {
 
     fun testCastIsNeverSucceed() = doTest("checkCastIsNeverSucceed.kt", listOf(Pair(95, 97), Pair(79, 82)), listOf(Severity.WARNING, Severity.WARNING))
 
-}
\ No newline at end of file
+    fun testCanceledAnalysisIsNotCached() {
+        val ktFile = ProjectUtils.getKtFile(dir.getFileObject("checkTypeMismatch.kt"))
+        val token = CancellationToken().apply { cancel() }
+        KotlinAnalysisCache.getInstance(project).invalidate(ktFile)
+        
+        assertNull(KotlinParser.getAnalysisResult(ktFile, project, AnalysisLevel.FULL, token))
+        assertNull(KotlinAnalysisCache.getInstance(project).get(ktFile))
+        assertNotNull(KotlinParser.getAnalysisResult(ktFile, project))
+    }
+
+    fun testCanceledRunDropsResolveSession() {
+        val token = CancellationToken()
+        var used: KotlinResolveSession? = null
+        
+        assertNull(KotlinAnalysisCancellation.runCancelable(token, "Session test") {
+            used = KotlinResolveSession.getInstance(project)
+            token.cancel()
+            KotlinAnalysisCancellation.checkCanceled()
+        })
+        
+        assertNotNull(used)
+        assertNotSame(used, KotlinResolveSession.getInstance(project))
+    }
+    
+    fun testCompletedRunKeepsResolveSession() {
+        val session = KotlinAnalysisCancellation.runCancelable(CancellationToken(), "Session test") {
+            KotlinResolveSession.getInstance(project)
+        }
+        
+        assertSame(session, KotlinResolveSession.getInstance(project))
+    }
+
+}
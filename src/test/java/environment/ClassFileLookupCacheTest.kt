@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import com.intellij.testFramework.LightVirtualFile
+import org.jetbrains.kotlin.model.ClassFileLookupCache
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import utils.KotlinTestCase
+
+class ClassFileLookupCacheTest : KotlinTestCase("Class file lookup cache test", "classFileLookups") {
+    
+    private val existing = ClassId.topLevel(FqName("a.Existing"))
+    private val missing = ClassId.topLevel(FqName("a.Missing"))
+    
+    fun testHitsAndMissesAreCached() {
+        val cache = ClassFileLookupCache()
+        val file = LightVirtualFile("Existing.class")
+        var lookups = 0
+        val find: (ClassId) -> LightVirtualFile? = { 
+            lookups++
+            if (it == existing) file else null 
+        }
+        
+        repeat(3) {
+            assertSame(file, cache.getOrFind(existing, find))
+            assertNull(cache.getOrFind(missing, find))
+        }
+        assertEquals(2, lookups)
+        assertEquals(2L, cache.hits.get())
+        assertEquals(2L, cache.negativeHits.get())
+        
+        cache.invalidate()
+        assertNull(cache.getOrFind(missing, find))
+        assertEquals(3, lookups)
+        assertEquals(1L, cache.generation)
+    }
+    
+    fun testLookupRacingWithInvalidationIsNotCached() {
+        val cache = ClassFileLookupCache()
+        var lookups = 0
+        
+        // the classpath changes while the class is looked up
+        assertNull(cache.getOrFind(missing) { 
+            lookups++
+            cache.invalidate()
+            null 
+        })
+        assertNull(cache.getOrFind(missing) { 
+            lookups++
+            null 
+        })
+        assertEquals(2, lookups)
+        assertEquals(0L, cache.negativeHits.get())
+    }
+    
+}
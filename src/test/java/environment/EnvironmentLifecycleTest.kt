@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
+import utils.KotlinTestCase
+
+class EnvironmentLifecycleTest : KotlinTestCase("Environment lifecycle test", "environment") {
+    
+    fun testDisposedEnvironmentIsCreatedAgain() {
+        val environment = KotlinEnvironment.getEnvironment(project)
+        assertSame(environment, KotlinEnvironment.getEnvironment(project))
+        assertTrue(KotlinEnvironmentManager.retainedMemory(project) > 0)
+        
+        KotlinEnvironmentManager.dispose(project)
+        assertFalse(KotlinEnvironmentManager.isCreated(project))
+        assertEquals(0, KotlinEnvironmentManager.retainedMemory(project))
+        
+        assertNotSame(environment, KotlinEnvironment.getEnvironment(project))
+        assertTrue(KotlinEnvironmentManager.isCreated(project))
+    }
+    
+    fun testApplicationEnvironmentIsShared() {
+        val environment = KotlinEnvironment.getEnvironment(project)
+        KotlinEnvironmentManager.dispose(project)
+        
+        assertSame(environment.applicationEnvironment, KotlinEnvironment.getEnvironment(project).applicationEnvironment)
+    }
+    
+    fun testLeasedEnvironmentIsNotEvicted() {
+        KotlinEnvironmentManager.idleTimeoutMinutes = 30
+        val idle = 31 * 60 * 1000L
+        
+        KotlinEnvironmentManager.withEnvironment(project) { environment ->
+            KotlinEnvironmentManager.evictIdle(System.currentTimeMillis() + idle)
+            assertTrue(KotlinEnvironmentManager.isCreated(project))
+            assertFalse(environment.isDisposed)
+        }
+        
+        KotlinEnvironmentManager.evictIdle(System.currentTimeMillis() + idle)
+        assertFalse(KotlinEnvironmentManager.isCreated(project))
+    }
+    
+    fun testDisposeWaitsForLease() {
+        val environment = KotlinEnvironmentManager.withEnvironment(project) { environment ->
+            KotlinEnvironmentManager.dispose(project)
+            assertFalse(KotlinEnvironmentManager.isCreated(project))
+            assertFalse(environment.isDisposed)
+            environment
+        }
+        
+        assertTrue(environment.isDisposed)
+    }
+    
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import com.intellij.core.CoreJarFileSystem
+import java.io.File
+import java.util.concurrent.TimeUnit
+import org.jetbrains.kotlin.model.JarCentralDirectory
+import org.netbeans.spi.java.classpath.support.ClassPathSupport
+import org.openide.filesystems.FileUtil
+import utils.KotlinTestCase
+import utils.createJar
+
+class JarCentralDirectoryTest : KotlinTestCase("Jar central directory test", "jarDirectory") {
+    
+    private val classNames = (0 until 200).flatMap { p -> (0 until 25).map { "p$p/sub/C$it.class" } }
+    private val missingNames = classNames.map { it.replace(".class", "Missing.class") }
+    
+    private val jar: File by lazy { 
+        createJar(File(getWorkDir(), "jars"), "classes.jar", classNames, byteArrayOf(0xca.toByte(), 0xfe.toByte())) 
+    }
+    
+    fun testLookup() {
+        val directory = JarCentralDirectory.open(jar)!!
+        
+        assertEquals(classNames.size, directory.size)
+        assertTrue(classNames.all { it in directory })
+        assertTrue(missingNames.none { it in directory })
+        assertEquals(0L, directory.offsetOf(classNames.first()))
+        assertEquals(-1L, directory.offsetOf("p0/sub/Missing.class"))
+        assertTrue(directory.hasDirectory("p1"))
+        assertTrue(directory.hasDirectory("p1/sub"))
+        assertFalse(directory.hasDirectory("p1/su"))
+        assertFalse(directory.hasDirectory("q"))
+    }
+    
+    // the index answers as the jar file system and the NetBeans class path used for lookups before
+    fun testLookupMatchesOtherLookups() {
+        val names = classNames + missingNames
+        val directory = JarCentralDirectory.open(jar)!!
+        val fileSystem = CoreJarFileSystem()
+        val classPath = ClassPathSupport.createClassPath(FileUtil.urlForArchiveOrDir(jar))
+        
+        names.forEach { 
+            assertEquals(it, fileSystem.findFileByPath("${jar.path}!/$it") != null, it in directory)
+            assertEquals(it, classPath.findResource(it) != null, it in directory)
+        }
+    }
+    
+    fun testClosedDirectoryFindsNothing() {
+        val directory = JarCentralDirectory.open(jar)!!
+        directory.close()
+        
+        assertFalse(classNames.first() in directory)
+        assertEquals(-1L, directory.offsetOf(classNames.first()))
+        assertFalse(directory.hasDirectory("p1"))
+        // closing twice does nothing
+        directory.close()
+    }
+    
+    // run with -Dkotlin.benchmarks=true, the timings are only printed
+    fun testLookupBenchmark() {
+        if (!java.lang.Boolean.getBoolean("kotlin.benchmarks")) return
+        
+        val names = classNames + missingNames
+        val directory = JarCentralDirectory.open(jar)!!
+        val fileSystem = CoreJarFileSystem()
+        val classPath = ClassPathSupport.createClassPath(FileUtil.urlForArchiveOrDir(jar))
+        
+        val timings = linkedMapOf<String, Long>(
+                "central directory" to measure(names) { it in directory },
+                "jar file system" to measure(names) { fileSystem.findFileByPath("${jar.path}!/$it") != null },
+                "class path" to measure(names) { classPath.findResource(it) != null })
+        directory.close()
+        
+        println("Lookups of ${names.size} names: " + timings.entries.joinToString { "${it.key}: ${it.value} ms" })
+    }
+    
+    // best of several rounds after a warm-up round
+    private fun measure(names: List<String>, lookup: (String) -> Boolean): Long {
+        names.forEach { lookup(it) }
+        
+        return (1..5).map { 
+            val start = System.nanoTime()
+            names.forEach { lookup(it) }
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        }.min()!!
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import com.intellij.core.CoreJarFileSystem
+import java.io.File
+import org.jetbrains.kotlin.model.JarMetadataCache
+import utils.KotlinTestCase
+import utils.createJar
+
+class JarMetadataCacheTest : KotlinTestCase("Jar metadata cache test", "jarMetadata") {
+    
+    private val entries = listOf("a/A.class", "a/A\$Nested.class", "a/b/B.class", "META-INF/lib.kotlin_module")
+    
+    fun testMetadataIsReadFromDisk() {
+        val directory = File(getWorkDir(), "jars")
+        directory.mkdirs()
+        val jar = createJar(directory, "lib.jar", entries)
+        val root = CoreJarFileSystem().findFileByPath("${jar.path}!/")!!
+        
+        val cache = JarMetadataCache(File(directory, "cache"))
+        val scanned = cache.get(jar, root)
+        assertEquals(setOf("A"), scanned.classNames["a"])
+        assertEquals(setOf("a", "a.b"), scanned.packages)
+        assertTrue(scanned.hasPackage("a"))
+        assertFalse(scanned.hasPackage("c"))
+        assertEquals(1L, cache.misses)
+        
+        val cached = JarMetadataCache(File(directory, "cache")).let { 
+            val metadata = it.get(jar, root)
+            assertEquals(1L, it.hits)
+            metadata
+        }
+        assertEquals(scanned.classNames, cached.classNames)
+        assertEquals(listOf("lib.kotlin_module"), cached.moduleMappings.keys.toList())
+        assertTrue(byteArrayOf(1, 2, 3).contentEquals(cached.moduleMappings["lib.kotlin_module"]!!))
+    }
+    
+    fun testChangedJarInvalidatesEntry() {
+        val directory = File(getWorkDir(), "changed")
+        directory.mkdirs()
+        val cache = JarMetadataCache(File(directory, "cache"))
+        
+        val jar = createJar(directory, "lib.jar", entries)
+        cache.get(jar, CoreJarFileSystem().findFileByPath("${jar.path}!/")!!)
+        
+        createJar(directory, "lib.jar", listOf("c/C.class", "c/D.class"))
+        jar.setLastModified(jar.lastModified() + 2000)
+        val metadata = cache.get(jar, CoreJarFileSystem().findFileByPath("${jar.path}!/")!!)
+        assertEquals(2L, cache.misses)
+        assertEquals(0L, cache.hits)
+        assertEquals(setOf("c"), metadata.packages)
+        assertEquals(setOf("C", "D"), metadata.classNames["c"])
+    }
+    
+    fun testNumberOfEntriesIsBounded() {
+        val directory = File(getWorkDir(), "bounded")
+        directory.mkdirs()
+        val cacheDirectory = File(directory, "cache")
+        val cache = JarMetadataCache(cacheDirectory, 2)
+        
+        val jars = (1..3).map { createJar(directory, "lib$it.jar", entries) }
+        jars.forEach { cache.get(it, CoreJarFileSystem().findFileByPath("${it.path}!/")!!) }
+        assertEquals(2, cacheDirectory.listFiles().size)
+        
+        // the entry written last is kept
+        cache.get(jars.last(), CoreJarFileSystem().findFileByPath("${jars.last().path}!/")!!)
+        assertEquals(1L, cache.hits)
+    }
+    
+}
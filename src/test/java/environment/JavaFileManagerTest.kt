@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import com.intellij.psi.PsiManager
+import java.io.File
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinJavaFileManager
+import utils.KotlinTestCase
+
+class JavaFileManagerTest : KotlinTestCase("Java file manager test", "javaFileManager") {
+    
+    fun testRemovedRootIsNotSearched() {
+        val folder = File(getWorkDir(), "classes")
+        File(folder, "a/b").mkdirs()
+        val environment = KotlinEnvironment.getEnvironment(project)
+        val root = environment.applicationEnvironment.localFileSystem.findFileByPath(folder.path)!!
+        
+        val fileManager = KotlinJavaFileManager(PsiManager.getInstance(environment.project))
+        assertNull(fileManager.findPackage("a.b"))
+        
+        fileManager.addToClasspath(root)
+        assertNotNull(fileManager.findPackage("a.b"))
+        assertEquals(listOf(root), fileManager.classpath)
+        
+        fileManager.removeFromClasspath(root)
+        assertNull(fileManager.findPackage("a.b"))
+        assertTrue(fileManager.classpath.isEmpty())
+    }
+    
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package environment
+
+import java.io.File
+import org.jetbrains.kotlin.model.KotlinEnvironment
+import org.jetbrains.kotlin.model.KotlinEnvironmentManager
+import org.jetbrains.kotlin.model.SharedJarIndex
+import utils.KotlinTestCase
+import utils.createJar
+
+class SharedJarIndexTest : KotlinTestCase("Shared jar index test", "jarIndex") {
+    
+    private fun jar(name: String) = createJar(File(getWorkDir(), "jars"), name, listOf("a/A.class"))
+    
+    fun testSegmentIsSharedUntilLastRelease() {
+        val jar = jar("shared.jar")
+        val size = SharedJarIndex.size
+        
+        val first = SharedJarIndex.acquire(jar)!!
+        val second = SharedJarIndex.acquire(jar)!!
+        assertSame(first, second)
+        assertEquals(size + 1, SharedJarIndex.size)
+        assertNotNull(first.findFile("a/A.class"))
+        
+        SharedJarIndex.release(first)
+        assertEquals(size + 1, SharedJarIndex.size)
+        SharedJarIndex.release(second)
+        assertEquals(size, SharedJarIndex.size)
+        // the central directory of a released segment is unmapped
+        assertNull(first.findFile("a/A.class"))
+        
+        val third = SharedJarIndex.acquire(jar)!!
+        assertNotSame(first, third)
+        SharedJarIndex.release(third)
+    }
+    
+    fun testModifiedJarGetsNewSegment() {
+        val jar = jar("modified.jar")
+        val old = SharedJarIndex.acquire(jar)!!
+        
+        jar.setLastModified(jar.lastModified() + 2000)
+        val new = SharedJarIndex.acquire(jar)!!
+        assertNotSame(old, new)
+        assertEquals(jar.lastModified(), new.timestamp)
+        
+        SharedJarIndex.release(old)
+        SharedJarIndex.release(new)
+    }
+    
+    fun testDisposedEnvironmentReleasesSegments() {
+        val environment = KotlinEnvironment.getEnvironment(project)
+        val segment = environment.roots.mapNotNull { environment.getJarSegment(it.file) }.first()
+        val jar = File(segment.path)
+        
+        // held by the environment and by the test
+        assertSame(segment, SharedJarIndex.acquire(jar))
+        KotlinEnvironmentManager.dispose(project)
+        
+        // only the reference of the test is left, releasing it drops the segment
+        SharedJarIndex.release(segment)
+        val reopened = SharedJarIndex.acquire(jar)!!
+        assertNotSame(segment, reopened)
+        SharedJarIndex.release(reopened)
+    }
+    
+}
@@ -22,6 +22,7 @@ import org.jetbrains.kotlin.highlighter.KotlinTokenScanner
 import org.jetbrains.kotlin.highlighter.TokenType
 import org.jetbrains.kotlin.highlighter.netbeans.KotlinToken
 import org.jetbrains.kotlin.highlighter.netbeans.KotlinTokenId
+import org.netbeans.api.lexer.TokenHierarchy
 import org.netbeans.api.project.Project
 import org.openide.filesystems.FileObject
 import utils.*
@@ -82,4 +83,29 @@ class HighlightingTest : KotlinTestCase("Highlighting test", "highlighting") {
     
     fun testTextWithTokenInside() = doTest("textWithTokenInside.kt")
     
+    fun testStringTemplates() {
+        doTest("stringTemplates.kt", TokenType.KEYWORD, TokenType.KEYWORD, TokenType.KEYWORD, TokenType.KEYWORD,
+                TokenType.STRING, TokenType.STRING, TokenType.STRING, TokenType.STRING, TokenType.STRING,
+                TokenType.STRING, TokenType.STRING, TokenType.STRING, TokenType.KEYWORD, TokenType.STRING,
+                TokenType.STRING, TokenType.KEYWORD, TokenType.KEYWORD, TokenType.STRING, TokenType.KEYWORD,
+                TokenType.STRING, TokenType.MULTI_LINE_COMMENT, TokenType.KEYWORD, TokenType.STRING, TokenType.STRING)
+    }
+    
+    fun testLexerMatchesScanner() {
+        val doc = getDocumentForFileObject(dir, "stringTemplates.kt")
+        val text = doc.getText(0, doc.length)
+        
+        val scannerTypes = KotlinTokenScanner(text).tokens
+                .filter { it.type != TokenType.EOF }
+                .map { it.type.getId() }
+        
+        val sequence = TokenHierarchy.create(text, KotlinTokenId.getLanguage()).tokenSequence(KotlinTokenId.getLanguage())!!
+        val lexerTypes = arrayListOf<Int>()
+        while (sequence.moveNext()) {
+            lexerTypes.add(sequence.token().id().ordinal())
+        }
+        
+        assertEquals(scannerTypes, lexerTypes)
+    }
+    
 }
\ No newline at end of file
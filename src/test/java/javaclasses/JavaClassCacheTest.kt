@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package javaclasses
+
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.resolve.lang.java.NetBeansJavaClassCache
+import org.jetbrains.kotlin.resolve.lang.java.NetBeansJavaClassFinder
+import utils.KotlinTestCase
+
+class JavaClassCacheTest : KotlinTestCase("Java class cache test", "javaClasses") {
+    
+    private val existing = ClassId.topLevel(FqName("javaClasses.ClassWithMembers"))
+    private val missing = ClassId.topLevel(FqName("javaClasses.MissingClass"))
+    
+    fun testClassesAreReused() {
+        val finder = NetBeansJavaClassFinder().apply { setProjectScope(project) }
+        val cache = NetBeansJavaClassCache.getInstance(project)
+        cache.clear()
+        
+        val javaClass = finder.findClass(existing)
+        assertNotNull(javaClass)
+        assertSame(javaClass, finder.findClass(existing))
+        assertSame(javaClass, NetBeansJavaClassFinder().apply { setProjectScope(project) }.findClass(existing))
+        
+        val misses = cache.misses.get()
+        assertNull(finder.findClass(missing))
+        assertNull(finder.findClass(missing))
+        assertEquals(misses + 1, cache.misses.get())
+        
+        cache.clear()
+        assertNotSame(javaClass, finder.findClass(existing))
+    }
+    
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package javaclasses
+
+import org.jetbrains.kotlin.descriptors.Visibilities
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.resolve.lang.java.JavaEnvironment
+import org.jetbrains.kotlin.resolve.lang.java.findType
+import org.jetbrains.kotlin.resolve.lang.java.structure.NetBeansJavaClass
+import utils.KotlinTestCase
+
+class JavaClassSnapshotTest : KotlinTestCase("Java class snapshot test", "javaClasses") {
+
+    private val className = "javaClasses.ClassWithMembers"
+    
+    private fun NetBeansJavaClass.touchAllProperties() = listOf(name, supertypes, innerClasses, outerClass,
+            methods, constructors, fields, visibility, typeParameters, annotations, isDeprecatedInJavaDoc,
+            isAbstract, isStatic, isFinal, findAnnotation(FqName("java.lang.Deprecated")))
+    
+    private fun countTasks(useSnapshots: Boolean): Pair<Long, List<Any?>> {
+        val previous = JavaEnvironment.useClassSnapshots
+        JavaEnvironment.useClassSnapshots = useSnapshots
+        try {
+            val handle = project.findType(className)
+            assertNotNull(handle)
+            
+            val javaClass = NetBeansJavaClass(handle!!, project)
+            val before = JavaEnvironment.userActionTasksCount.get()
+            val values = javaClass.touchAllProperties()
+            
+            return Pair(JavaEnvironment.userActionTasksCount.get() - before, values)
+        } finally {
+            JavaEnvironment.useClassSnapshots = previous
+        }
+    }
+    
+    fun testSnapshotContents() {
+        val previous = JavaEnvironment.useClassSnapshots
+        JavaEnvironment.useClassSnapshots = true
+        try {
+            val handle = project.findType(className)
+            assertNotNull(handle)
+            
+            val javaClass = NetBeansJavaClass(handle!!, project)
+            assertEquals("ClassWithMembers", javaClass.name.asString())
+            assertEquals(1, javaClass.constructors.size)
+            assertEquals(2, javaClass.fields.size)
+            assertEquals(1, javaClass.innerClasses.size)
+            assertEquals(1, javaClass.typeParameters.size)
+            assertEquals(Visibilities.PUBLIC, javaClass.visibility)
+            assertTrue(javaClass.isAbstract)
+            assertFalse(javaClass.isFinal)
+            assertNotNull(javaClass.findAnnotation(FqName("java.lang.Deprecated")))
+        } finally {
+            JavaEnvironment.useClassSnapshots = previous
+        }
+    }
+    
+    fun testSnapshotUsesSingleTask() {
+        val (withSnapshots, snapshotValues) = countTasks(true)
+        val (withoutSnapshots, perPropertyValues) = countTasks(false)
+        
+        assertEquals(1L, withSnapshots)
+        assertTrue(withSnapshots < withoutSnapshots)
+        assertEquals(perPropertyValues.size, snapshotValues.size)
+    }
+    
+}
@@ -19,9 +19,14 @@ package javastubgen
 import org.jetbrains.kotlin.builder.KotlinPsiManager
 import org.jetbrains.kotlin.filesystem.JavaStubGenerator
 import org.jetbrains.kotlin.filesystem.lightclasses.KotlinLightClassGeneration
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassCache
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassCacheEntry
+import org.jetbrains.kotlin.filesystem.lightclasses.LightClassDependencyHash
 import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
 import org.jetbrains.kotlin.resolve.KotlinAnalyzer
+import org.jetbrains.kotlin.resolve.KotlinResolveSession
 import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileUtil
 import utils.*
 
 class JavaStubGeneratorTest : KotlinTestCase("Stub generator test", "stubGen") {
@@ -77,4 +82,63 @@ class JavaStubGeneratorTest : KotlinTestCase("Stub generator test", "stubGen") {
 
     fun testFunWithSeveralArguments() = doTest("severalArguments")
 
-}
\ No newline at end of file
+    fun testLightClassCache() {
+        val kotlinFile = dir.getFileObject("simple.kt")
+        val byteCode = getByteCode(kotlinFile)
+        val stubs = JavaStubGenerator.gen(byteCode).map { (classNode, code) -> classNode.name to code }
+        
+        val cache = LightClassCache(workDir.resolve("lightClassCache"))
+        cache.clear()
+        val key = cache.key(kotlinFile, "dependencies")
+        assertNull(cache.get(key))
+        
+        cache.put(key, LightClassCacheEntry(byteCode, stubs))
+        val entry = cache.get(key)!!
+        
+        assertEquals(stubs, entry.stubs)
+        assertEquals(byteCode.map { it.toList() }, entry.byteCode.map { it.toList() })
+        assertFalse(key == cache.key(kotlinFile, "changed dependencies"))
+    }
+    
+    fun testDependencyHashCoversJavaSources() {
+        val sourceFiles = KotlinResolveSession.getInstance(project).getSourceFiles()
+        val before = LightClassCache.dependencyHash(project, sourceFiles)
+        assertEquals(before, LightClassCache.dependencyHash(project, sourceFiles))
+        
+        val javaFile = project.projectDirectory.getFileObject("src/javaClasses/ClassWithMembers.java")
+        val file = FileUtil.toFile(javaFile)
+        val lastModified = file.lastModified()
+        try {
+            file.setLastModified(lastModified + 10000)
+            javaFile.refresh()
+            
+            assertFalse(before == LightClassCache.dependencyHash(project, sourceFiles))
+        } finally {
+            file.setLastModified(lastModified)
+            javaFile.refresh()
+        }
+    }
+    
+    fun testDependencyHashIsComputedAgainAfterSourceChange() {
+        val memo = LightClassDependencyHash.getInstance(project)
+        var computed = 0
+        val compute = { computed++; "hash $computed" }
+        
+        assertEquals("hash 1", memo.get(compute))
+        assertEquals("hash 1", memo.get(compute))
+        
+        val javaFile = project.projectDirectory.getFileObject("src/javaClasses/ClassWithMembers.java")
+        val file = FileUtil.toFile(javaFile)
+        val lastModified = file.lastModified()
+        try {
+            file.setLastModified(lastModified + 10000)
+            javaFile.refresh()
+            
+            assertEquals("hash 2", memo.get(compute))
+        } finally {
+            file.setLastModified(lastModified)
+            javaFile.refresh()
+        }
+    }
+
+}
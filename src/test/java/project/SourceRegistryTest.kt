@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package project
+
+import org.jetbrains.kotlin.project.KotlinProjectConstants
+import org.jetbrains.kotlin.project.KotlinSourceChanges
+import org.jetbrains.kotlin.project.KotlinSourceRegistry
+import org.openide.filesystems.FileChangeAdapter
+import org.openide.filesystems.FileEvent
+import org.openide.filesystems.FileUtil
+import utils.KotlinTestCase
+
+class SourceRegistryTest : KotlinTestCase("Source registry test", "sourceRegistry") {
+    
+    private val src = FileUtil.createMemoryFileSystem().root.createFolder("src")
+    private val changes = KotlinSourceChanges(listOf(src))
+    
+    private fun names(registry: KotlinSourceRegistry, test: Boolean) = 
+            registry.getKotlinFiles(test).map { it.nameExt }.toSet()
+    
+    fun testInitialScan() {
+        val main = FileUtil.createFolder(src, "main/kotlin")
+        main.createData("a", "kt")
+        main.createData("b", "java")
+        FileUtil.createFolder(src, "main/resources").createData("skipped", "kt")
+        FileUtil.createFolder(src, "test/kotlin").createData("t", "kt")
+        
+        val registry = KotlinSourceRegistry(src, changes)
+        
+        assertEquals(setOf("a.kt"), names(registry, false))
+        assertEquals(setOf("a.kt", "t.kt"), names(registry, true))
+        assertEquals(listOf(main), registry.getRoots(KotlinProjectConstants.JAVA_SOURCE, true))
+        registry.dispose()
+    }
+    
+    fun testFileEvents() {
+        val registry = KotlinSourceRegistry(src, changes)
+        val folder = src.createFolder("pack")
+        val file = folder.createData("created", "kt")
+        
+        assertEquals(setOf("created.kt"), names(registry, true))
+        assertEquals(listOf(folder), registry.getRoots(KotlinProjectConstants.KOTLIN_SOURCE, true))
+        
+        val lock = file.lock()
+        try {
+            file.rename(lock, "created", "txt")
+        } finally {
+            lock.releaseLock()
+        }
+        assertTrue(names(registry, true).isEmpty())
+        
+        folder.createData("other", "kt")
+        folder.delete()
+        assertTrue(names(registry, true).isEmpty())
+        registry.dispose()
+    }
+    
+    fun testListenersShareChanges() {
+        val first = KotlinSourceRegistry(src, changes)
+        val second = KotlinSourceRegistry(src, changes)
+        src.createData("shared", "kt")
+        
+        assertEquals(setOf("shared.kt"), names(first, true))
+        assertEquals(setOf("shared.kt"), names(second, true))
+        
+        // files outside of the src folder of a registry are not its sources
+        val other = src.parent.createFolder("other")
+        val otherRegistry = KotlinSourceRegistry(other, KotlinSourceChanges(listOf(src, other)))
+        src.createData("outside", "kt")
+        assertTrue(names(otherRegistry, true).isEmpty())
+        
+        first.dispose()
+        second.dispose()
+        otherRegistry.dispose()
+    }
+    
+    fun testRootsAreWatchedAgainWhenTheyChange() {
+        val root = FileUtil.createMemoryFileSystem().root
+        val first = root.createFolder("first")
+        var roots = listOf(first)
+        val rootChanges = KotlinSourceChanges { roots }
+        val created = arrayListOf<String>()
+        val listener = object : FileChangeAdapter() {
+            override fun fileFolderCreated(fe: FileEvent) { created.add(fe.file.name) }
+            override fun fileDataCreated(fe: FileEvent) { created.add(fe.file.nameExt) }
+        }
+        rootChanges.addListener(listener)
+        
+        val second = root.createFolder("second")
+        second.createData("before", "kt")
+        assertTrue(created.isEmpty())
+        
+        roots = listOf(first, second)
+        rootChanges.updateRoots()
+        second.createData("after", "kt")
+        first.createData("first", "kt")
+        assertEquals(listOf("second", "after.kt", "first.kt"), created)
+        
+        roots = listOf(second)
+        rootChanges.updateRoots()
+        first.createData("ignored", "kt")
+        assertEquals(listOf(second), rootChanges.roots)
+        assertEquals(3, created.size)
+        rootChanges.removeListener(listener)
+    }
+    
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package reparse
+
+import com.intellij.psi.impl.DebugUtil
+import org.jetbrains.kotlin.builder.KotlinIncrementalReparser
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.diagnostics.Severity
+import org.jetbrains.kotlin.diagnostics.netbeans.parser.KotlinParser
+import org.jetbrains.kotlin.resolve.AnalysisResultWithProvider
+import utils.KotlinTestCase
+
+class IncrementalReparseTest : KotlinTestCase("Incremental reparse test", "reparse") {
+    
+    private fun doTest(before: String, after: String, reparsedIncrementally: Boolean = true) {
+        val file = dir.getFileObject("sample.kt")
+        val text = file.asText()
+        assertTrue(text.contains(before))
+        val newText = text.replaceFirst(before, after)
+        
+        val ktFile = KotlinPsiManager.parseText(text, file)!!
+        val reparsed = KotlinIncrementalReparser.reparse(ktFile, newText)
+        assertEquals(reparsedIncrementally, reparsed)
+        if (!reparsed) return
+        
+        val fullyParsed = KotlinPsiManager.parseText(newText, file)!!
+        assertEquals(newText, ktFile.text)
+        assertEquals(newText, ktFile.viewProvider.contents.toString())
+        assertEquals(DebugUtil.psiToString(fullyParsed, false, true), DebugUtil.psiToString(ktFile, false, true))
+    }
+    
+    fun testStatementInFunction() = doTest("items.add(item)", "items.add(item)\n            items.add(item.trim())")
+    
+    fun testDeleteInFunction() = doTest("        if (items.size < size) {\n            items.add(item)\n        }\n", "")
+    
+    fun testTypingIdentifier() = doTest("result += it", "result += it * 2")
+    
+    fun testMemberInNestedClass() = doTest("fun hello() = \"hello\"", "fun hello() = \"hello\"\n        fun bye() = \"bye\"")
+    
+    fun testBalancedBraces() = doTest("var result = 0", "var result = 0\n    if (values.isEmpty()) { return 0 }")
+    
+    fun testUnbalancedBrace() = doTest("items.add(item)", "items.add(item) }", reparsedIncrementally = false)
+    
+    fun testUnclosedComment() = doTest("var result = 0", "var result = 0 /*", reparsedIncrementally = false)
+    
+    fun testTopLevelChange() = doTest("import java.util.ArrayList", "import java.util.LinkedList", reparsedIncrementally = false)
+    
+    fun testClassHeaderChange() = doTest("class Sample(val size: Int)", "class Sample(val size: Long)", reparsedIncrementally = false)
+    
+    private fun AnalysisResultWithProvider.errors() = analysisResult.bindingContext.diagnostics.all()
+            .filter { it.severity == Severity.ERROR }
+    
+    fun testBodyChangeIsResolvedIncrementally() {
+        val file = dir.getFileObject("sample.kt")
+        val text = file.asText()
+        val ktFile = KotlinPsiManager.parseText(text, file)!!
+        val first = KotlinParser.getAnalysisResult(ktFile, project)!!
+        assertTrue(first.errors().isEmpty())
+        
+        assertTrue(KotlinIncrementalReparser.reparse(ktFile, text.replaceFirst("var result = 0", "var result = \"\"")))
+        val second = KotlinParser.getAnalysisResult(ktFile, project)!!
+        assertSame(first.componentProvider, second.componentProvider)
+        assertEquals(1, second.errors().size)
+        // the previous result is not changed by the incremental analysis
+        assertTrue(first.errors().isEmpty())
+        
+        assertTrue(KotlinIncrementalReparser.reparse(ktFile, text))
+        val third = KotlinParser.getAnalysisResult(ktFile, project)!!
+        assertSame(first.componentProvider, third.componentProvider)
+        assertTrue(third.errors().isEmpty())
+        
+        assertTrue(KotlinIncrementalReparser.reparse(ktFile, text.replaceFirst("fun hello() = \"hello\"", "fun hello() = 1")))
+        assertNotSame(first.componentProvider, KotlinParser.getAnalysisResult(ktFile, project)!!.componentProvider)
+    }
+    
+    fun testTreeBeingReadIsNotChanged() {
+        val file = dir.getFileObject("sample.kt")
+        val text = file.asText()
+        val newText = text.replaceFirst("result += it", "result += it * 2")
+        val ktFile = KotlinPsiManager.parseTextForDiagnostic(text, file)!!
+        
+        val updated = KotlinPsiManager.readFiles(listOf(ktFile)) { KotlinPsiManager.parseTextForDiagnostic(newText, file)!! }
+        assertNotSame(ktFile, updated)
+        assertEquals(text, ktFile.text)
+        assertEquals(newText, updated.text)
+        
+        assertSame(updated, KotlinPsiManager.parseTextForDiagnostic(text, file))
+        assertEquals(text, updated.text)
+    }
+    
+    fun testDiskReadDoesNotChangeEditorTree() {
+        val file = dir.getFileObject("sample.kt")
+        val text = file.asText()
+        val editorText = text.replaceFirst("result += it", "result += it * 2")
+        
+        val editorFile = KotlinPsiManager.parseTextForDiagnostic(editorText, file)!!
+        val diskFile = KotlinPsiManager.getParsedFile(file)!!
+        
+        assertNotSame(editorFile, diskFile)
+        assertEquals(editorText, editorFile.text)
+        assertEquals(text, diskFile.text)
+        assertSame(editorFile, KotlinPsiManager.parseTextForDiagnostic(editorText, file))
+    }
+    
+    fun testAcquiredTreeIsNotChangedUntilReleased() {
+        val file = dir.getFileObject("sample.kt")
+        val text = file.asText()
+        val newText = text.replaceFirst("result += it", "result += it * 2")
+        val ktFile = KotlinPsiManager.acquireEditorFile(text, file)!!
+        
+        val updated = KotlinPsiManager.parseTextForDiagnostic(newText, file)!!
+        assertNotSame(ktFile, updated)
+        assertEquals(text, ktFile.text)
+        
+        KotlinPsiManager.releaseFile(ktFile)
+        assertSame(updated, KotlinPsiManager.parseTextForDiagnostic(text, file))
+        assertEquals(text, updated.text)
+    }
+    
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package reparse
+
+import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.builder.KtFileCache
+import org.jetbrains.kotlin.psi.KtFile
+import org.openide.filesystems.FileObject
+import org.openide.filesystems.FileUtil
+import utils.KotlinTestCase
+
+class KtFileCacheTest : KotlinTestCase("KtFile cache test", "reparse") {
+    
+    private val root = FileUtil.createMemoryFileSystem().root
+    
+    private fun parse(text: String): KtFile = KotlinPsiManager.parseText(text, dir.getFileObject("sample.kt"))!!
+    
+    private fun createFile(name: String): FileObject = root.createData(name, "kt")
+    
+    fun testStamp() {
+        val cache = KtFileCache()
+        val file = createFile("stamp")
+        val ktFile = parse("fun f() = 1")
+        
+        cache.put(file, ktFile, 1)
+        
+        assertSame(ktFile, cache.get(file))
+        assertSame(ktFile, cache.get(file, 1))
+        assertNull(cache.get(file, 2))
+        assertEquals(2L, cache.hits.get())
+        assertEquals(1L, cache.misses.get())
+    }
+    
+    fun testWeightEviction() {
+        val cache = KtFileCache(maxWeight = 30)
+        val first = createFile("first")
+        val second = createFile("second")
+        
+        cache.put(first, parse("fun first() = 1"), KtFileCache.EDITOR_STAMP)
+        cache.put(second, parse("fun second() = 2"), KtFileCache.EDITOR_STAMP)
+        
+        assertNull(cache.get(first))
+        assertNotNull(cache.get(second))
+        assertEquals(1L, cache.evictions.get())
+        assertEquals(16L, cache.retainedWeight)
+    }
+    
+    fun testDeletedFileIsRemoved() {
+        val cache = KtFileCache()
+        val file = createFile("deleted")
+        cache.put(file, parse("fun deleted() = 1"), KtFileCache.EDITOR_STAMP)
+        
+        file.delete()
+        
+        assertEquals(0, cache.size)
+        assertEquals(0L, cache.retainedWeight)
+    }
+    
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package search
+
+import org.jetbrains.kotlin.indexer.IndexedDeclaration
+import org.jetbrains.kotlin.indexer.IndexedDeclarationKind
+import utils.KotlinTestCase
+
+class IndexedDeclarationTest : KotlinTestCase("IndexedDeclaration test", "structureScanner") {
+    
+    fun testRoundTrip() {
+        val declaration = IndexedDeclaration(IndexedDeclarationKind.FUNCTION, "`a;b`", "foo.`a;b`", "foo",
+                "foo.Bar;Kt", "kotlin.collections.Map<String;Int>", 42, true, false)
+        
+        assertEquals(declaration, IndexedDeclaration.deserialize(declaration.serialize()))
+    }
+    
+    fun testNoReceiver() {
+        val declaration = IndexedDeclaration(IndexedDeclarationKind.CLASS, "Foo", "foo.Foo", "foo",
+                "foo.Foo", null, 0, true, false)
+        
+        assertEquals(declaration, IndexedDeclaration.deserialize(declaration.serialize()))
+    }
+    
+    fun testMalformedEntries() {
+        assertNull(IndexedDeclaration.deserialize("CLASS;Foo;foo.Foo;foo;foo.Foo;0;true;false;"))
+        assertNull(IndexedDeclaration.deserialize("5:CLASS3:Foo"))
+        assertNull(IndexedDeclaration.deserialize("99:CLASS"))
+    }
+    
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *******************************************************************************/
+package search
+
+import org.jetbrains.kotlin.indexer.KotlinSymbolIndex
+import org.jetbrains.kotlin.indexer.SymbolMatchKind
+import org.jetbrains.kotlin.indexer.matchesCamelHumps
+import utils.KotlinTestCase
+
+class SymbolIndexTest : KotlinTestCase("SymbolIndex test", "structureScanner") {
+    
+    private fun search(query: String) = KotlinSymbolIndex.getInstance(project).search(query)
+            .filter { it.location.declaration.packageName == "structureScanner" }
+    
+    fun testCamelHumps() {
+        assertTrue(matchesCamelHumps("InnerInnerClass", "IIC"))
+        assertTrue(matchesCamelHumps("InnerInnerClass", "InInCl"))
+        assertFalse(matchesCamelHumps("InnerInnerClass", "IC"))
+        assertFalse(matchesCamelHumps("InnerInnerClass", "CI"))
+        assertTrue(matchesCamelHumps("InnerInnerClass", "II"))
+        assertFalse(matchesCamelHumps("InnerInnerClass", "InCl"))
+    }
+    
+    fun testNestedClassesAreFound() {
+        val names = search("Inner").map { it.name }
+        
+        assertEquals(listOf("InnerClass", "InnerClass", "InnerInnerClass"), names)
+    }
+    
+    fun testRanking() {
+        val matches = search("InnerClass")
+        
+        assertEquals(listOf(SymbolMatchKind.EXACT, SymbolMatchKind.EXACT, SymbolMatchKind.SUBSTRING), matches.map { it.kind })
+        assertEquals("InnerInnerClass", matches.last().name)
+    }
+    
+    fun testCamelHumpsSearch() {
+        val matches = search("IIC")
+        
+        assertEquals(listOf("InnerInnerClass"), matches.map { it.name })
+        assertEquals(SymbolMatchKind.CAMEL_HUMPS, matches.first().kind)
+    }
+    
+}
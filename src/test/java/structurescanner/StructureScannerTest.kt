@@ -18,6 +18,10 @@ package structurescanner
 
 import javaproject.JavaProject
 import org.jetbrains.kotlin.builder.KotlinPsiManager
+import org.jetbrains.kotlin.psi.KtNamedDeclaration
+import org.jetbrains.kotlin.psi.psiUtil.collectDescendantsOfType
+import org.jetbrains.kotlin.resolve.AnalysisLevel
+import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.KotlinAnalyzer
 import org.jetbrains.kotlin.structurescanner.*
 import org.netbeans.api.project.Project
@@ -57,4 +61,16 @@ class StructureScannerTest : KotlinTestCase("StructureScanner test", "structureS
     
     fun testSeveralClasses() = doTest("severalClasses", classes = 4, functions = 3, properties = 3)
     
-}
\ No newline at end of file
+    fun testDeclarationsLevelResolvesHeaders() {
+        val file = dir.getFileObject("severalClasses.kt")
+        val ktFile = KotlinPsiManager.getParsedFile(file)!!
+        val resultWithProvider = KotlinAnalyzer.analyzeFile(project, ktFile, AnalysisLevel.DECLARATIONS)
+        val bindingContext = resultWithProvider.analysisResult.bindingContext
+        
+        assertEquals(AnalysisLevel.DECLARATIONS, resultWithProvider.level)
+        ktFile.collectDescendantsOfType<KtNamedDeclaration>().forEach {
+            assertNotNull(it.name, bindingContext[BindingContext.DECLARATION_TO_DESCRIPTOR, it])
+        }
+    }
+    
+}
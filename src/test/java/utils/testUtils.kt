@@ -17,6 +17,9 @@
 package utils
 
 import com.intellij.openapi.util.text.StringUtil
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
 import javax.swing.text.Document
 import junit.framework.TestCase.assertNotNull
 import org.jetbrains.kotlin.utils.ProjectUtils
@@ -61,4 +64,19 @@ infix fun String.equalsWithoutSpaces(expected: String): Boolean {
     
     return spacesRegex.replace(StringUtil.convertLineSeparators(expected), "") == 
         spacesRegex.replace(StringUtil.convertLineSeparators(this), "")
-}
\ No newline at end of file
+}
+
+// jar in [directory] whose entries all have [content]
+fun createJar(directory: File, name: String, entries: List<String>, content: ByteArray = byteArrayOf(1, 2, 3)): File {
+    directory.mkdirs()
+    
+    return File(directory, name).apply {
+        JarOutputStream(outputStream()).use { output ->
+            entries.forEach { 
+                output.putNextEntry(JarEntry(it))
+                output.write(content)
+                output.closeEntry()
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package analysisCache
+
+fun sum(values: List<Int>): Int {
+    var result = 0
+    values.forEach { result += it }
+    return result
+}
@@ -0,0 +1,3 @@
+package classFileLookups
+
+class Existing
@@ -0,0 +1,5 @@
+package completion
+
+fun unimportedExtensionCompletion() {
+	"extension".str<caret>
+}
\ No newline at end of file
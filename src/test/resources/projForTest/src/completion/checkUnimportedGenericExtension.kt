@@ -0,0 +1,5 @@
+package completion
+
+fun unimportedGenericExtensionCompletion() {
+	42.anyExt<caret>
+}
\ No newline at end of file
@@ -0,0 +1,5 @@
+package completion
+
+fun unimportedSupertypeExtensionCompletion() {
+	"extension".charSeq<caret>
+}
\ No newline at end of file
@@ -5,3 +5,11 @@ fun function1() = 42
 fun function2() = 42
 
 private fun privateFunction() = "private"
+
+fun String.stringExtension() = length
+
+fun Int.intExtension() = this
+
+fun CharSequence.charSequenceExtension() = length
+
+fun <T> T.anyExtension() = this
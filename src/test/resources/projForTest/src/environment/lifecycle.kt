@@ -0,0 +1,7 @@
+package environment
+
+class Counter {
+    var count = 0
+    
+    fun increment() = ++count
+}
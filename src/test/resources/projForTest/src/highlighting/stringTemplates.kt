@@ -0,0 +1,9 @@
+class Templates(val x: Int) {
+    private val text = "a${x + "b${x}c"}d $x"
+    
+    val raw = """first ${ if (x > 0) { x } else { 0 } } $this"""
+    
+    /* block /* nested */
+       comment */
+    val open = "unterminated
+}
@@ -0,0 +1,3 @@
+package jarDirectory
+
+fun entryNames(names: List<String>) = names.filter { it.endsWith(".class") }
@@ -0,0 +1,3 @@
+package jarIndex
+
+fun names(values: List<String>) = values.map { it.length }
@@ -0,0 +1,5 @@
+package jarMetadata
+
+object Library {
+    val name = "lib"
+}
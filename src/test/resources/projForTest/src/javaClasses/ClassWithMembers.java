@@ -0,0 +1,23 @@
+package javaClasses;
+
+@Deprecated
+public abstract class ClassWithMembers<T> implements Comparable<T> {
+    
+    private final int number;
+    protected String text = "";
+    
+    public ClassWithMembers(int number) {
+        this.number = number;
+    }
+    
+    public int getNumber() {
+        return number;
+    }
+    
+    public abstract T convert(String value);
+    
+    public static class Inner {
+        
+    }
+    
+}
@@ -0,0 +1,3 @@
+package javaFileManager
+
+class Roots
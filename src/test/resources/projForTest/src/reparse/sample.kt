@@ -0,0 +1,25 @@
+package reparse
+
+import java.util.ArrayList
+
+class Sample(val size: Int) {
+
+    private val items = ArrayList<String>()
+
+    fun add(item: String) {
+        if (items.size < size) {
+            items.add(item)
+        }
+    }
+
+    class Nested {
+        fun hello() = "hello"
+    }
+
+}
+
+fun sum(values: List<Int>): Int {
+    var result = 0
+    values.forEach { result += it }
+    return result
+}
@@ -0,0 +1,3 @@
+package sourceRegistry
+
+fun registered() = "registered"